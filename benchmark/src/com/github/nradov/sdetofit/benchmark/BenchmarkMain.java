@@ -0,0 +1,97 @@
+package com.github.nradov.sdetofit.benchmark;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with allocation profiling and writes the results to
+ * {@code target/benchmarks}:
+ * <ul>
+ * <li>{@code results.json}: full JMH results</li>
+ * <li>{@code summary.csv}: one row per benchmark and parameter combination,
+ * with throughput in dives and samples per second and bytes allocated per
+ * dive and per sample</li>
+ * </ul>
+ * Arguments are passed on to JMH, so for example a regular expression selects
+ * the benchmarks to run and {@code -p fixture=SHORT} restricts the fixtures.
+ *
+ * @author Nick Radov
+ */
+public final class BenchmarkMain {
+
+	private BenchmarkMain() {
+		// not to be instantiated
+	}
+
+	/** Directory the results are written to. */
+	private static final Path RESULTS_DIRECTORY = Paths.get("target", "benchmarks");
+
+	/** Secondary result of {@link GCProfiler} with bytes allocated per operation. */
+	private static final String ALLOCATION_RESULT = "gc.alloc.rate.norm";
+
+	public static void main(final String[] args) throws CommandLineOptionException, RunnerException, IOException {
+		// Maven passes an empty argument when no JMH arguments are given
+		final var jmhArgs = Arrays.stream(args).filter(arg -> !arg.isBlank()).toArray(String[]::new);
+		final var commandLine = new CommandLineOptions(jmhArgs);
+		Files.createDirectories(RESULTS_DIRECTORY);
+		final ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine)
+				.addProfiler(GCProfiler.class).resultFormat(ResultFormatType.JSON)
+				.result(RESULTS_DIRECTORY.resolve("results.json").toString());
+		if (commandLine.getIncludes().isEmpty()) {
+			options.include(BenchmarkMain.class.getPackageName() + ".");
+		}
+		final Collection<RunResult> results = new Runner(options.build()).run();
+		writeSummary(RESULTS_DIRECTORY.resolve("summary.csv"), results);
+	}
+
+	private static void writeSummary(final Path file, final Collection<RunResult> results) throws IOException {
+		try (final PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+			out.println("benchmark,fixture,encoder,samples,dives_per_s,error,samples_per_s,bytes_per_dive,"
+					+ "bytes_per_sample");
+			for (final RunResult result : results) {
+				final var params = result.getParams();
+				final String benchmark = params.getBenchmark();
+				final String fixtureName = params.getParam("fixture");
+				final String encoder = params.getParam("encoder");
+				final int samples = Fixture.valueOf(fixtureName).getSampleCount();
+				final Result<?> primary = result.getPrimaryResult();
+				final double bytes = allocation(result.getSecondaryResults());
+				out.println(String.format(Locale.US, "%s,%s,%s,%d,%.3f,%.3f,%.1f,%.1f,%.2f",
+						benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1),
+						fixtureName, encoder == null ? "" : encoder, samples, primary.getScore(),
+						primary.getScoreError(), primary.getScore() * samples, bytes, bytes / samples));
+			}
+		}
+	}
+
+	/** Get the bytes allocated per operation, or NaN if it wasn't measured. */
+	private static double allocation(final Map<String, Result> secondaryResults) {
+		for (final Map.Entry<String, Result> entry : secondaryResults.entrySet()) {
+			// older JMH versions prefix secondary result names with a middle dot
+			if (entry.getKey().endsWith(ALLOCATION_RESULT)) {
+				return entry.getValue().getScore();
+			}
+		}
+		return Double.NaN;
+	}
+
+}
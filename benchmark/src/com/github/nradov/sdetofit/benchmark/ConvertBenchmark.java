@@ -0,0 +1,84 @@
+package com.github.nradov.sdetofit.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.nradov.sdetofit.SdeToFit;
+
+/**
+ * End to end conversion throughput of a {@code .sde} export file to FIT files,
+ * in dives per second. The allocation profiler only counts the benchmark
+ * thread, so allocations made by the conversion stage threads aren't included
+ * in the bytes per dive.
+ *
+ * @author Nick Radov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ConvertBenchmark {
+
+	/** Number of dives in the export file. */
+	private static final int DIVES = 16;
+
+	@Param
+	public Fixture fixture;
+
+	@Param
+	public SdeToFit.Encoder encoder;
+
+	private Path directory, output;
+
+	private SdeToFit converter;
+
+	@Setup
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("sdetofit-benchmark");
+		final Path input = directory.resolve("dives.sde");
+		fixture.generator().writeSde(input, DIVES);
+		output = Files.createDirectory(directory.resolve("output"));
+		converter = new SdeToFit(input, output);
+		converter.setEncoder(encoder);
+		converter.setQuiet(true);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		try (final Stream<Path> files = Files.walk(directory)) {
+			for (final Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DIVES)
+	public void convert() throws ZipException, IOException, XMLStreamException {
+		converter.convert();
+	}
+
+}
@@ -0,0 +1,310 @@
+package com.github.nradov.sdetofit.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates synthetic Suunto dive logs. Each dive descends to a random maximum
+ * depth, stays there for most of the dive, and ascends with a safety stop.
+ * Output is deterministic for a given seed, so fixtures can be regenerated
+ * instead of being checked in.
+ *
+ * <p>
+ * Run from the command line to write a fixture file:
+ * </p>
+ *
+ * <pre>
+ * DiveLogGenerator [--format=sde|xml|sml] [--dives=n] [--duration=seconds]
+ *     [--interval=seconds] [--noise=meters] [--seed=n] output
+ * </pre>
+ *
+ * The format defaults to the output file extension. {@code --dives} only
+ * applies to {@code .sde} files, since the other formats hold a single dive.
+ *
+ * @author Nick Radov
+ */
+public final class DiveLogGenerator {
+
+	/** Start time of the first dive; later dives start six hours apart. */
+	private static final LocalDateTime FIRST_START = LocalDateTime.of(2019, 1, 1, 8, 0, 0);
+
+	private static final int HOURS_BETWEEN_DIVES = 6;
+
+	private static final double DESCENT_RATE = 18.0 / 60, ASCENT_RATE = 9.0 / 60;
+
+	private static final double SAFETY_STOP_DEPTH = 5, SAFETY_STOP_SECONDS = 180;
+
+	private final int durationSeconds, sampleInterval;
+
+	private final double noise;
+
+	private final long seed;
+
+	private final long serialNumber;
+
+	/** Default fixture parameters for the command line. */
+	private static final int DEFAULT_DIVES = 1, DEFAULT_DURATION = 45 * 60, DEFAULT_INTERVAL = 20;
+
+	private static final double DEFAULT_NOISE = 0.1;
+
+	private static final long DEFAULT_SEED = 42;
+
+	private static final String USAGE = "Usage: [--format=sde|xml|sml] [--dives=n] [--duration=seconds] "
+			+ "[--interval=seconds] [--noise=meters] [--seed=n] output";
+
+	public static void main(final String[] args) throws IOException {
+		final Map<String, String> options = new HashMap<>();
+		final List<String> arguments = new ArrayList<>();
+		for (final String arg : args) {
+			if (arg.startsWith("--")) {
+				final int equals = arg.indexOf('=');
+				if (equals < 0) {
+					throw new IllegalArgumentException("option " + arg + " needs a value\n" + USAGE);
+				}
+				options.put(arg.substring(2, equals), arg.substring(equals + 1));
+			} else {
+				arguments.add(arg);
+			}
+		}
+		if (arguments.size() != 1) {
+			throw new IllegalArgumentException(USAGE);
+		}
+		final Path output = Paths.get(arguments.get(0));
+		final String fileName = output.getFileName().toString();
+		final String format = options.getOrDefault("format",
+				fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(Locale.US));
+		final int dives = Integer.parseInt(options.getOrDefault("dives", Integer.toString(DEFAULT_DIVES)));
+		final var generator = new DiveLogGenerator(
+				Integer.parseInt(options.getOrDefault("duration", Integer.toString(DEFAULT_DURATION))),
+				Integer.parseInt(options.getOrDefault("interval", Integer.toString(DEFAULT_INTERVAL))),
+				Double.parseDouble(options.getOrDefault("noise", Double.toString(DEFAULT_NOISE))),
+				Long.parseLong(options.getOrDefault("seed", Long.toString(DEFAULT_SEED))));
+		options.keySet().removeAll(List.of("format", "dives", "duration", "interval", "noise", "seed"));
+		if (!options.isEmpty()) {
+			throw new IllegalArgumentException("unrecognized options " + options.keySet() + "\n" + USAGE);
+		}
+		switch (format) {
+		case "sde":
+			generator.writeSde(output, dives);
+			break;
+		case "xml":
+		case "sml":
+			if (dives != 1) {
+				throw new IllegalArgumentException("." + format + " files hold a single dive");
+			}
+			Files.write(output, "xml".equals(format) ? generator.xml(0) : generator.sml(0));
+			break;
+		default:
+			throw new IllegalArgumentException("unrecognized format: " + format + "\n" + USAGE);
+		}
+		System.out.println("Wrote \"" + output + "\": " + dives + " dives of " + generator.getSampleCount()
+				+ " samples");
+	}
+
+	/**
+	 * @param durationSeconds dive duration in seconds
+	 * @param sampleInterval  seconds between samples
+	 * @param noise           standard deviation of the random variation added to
+	 *                        each depth, in meters
+	 * @param seed            random number generator seed
+	 */
+	public DiveLogGenerator(final int durationSeconds, final int sampleInterval, final double noise,
+			final long seed) {
+		if (durationSeconds < 1 || sampleInterval < 1) {
+			throw new IllegalArgumentException(
+					"duration and sample interval must be positive: " + durationSeconds + ", " + sampleInterval);
+		}
+		this.durationSeconds = durationSeconds;
+		this.sampleInterval = sampleInterval;
+		this.noise = noise;
+		this.seed = seed;
+		this.serialNumber = 1000000 + Math.floorMod(seed, 9000000);
+	}
+
+	/**
+	 * Get the number of samples in each dive.
+	 *
+	 * @return number of samples
+	 */
+	public int getSampleCount() {
+		return durationSeconds / sampleInterval + 1;
+	}
+
+	/** Depths and temperatures of one generated dive. */
+	private final class Profile {
+
+		private final double maxDepth;
+
+		private final double[] depths, temperatures;
+
+		Profile(final int dive) {
+			final Random random = new Random(seed * 31 + dive);
+			maxDepth = 10 + random.nextInt(300) / 10.0;
+			final int size = getSampleCount();
+			depths = new double[size];
+			temperatures = new double[size];
+			for (int i = 0; i < size; i++) {
+				final double depth = Math.max(0, idealDepth(i * sampleInterval) + random.nextGaussian() * noise);
+				depths[i] = i == 0 ? 0 : depth;
+				temperatures[i] = 24 - depth * 0.2 + random.nextGaussian() * 0.2;
+			}
+		}
+
+		/** Depth without noise at a time during the dive. */
+		private double idealDepth(final double time) {
+			final double remaining = durationSeconds - time;
+			final double descent = time * DESCENT_RATE;
+			final double ascent;
+			if (remaining <= SAFETY_STOP_DEPTH / ASCENT_RATE) {
+				ascent = remaining * ASCENT_RATE;
+			} else if (remaining <= SAFETY_STOP_DEPTH / ASCENT_RATE + SAFETY_STOP_SECONDS) {
+				ascent = SAFETY_STOP_DEPTH;
+			} else {
+				ascent = SAFETY_STOP_DEPTH + (remaining - SAFETY_STOP_DEPTH / ASCENT_RATE - SAFETY_STOP_SECONDS)
+						* ASCENT_RATE;
+			}
+			return Math.min(maxDepth, Math.min(descent, ascent));
+		}
+
+		double meanDepth() {
+			double sum = 0;
+			for (final double depth : depths) {
+				sum += depth;
+			}
+			return sum / depths.length;
+		}
+
+	}
+
+	private static LocalDateTime startTime(final int dive) {
+		return FIRST_START.plusHours((long) HOURS_BETWEEN_DIVES * dive);
+	}
+
+	/**
+	 * Generate a dive log in Suunto Dive Manager XML format.
+	 *
+	 * @param dive zero based dive index, which determines the start time and dive
+	 *             number
+	 * @return XML document
+	 */
+	public byte[] xml(final int dive) {
+		final Profile profile = new Profile(dive);
+		final LocalDateTime start = startTime(dive);
+		final int size = getSampleCount();
+		final StringBuilder xml = new StringBuilder(600 + size * 90);
+		xml.append("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<SUUNTO>\n<MSGHEADER>\n");
+		xml.append(String.format("<DATE>%02d.%02d.%04d</DATE>\n", start.getDayOfMonth(), start.getMonthValue(),
+				start.getYear()));
+		xml.append(String.format("<TIME>%02d:%02d:%02d</TIME>\n", start.getHour(), start.getMinute(),
+				start.getSecond()));
+		xml.append("<SAMPLECNT>").append(size).append("</SAMPLECNT>\n");
+		xml.append("<SAMPLEINTERVAL>").append(sampleInterval).append("</SAMPLEINTERVAL>\n");
+		xml.append("<DIVETIMESEC>").append(durationSeconds).append("</DIVETIMESEC>\n");
+		appendFixed(xml.append("<MAXDEPTH>"), profile.maxDepth, 1).append("</MAXDEPTH>\n");
+		appendFixed(xml.append("<MEANDEPTH>"), profile.meanDepth(), 1).append("</MEANDEPTH>\n");
+		xml.append("<LOGTITLE>").append(dive + 1).append(". ").append(start.toLocalDate()).append(' ')
+				.append(start.toLocalTime()).append("</LOGTITLE>\n");
+		xml.append("<SURFACETIME>").append(HOURS_BETWEEN_DIVES * 3600 - durationSeconds).append("</SURFACETIME>\n");
+		xml.append("<DEVICEMODEL>Mosquito</DEVICEMODEL>\n");
+		xml.append("<WRISTOPID>").append(serialNumber).append("</WRISTOPID>\n");
+		xml.append("<WATERTEMPMAXDEPTH>").append(Math.round(profile.temperatures[size - 1]))
+				.append("</WATERTEMPMAXDEPTH>\n");
+		xml.append("</MSGHEADER>\n");
+		for (int i = 0; i < size; i++) {
+			xml.append("<SAMPLE><SAMPLETIME>").append(i * sampleInterval).append("</SAMPLETIME><DEPTH>");
+			appendFixed(xml, profile.depths[i], 2).append("</DEPTH><TEMPERATURE>");
+			// like real dive logs, only some samples have a temperature
+			if (i % 3 == 0) {
+				appendFixed(xml, profile.temperatures[i], 1);
+			}
+			xml.append("</TEMPERATURE></SAMPLE>\n");
+		}
+		xml.append("</SUUNTO>\n");
+		return xml.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Generate a dive log in Suunto SML format.
+	 *
+	 * @param dive zero based dive index, which determines the start time and dive
+	 *             number
+	 * @return XML document
+	 */
+	public byte[] sml(final int dive) {
+		final Profile profile = new Profile(dive);
+		final int size = getSampleCount();
+		final StringBuilder sml = new StringBuilder(600 + size * 90);
+		sml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<sml xmlns=\"http://www.suunto.com/schemas/sml\">\n");
+		sml.append("<DeviceLog>\n<Header>\n");
+		appendFixed(sml.append("<Depth><Max>"), profile.maxDepth, 1).append("</Max><Avg>");
+		appendFixed(sml, profile.meanDepth(), 1).append("</Avg></Depth>\n");
+		sml.append("<DateTime>").append(startTime(dive)).append("</DateTime>\n");
+		sml.append("<Duration>").append(durationSeconds).append("</Duration>\n");
+		sml.append("<NumberInSeries>").append(dive + 1).append("</NumberInSeries>\n");
+		sml.append("<SampleInterval>").append(sampleInterval).append("</SampleInterval>\n");
+		sml.append("</Header>\n");
+		sml.append("<Device><Name>Suunto D5</Name><SerialNumber>").append(serialNumber)
+				.append("</SerialNumber></Device>\n");
+		sml.append("<Samples>\n");
+		for (int i = 0; i < size; i++) {
+			appendFixed(sml.append("<Sample><Depth>"), profile.depths[i], 2).append("</Depth><Temperature>");
+			appendFixed(sml, profile.temperatures[i] + 273.15, 2).append("</Temperature><Time>")
+					.append(i * sampleInterval).append("</Time></Sample>\n");
+		}
+		sml.append("</Samples>\n</DeviceLog>\n</sml>\n");
+		return sml.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write a Suunto Dive Manager export file containing one XML dive log per
+	 * dive. Dives are generated one at a time, so the number of dives isn't
+	 * limited by memory.
+	 *
+	 * @param file      export file
+	 * @param diveCount number of dives
+	 * @throws IOException if an error occurs while writing the file
+	 */
+	public void writeSde(final Path file, final int diveCount) throws IOException {
+		try (final OutputStream os = Files.newOutputStream(file);
+				final ZipOutputStream zip = new ZipOutputStream(os)) {
+			for (int dive = 0; dive < diveCount; dive++) {
+				zip.putNextEntry(new ZipEntry(dive + ".xml"));
+				zip.write(xml(dive));
+				zip.closeEntry();
+			}
+		}
+	}
+
+	/**
+	 * Append a non-negative number with a fixed number of decimals. This is much
+	 * faster than {@link String#format} for the millions of values in a large
+	 * fixture.
+	 */
+	private static StringBuilder appendFixed(final StringBuilder sb, final double value, final int decimals) {
+		long scale = 1;
+		for (int i = 0; i < decimals; i++) {
+			scale *= 10;
+		}
+		final long scaled = Math.round(Math.max(0, value) * scale);
+		sb.append(scaled / scale).append('.');
+		final String fraction = Long.toString(scaled % scale);
+		for (int i = fraction.length(); i < decimals; i++) {
+			sb.append('0');
+		}
+		return sb.append(fraction);
+	}
+
+}
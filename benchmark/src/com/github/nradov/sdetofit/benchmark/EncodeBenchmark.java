@@ -0,0 +1,73 @@
+package com.github.nradov.sdetofit.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.nradov.sdetofit.Dive;
+import com.github.nradov.sdetofit.SdeToFit;
+import com.github.nradov.sdetofit.fit.DirectFitEncoder;
+import com.github.nradov.sdetofit.fit.DiveEncoder;
+import com.github.nradov.sdetofit.fit.SdkFitEncoder;
+import com.github.nradov.sdetofit.suunto.SuuntoXml;
+
+/**
+ * FIT encoding throughput of a parsed dive, in dives per second, for each
+ * encoder.
+ *
+ * @author Nick Radov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeBenchmark {
+
+	@Param
+	public Fixture fixture;
+
+	@Param
+	public SdeToFit.Encoder encoder;
+
+	private Dive dive;
+
+	private DiveEncoder diveEncoder;
+
+	@Setup
+	public void setUp() throws IOException, XMLStreamException {
+		dive = new SuuntoXml(new ByteArrayInputStream(fixture.generator().xml(0)));
+		switch (encoder) {
+		case DIRECT:
+			diveEncoder = new DirectFitEncoder();
+			break;
+		case COMPACT:
+			diveEncoder = new DirectFitEncoder(true);
+			break;
+		default:
+			diveEncoder = new SdkFitEncoder();
+		}
+	}
+
+	@Benchmark
+	public ByteBuffer encode() {
+		return diveEncoder.encode(dive);
+	}
+
+}
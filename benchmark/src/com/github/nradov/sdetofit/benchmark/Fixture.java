@@ -0,0 +1,47 @@
+package com.github.nradov.sdetofit.benchmark;
+
+/**
+ * Sizes of generated dive logs used by the benchmarks.
+ *
+ * @author Nick Radov
+ */
+public enum Fixture {
+
+	/** 45 minute dive sampled every 20 seconds, typical of older dive computers. */
+	SHORT(45 * 60, 20),
+
+	/** 90 minute dive sampled every 10 seconds. */
+	MEDIUM(90 * 60, 10),
+
+	/** 4 hour dive sampled every second, typical of technical dives. */
+	LONG(4 * 60 * 60, 1);
+
+	/** Seed for the generated dives, fixed so every run measures the same data. */
+	private static final long SEED = 42;
+
+	private final int durationSeconds, sampleInterval;
+
+	Fixture(final int durationSeconds, final int sampleInterval) {
+		this.durationSeconds = durationSeconds;
+		this.sampleInterval = sampleInterval;
+	}
+
+	/**
+	 * Get a generator for dives of this size.
+	 *
+	 * @return generator
+	 */
+	public DiveLogGenerator generator() {
+		return new DiveLogGenerator(durationSeconds, sampleInterval, 0.1, SEED);
+	}
+
+	/**
+	 * Get the number of samples in each dive.
+	 *
+	 * @return number of samples
+	 */
+	public int getSampleCount() {
+		return generator().getSampleCount();
+	}
+
+}
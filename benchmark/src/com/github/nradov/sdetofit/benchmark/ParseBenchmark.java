@@ -0,0 +1,61 @@
+package com.github.nradov.sdetofit.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.nradov.sdetofit.Dive;
+import com.github.nradov.sdetofit.suunto.SuuntoSml;
+import com.github.nradov.sdetofit.suunto.SuuntoXml;
+
+/**
+ * Parsing throughput of single dive logs, in dives per second. The dive logs
+ * are generated in memory so the benchmark doesn't measure disk reads.
+ *
+ * @author Nick Radov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+	@Param
+	public Fixture fixture;
+
+	private byte[] xml, sml;
+
+	@Setup
+	public void setUp() {
+		final DiveLogGenerator generator = fixture.generator();
+		xml = generator.xml(0);
+		sml = generator.sml(0);
+	}
+
+	@Benchmark
+	public Dive parseXml() throws IOException, XMLStreamException {
+		return new SuuntoXml(new ByteArrayInputStream(xml));
+	}
+
+	@Benchmark
+	public Dive parseSml() throws IOException, XMLStreamException {
+		return new SuuntoSml(new ByteArrayInputStream(sml));
+	}
+
+}
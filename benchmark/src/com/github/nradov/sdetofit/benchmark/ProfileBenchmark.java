@@ -0,0 +1,81 @@
+package com.github.nradov.sdetofit.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.nradov.sdetofit.Dive;
+import com.github.nradov.sdetofit.DiveProfile;
+import com.github.nradov.sdetofit.Record;
+import com.github.nradov.sdetofit.suunto.SuuntoXml;
+
+/**
+ * Throughput of building profile records and FIT record messages from a parsed
+ * dive, in dives per second.
+ *
+ * @author Nick Radov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProfileBenchmark {
+
+	@Param
+	public Fixture fixture;
+
+	private Dive dive;
+
+	private int[] timeOffsets;
+
+	private float[] depths;
+
+	private byte[] temperatures;
+
+	@Setup
+	public void setUp() throws IOException, XMLStreamException {
+		dive = new SuuntoXml(new ByteArrayInputStream(fixture.generator().xml(0)));
+		final DiveProfile profile = dive.getProfile();
+		timeOffsets = new int[profile.size()];
+		depths = new float[profile.size()];
+		temperatures = new byte[profile.size()];
+		for (int i = 0; i < profile.size(); i++) {
+			timeOffsets[i] = profile.getTimeOffset(i);
+			depths[i] = profile.getDepth(i);
+			temperatures[i] = profile.getTemperature(i);
+		}
+	}
+
+	/** Copy the sample arrays into a new profile, as the parsers do. */
+	@Benchmark
+	public DiveProfile buildProfile() {
+		return new DiveProfile(dive.getProfile().getStartTime(), timeOffsets.clone(), depths.clone(),
+				temperatures.clone());
+	}
+
+	/** Create a {@code record} message for every sample. */
+	@Benchmark
+	public void recordMesgs(final Blackhole blackhole) {
+		for (final Record record : dive.getRecords()) {
+			blackhole.consume(record.toMesg());
+		}
+	}
+
+}
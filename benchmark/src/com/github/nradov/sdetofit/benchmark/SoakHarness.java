@@ -0,0 +1,159 @@
+package com.github.nradov.sdetofit.benchmark;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Scale and soak test: converts generated exports of increasing size, each in a
+ * separate JVM with a fixed maximum heap, and checks that memory use doesn't
+ * grow with the number of dives. A conversion that runs out of memory fails the
+ * run, as does live heap use for the largest export exceeding that of the
+ * smallest by more than the allowed growth. Results are written to
+ * {@code target/soak/results.csv}, and the process exits with status 1 on
+ * failure.
+ *
+ * <pre>
+ * SoakHarness [--xmx=64m] [--dives=1000,5000,20000] [--duration=seconds]
+ *     [--interval=seconds] [--noise=meters] [--encoder=sdk|direct|compact]
+ *     [--max-growth-mb=16]
+ * </pre>
+ *
+ * Generated exports are kept in {@code target/soak} and reused by later runs
+ * with the same parameters.
+ *
+ * @author Nick Radov
+ */
+public final class SoakHarness {
+
+	private SoakHarness() {
+		// not to be instantiated
+	}
+
+	private static final Path WORK_DIRECTORY = Paths.get("target", "soak");
+
+	private static final long SEED = 42;
+
+	private static final long MEGABYTE = 1024 * 1024;
+
+	private static final Pattern RESULT = Pattern.compile(
+			"\\{\"dives\":(\\d+),\"seconds\":([0-9.]+),\"liveHeapBytes\":(\\d+),\"peakHeapBytes\":(\\d+)\\}");
+
+	public static void main(final String[] args) throws IOException, InterruptedException {
+		final Map<String, String> options = new HashMap<>();
+		for (final String arg : args) {
+			final int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals < 0) {
+				throw new IllegalArgumentException("unrecognized argument: " + arg);
+			}
+			options.put(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+		final String xmx = options.getOrDefault("xmx", "64m");
+		final int[] diveCounts = Arrays.stream(options.getOrDefault("dives", "1000,5000,20000").split(","))
+				.mapToInt(Integer::parseInt).sorted().toArray();
+		final int duration = Integer.parseInt(options.getOrDefault("duration", Integer.toString(45 * 60)));
+		final int interval = Integer.parseInt(options.getOrDefault("interval", "20"));
+		final double noise = Double.parseDouble(options.getOrDefault("noise", "0.1"));
+		final String encoder = options.getOrDefault("encoder", "direct").toUpperCase(Locale.US);
+		final long maxGrowth = Long.parseLong(options.getOrDefault("max-growth-mb", "16")) * MEGABYTE;
+
+		Files.createDirectories(WORK_DIRECTORY);
+		final var generator = new DiveLogGenerator(duration, interval, noise, SEED);
+		final List<String> failures = new ArrayList<>();
+		final List<long[]> heaps = new ArrayList<>();
+		try (final PrintWriter results = new PrintWriter(
+				Files.newBufferedWriter(WORK_DIRECTORY.resolve("results.csv"), StandardCharsets.UTF_8))) {
+			results.println("dives,samples_per_dive,xmx,encoder,seconds,dives_per_s,live_heap_mb,peak_heap_mb");
+			for (final int diveCount : diveCounts) {
+				final Path input = WORK_DIRECTORY.resolve(String.format(Locale.US, "soak-%d-%d-%d-%s.sde",
+						diveCount, duration, interval, Double.toString(noise)));
+				if (!Files.exists(input)) {
+					System.out.println("Generating " + input);
+					generator.writeSde(input, diveCount);
+				}
+				final Matcher result = run(input, diveCount, xmx, encoder);
+				if (result == null) {
+					failures.add(diveCount + " dives: conversion failed, see the log in " + WORK_DIRECTORY);
+					continue;
+				}
+				final long dives = Long.parseLong(result.group(1));
+				final double seconds = Double.parseDouble(result.group(2));
+				final long liveHeap = Long.parseLong(result.group(3));
+				final long peakHeap = Long.parseLong(result.group(4));
+				if (dives != diveCount) {
+					failures.add(diveCount + " dives: only " + dives + " FIT files were written");
+				}
+				heaps.add(new long[] { diveCount, liveHeap });
+				final String line = String.format(Locale.US, "%d,%d,%s,%s,%.3f,%.1f,%.1f,%.1f", diveCount,
+						generator.getSampleCount(), xmx, encoder, seconds, dives / seconds,
+						(double) liveHeap / MEGABYTE, (double) peakHeap / MEGABYTE);
+				results.println(line);
+				results.flush();
+				System.out.println(line);
+			}
+		}
+		if (heaps.size() > 1) {
+			final long growth = heaps.get(heaps.size() - 1)[1] - heaps.get(0)[1];
+			if (growth > maxGrowth) {
+				failures.add(String.format(Locale.US, "live heap grew by %.1f MB from %d to %d dives",
+						(double) growth / MEGABYTE, heaps.get(0)[0], heaps.get(heaps.size() - 1)[0]));
+			}
+		}
+		if (!failures.isEmpty()) {
+			failures.forEach(failure -> System.err.println("FAILED: " + failure));
+			System.exit(1);
+		}
+		System.out.println("Passed: memory use didn't grow with the number of dives");
+	}
+
+	/**
+	 * Convert an export in a new JVM.
+	 *
+	 * @return the result, or {@code null} if the conversion failed
+	 */
+	private static Matcher run(final Path input, final int diveCount, final String xmx, final String encoder)
+			throws IOException, InterruptedException {
+		final Path output = WORK_DIRECTORY.resolve("output-" + diveCount);
+		deleteRecursively(output);
+		Files.createDirectories(output);
+		final Path resultFile = WORK_DIRECTORY.resolve("result-" + diveCount + ".json");
+		Files.deleteIfExists(resultFile);
+		final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		final Process process = new ProcessBuilder(java, "-Xmx" + xmx, "-XX:+ExitOnOutOfMemoryError", "-cp",
+				System.getProperty("java.class.path"), SoakRun.class.getName(), input.toString(), output.toString(),
+				encoder, resultFile.toString()).redirectErrorStream(true)
+						.redirectOutput(WORK_DIRECTORY.resolve("log-" + diveCount + ".txt").toFile()).start();
+		final int status = process.waitFor();
+		deleteRecursively(output);
+		if (status != 0 || !Files.exists(resultFile)) {
+			return null;
+		}
+		final Matcher matcher = RESULT.matcher(Files.readString(resultFile).trim());
+		return matcher.matches() ? matcher : null;
+	}
+
+	private static void deleteRecursively(final Path directory) throws IOException {
+		if (!Files.exists(directory)) {
+			return;
+		}
+		try (final Stream<Path> files = Files.walk(directory)) {
+			for (final Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(file);
+			}
+		}
+	}
+
+}
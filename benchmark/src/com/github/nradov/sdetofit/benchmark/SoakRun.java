@@ -0,0 +1,105 @@
+package com.github.nradov.sdetofit.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.ZipException;
+
+import javax.xml.stream.XMLStreamException;
+
+import com.github.nradov.sdetofit.SdeToFit;
+
+/**
+ * Converts one export file while tracking heap use, for {@link SoakHarness}.
+ * Runs in its own JVM so that the heap limit and measurements only cover this
+ * conversion. Writes one line of JSON to the result file.
+ *
+ * @author Nick Radov
+ */
+final class SoakRun {
+
+	private SoakRun() {
+		// not to be instantiated
+	}
+
+	/** How often heap use is sampled. */
+	private static final long POLL_MILLIS = 20;
+
+	/**
+	 * @param args input file, output directory, encoder name and result file
+	 */
+	public static void main(final String[] args)
+			throws ZipException, IOException, XMLStreamException, InterruptedException {
+		final Path input = Paths.get(args[0]);
+		final Path output = Paths.get(args[1]);
+		final var converter = new SdeToFit(input, output);
+		converter.setEncoder(SdeToFit.Encoder.valueOf(args[2]));
+		converter.setQuiet(true);
+
+		final AtomicLong liveHeap = new AtomicLong();
+		final Thread monitor = new Thread(() -> {
+			while (!Thread.currentThread().isInterrupted()) {
+				liveHeap.accumulateAndGet(heapAfterCollection(), Math::max);
+				try {
+					Thread.sleep(POLL_MILLIS);
+				} catch (final InterruptedException e) {
+					return;
+				}
+			}
+		}, "soak-monitor");
+		monitor.setDaemon(true);
+		monitor.start();
+
+		final long start = System.nanoTime();
+		converter.convert();
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		monitor.interrupt();
+		monitor.join();
+		liveHeap.accumulateAndGet(heapAfterCollection(), Math::max);
+
+		final long dives;
+		try (final Stream<Path> files = Files.list(output)) {
+			dives = files.count();
+		}
+		Files.write(Paths.get(args[3]),
+				String.format(Locale.US, "{\"dives\":%d,\"seconds\":%.3f,\"liveHeapBytes\":%d,\"peakHeapBytes\":%d}%n",
+						dives, seconds, liveHeap.get(), peakHeap()).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Get the heap in use right after the most recent garbage collection, which
+	 * approximates the live data without counting garbage that hasn't been
+	 * collected yet.
+	 */
+	private static long heapAfterCollection() {
+		long used = 0;
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			final MemoryUsage usage = pool.getCollectionUsage();
+			if (pool.getType() == MemoryType.HEAP && usage != null) {
+				used += usage.getUsed();
+			}
+		}
+		return used;
+	}
+
+	/** Get the highest heap use including garbage, summed over the heap pools. */
+	private static long peakHeap() {
+		long peak = 0;
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+}
@@ -0,0 +1,7 @@
+/**
+ * JMH benchmarks and generated benchmark fixtures. Only compiled with the
+ * {@code benchmark} Maven profile.
+ *
+ * @author Nick Radov
+ */
+package com.github.nradov.sdetofit.benchmark;
@@ -0,0 +1,36 @@
+package com.github.nradov.sdetofit;
+
+import java.io.IOException;
+
+/**
+ * Writes FIT files one after another into an archive on a stream. Entries get
+ * unique names, so dives which start at the same time are all kept.
+ *
+ * @author Nick Radov
+ */
+abstract class ArchiveSink implements FitSink {
+
+	private final UniqueNames names = new UniqueNames();
+
+	@Override
+	public final synchronized String write(final String name, final byte[] data, final long modifiedMillis)
+			throws IOException {
+		final String unique = names.claim(name);
+		writeEntry(unique, data, modifiedMillis);
+		return unique;
+	}
+
+	/** Write an entry with a name which is already unique. */
+	abstract void writeEntry(String name, byte[] data, long modifiedMillis) throws IOException;
+
+	/**
+	 * Complete the archive without closing the stream. {@link #close()} also
+	 * completes the archive, so after an error which should leave an incomplete
+	 * archive that can't be mistaken for a complete one, close the stream
+	 * instead of the sink.
+	 *
+	 * @throws IOException if an error occurs while writing
+	 */
+	public abstract void finish() throws IOException;
+
+}
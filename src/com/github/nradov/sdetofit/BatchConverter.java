@@ -0,0 +1,374 @@
+package com.github.nradov.sdetofit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Converts many dive log files in one JVM. Inputs can be files, directories
+ * (searched recursively) or glob patterns such as {@code exports/**.sde}, and
+ * every supported dive log file they contain is converted. The dives of all of
+ * the files are converted by one shared fork/join pool, so that threads which
+ * finish a small file help with the dives of a large one.
+ *
+ * <p>
+ * The output directory mirrors the input directory structure, with one
+ * subdirectory per input file named after the file without its extension. For
+ * example with the input directory {@code exports} the file
+ * {@code exports/alice/2019.sde} is converted into {@code output/alice/2019}.
+ * A file which doesn't convert is reported and the rest of the batch carries
+ * on.
+ * </p>
+ *
+ * @author Nick Radov
+ */
+public final class BatchConverter {
+
+	/** Characters which make an input a glob pattern rather than a path. */
+	private static final String GLOB_CHARACTERS = "*?[{";
+
+	private final List<String> inputs;
+
+	private final Path output;
+
+	private SdeToFit.Encoder encoder = SdeToFit.Encoder.SDK;
+
+	private Set<SdeToFit.Format> formats = EnumSet.of(SdeToFit.Format.FIT);
+
+	private ProfileDecimator decimator;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private boolean incremental;
+
+	private DiveFilter filter = DiveFilter.ALL;
+
+	private boolean quiet;
+
+	private Path metricsFile;
+
+	private volatile ConversionMetrics metrics;
+
+	/**
+	 * @param inputs dive log files, directories and glob patterns
+	 * @param output output directory
+	 */
+	public BatchConverter(final List<String> inputs, final Path output) {
+		if (inputs.isEmpty()) {
+			throw new IllegalArgumentException("no inputs");
+		}
+		this.inputs = List.copyOf(inputs);
+		this.output = Objects.requireNonNull(output);
+	}
+
+	/**
+	 * Check whether a command line argument is a glob pattern or a directory,
+	 * which needs a batch conversion.
+	 *
+	 * @param input command line argument
+	 * @return {@code true} if the argument selects more than one file
+	 */
+	public static boolean isBatchInput(final String input) {
+		return isGlob(input) || Files.isDirectory(Paths.get(input));
+	}
+
+	private static boolean isGlob(final String input) {
+		return input.chars().anyMatch(c -> GLOB_CHARACTERS.indexOf(c) >= 0);
+	}
+
+	/**
+	 * Select how the FIT files are encoded. The default is
+	 * {@link SdeToFit.Encoder#SDK}.
+	 *
+	 * @param encoder FIT encoder
+	 * @see SdeToFit#setEncoder(SdeToFit.Encoder)
+	 */
+	public void setEncoder(final SdeToFit.Encoder encoder) {
+		this.encoder = Objects.requireNonNull(encoder);
+	}
+
+	/**
+	 * Select the files written for each dive. The default is only
+	 * {@link SdeToFit.Format#FIT}.
+	 *
+	 * @param formats one or more formats
+	 * @see SdeToFit#setFormats(Set)
+	 */
+	public void setFormats(final Set<SdeToFit.Format> formats) {
+		if (formats.isEmpty()) {
+			throw new IllegalArgumentException("no output formats");
+		}
+		this.formats = EnumSet.copyOf(formats);
+	}
+
+	/**
+	 * Remove samples which add nothing to the shape of each dive profile. The
+	 * default is {@code null}, which keeps every sample.
+	 *
+	 * @param decimator decimator, or {@code null}
+	 * @see SdeToFit#setDecimator(ProfileDecimator)
+	 */
+	public void setDecimator(final ProfileDecimator decimator) {
+		this.decimator = decimator;
+	}
+
+	/**
+	 * Set the number of threads converting dives. The default is the number of
+	 * available processors.
+	 *
+	 * @param threads number of threads
+	 */
+	public void setThreads(final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Skip dive logs which were already converted. Each output subdirectory has
+	 * its own manifest. The default is {@code false}.
+	 *
+	 * @param incremental {@code true} to skip dive logs which were already
+	 *                    converted
+	 * @see SdeToFit#setIncremental(boolean)
+	 */
+	public void setIncremental(final boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * Only convert the dives accepted by a filter. The default is
+	 * {@link DiveFilter#ALL}.
+	 *
+	 * @param filter selects the dives to convert
+	 */
+	public void setFilter(final DiveFilter filter) {
+		this.filter = Objects.requireNonNull(filter);
+	}
+
+	/**
+	 * Don't print a line per dive or the summary at the end of the batch. Errors
+	 * are still printed. The default is {@code false}.
+	 *
+	 * @param quiet {@code true} to print nothing but errors
+	 */
+	public void setQuiet(final boolean quiet) {
+		this.quiet = quiet;
+	}
+
+	/**
+	 * Write the metrics of the whole batch to a JSON file. The default is
+	 * {@code null}, which doesn't write the metrics.
+	 *
+	 * @param metricsFile JSON output file, or {@code null}
+	 */
+	public void setMetricsFile(final Path metricsFile) {
+		this.metricsFile = metricsFile;
+	}
+
+	/**
+	 * Get the metrics of the latest batch, covering all of its files.
+	 *
+	 * @return metrics, or {@code null} if nothing has been converted yet
+	 */
+	public ConversionMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Find the files to convert and the output directory for each, in the order
+	 * the inputs were given.
+	 *
+	 * @return output directory by input file
+	 * @throws IOException if an error occurs while searching a directory
+	 */
+	public Map<Path, Path> plan() throws IOException {
+		final Map<Path, Path> relativePaths = findFiles(inputs);
+		final Map<Path, Path> plan = new LinkedHashMap<>();
+		final Set<Path> outputs = new HashSet<>();
+		for (final Map.Entry<Path, Path> entry : relativePaths.entrySet()) {
+			final Path relative = entry.getValue();
+			Path directory = outputDirectory(output, relative);
+			if (!outputs.add(directory)) {
+				final Path parent = directory.getParent();
+				final String fileName = relative.getFileName().toString();
+				// another file with the same name but a different extension, or the
+				// same file name from another input
+				directory = parent.resolve(fileName);
+				for (int n = 2; !outputs.add(directory); n++) {
+					directory = parent.resolve(fileName + "-" + n);
+				}
+			}
+			plan.put(entry.getKey(), directory);
+		}
+		return plan;
+	}
+
+	/**
+	 * Find the supported dive log files selected by files, directories and glob
+	 * patterns, in the order the inputs were given.
+	 *
+	 * @param inputs dive log files, directories and glob patterns
+	 * @return path relative to the directory or glob base by file
+	 * @throws IOException if an input doesn't exist, or if an error occurs while
+	 *                     searching a directory
+	 */
+	static Map<Path, Path> findFiles(final List<String> inputs) throws IOException {
+		final Map<Path, Path> relativePaths = new LinkedHashMap<>();
+		for (final String input : inputs) {
+			if (isGlob(input)) {
+				final Path base = globBase(input);
+				final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input);
+				find(base, matcher, relativePaths);
+			} else {
+				final Path path = Paths.get(input);
+				if (Files.isDirectory(path)) {
+					find(path, null, relativePaths);
+				} else if (Files.isRegularFile(path)) {
+					relativePaths.putIfAbsent(path, path.getFileName());
+				} else {
+					throw new IOException("no such file or directory: \"" + input + "\"");
+				}
+			}
+		}
+		return relativePaths;
+	}
+
+	/**
+	 * Get the directory before the first path element with a wildcard, which is
+	 * where the search for matching files starts.
+	 */
+	private static Path globBase(final String pattern) {
+		int wildcard = 0;
+		while (GLOB_CHARACTERS.indexOf(pattern.charAt(wildcard)) < 0) {
+			wildcard++;
+		}
+		final int separator = Math.max(pattern.lastIndexOf('/', wildcard),
+				pattern.lastIndexOf(File.separatorChar, wildcard));
+		// an empty path is the current directory, and files found in it stay relative
+		return Paths.get(separator < 0 ? "" : pattern.substring(0, separator + 1));
+	}
+
+	/**
+	 * Add the supported files in a directory tree to the plan, along with their
+	 * paths relative to the directory.
+	 */
+	private static void find(final Path directory, final PathMatcher matcher, final Map<Path, Path> relativePaths)
+			throws IOException {
+		try (final Stream<Path> files = Files.walk(directory)) {
+			files.filter(file -> matcher == null || matcher.matches(file)).filter(Files::isRegularFile)
+					.filter(DivesSourceFactory::isSupported).sorted()
+					.forEach(file -> relativePaths.putIfAbsent(file, directory.relativize(file)));
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Get the output directory of an input file, which is named after the file
+	 * without its extension.
+	 *
+	 * @param output   output directory for all of the inputs
+	 * @param relative input file path relative to the input directory
+	 * @return output directory for the input file
+	 */
+	static Path outputDirectory(final Path output, final Path relative) {
+		final Path parent = relative.getParent() == null ? output : output.resolve(relative.getParent());
+		final String fileName = relative.getFileName().toString();
+		final int dot = fileName.lastIndexOf('.');
+		return parent.resolve(dot > 0 ? fileName.substring(0, dot) : fileName);
+	}
+
+	/**
+	 * Convert every file in the batch. Files which fail are reported on the
+	 * standard error stream as soon as they fail, and the batch carries on.
+	 *
+	 * @throws IOException if an error occurs while searching for the input files,
+	 *                     or if any file couldn't be converted
+	 */
+	public void convert() throws IOException {
+		final Map<Path, Path> plan = plan();
+		final var runMetrics = new ConversionMetrics();
+		metrics = runMetrics;
+		final AtomicInteger failed = new AtomicInteger();
+		final ForkJoinPool pool = new ForkJoinPool(threads);
+		try (final ConsoleLog console = quiet ? ConsoleLog.DISCARD : new ConsoleLog(System.out)) {
+			final List<RecursiveAction> tasks = new ArrayList<>(plan.size());
+			for (final Map.Entry<Path, Path> entry : plan.entrySet()) {
+				final SdeToFit converter = newConverter(entry.getKey(), entry.getValue());
+				tasks.add(new RecursiveAction() {
+
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected void compute() {
+						try {
+							converter.convertInPool(runMetrics, console);
+						} catch (final IOException | XMLStreamException | RuntimeException e) {
+							failed.incrementAndGet();
+							System.err.println("Unable to convert \"" + entry.getKey() + "\": " + e);
+						}
+					}
+
+				});
+			}
+			pool.invoke(new RecursiveAction() {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					ForkJoinTask.invokeAll(tasks);
+				}
+
+			});
+		} finally {
+			pool.shutdown();
+		}
+		runMetrics.finish();
+		if (!quiet) {
+			System.out.println(String.format(Locale.US, "Converted %d of %d files into \"%s\"",
+					plan.size() - failed.get(), plan.size(), output));
+			runMetrics.printSummary(System.out);
+		}
+		if (metricsFile != null) {
+			Files.writeString(metricsFile, runMetrics.toJson() + System.lineSeparator());
+		}
+		if (failed.get() > 0) {
+			throw new IOException("unable to convert " + failed.get() + " of " + plan.size() + " files");
+		}
+	}
+
+	private SdeToFit newConverter(final Path input, final Path outputDirectory) {
+		final var converter = new SdeToFit(input, outputDirectory);
+		converter.setEncoder(encoder);
+		converter.setFormats(formats);
+		converter.setDecimator(decimator);
+		converter.setIncremental(incremental);
+		converter.setFilter(filter);
+		return converter;
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.github.nradov.sdetofit;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prints progress lines from a background thread, so that the conversion stages
+ * never wait for the console. If the console falls behind by more than the
+ * queue capacity, further lines are dropped and counted instead of slowing down
+ * the conversion.
+ *
+ * @author Nick Radov
+ */
+final class ConsoleLog implements AutoCloseable {
+
+	/** Maximum number of lines waiting to be printed. */
+	private static final int CAPACITY = 1024;
+
+	/** Marks the end of the queue. */
+	private static final String END = new String();
+
+	/** Log which discards every line. */
+	static final ConsoleLog DISCARD = new ConsoleLog();
+
+	private final PrintStream out;
+
+	private final BlockingQueue<String> lines;
+
+	private final Thread printer;
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private ConsoleLog() {
+		out = null;
+		lines = null;
+		printer = null;
+	}
+
+	/**
+	 * Start printing lines.
+	 *
+	 * @param out where to print the lines
+	 */
+	ConsoleLog(final PrintStream out) {
+		this.out = out;
+		lines = new ArrayBlockingQueue<>(CAPACITY);
+		printer = new Thread(this::print, "sdetofit-console");
+		printer.setDaemon(true);
+		printer.start();
+	}
+
+	private void print() {
+		final List<String> batch = new ArrayList<>();
+		try {
+			while (true) {
+				batch.add(lines.take());
+				lines.drainTo(batch);
+				for (final String line : batch) {
+					if (line == END) {
+						out.flush();
+						return;
+					}
+					out.println(line);
+				}
+				batch.clear();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Queue a line to be printed, without waiting.
+	 *
+	 * @param line line to print
+	 */
+	void log(final String line) {
+		if (lines != null && !lines.offer(line)) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Print the lines still waiting, then stop the printing thread.
+	 */
+	@Override
+	public void close() {
+		if (printer == null) {
+			return;
+		}
+		try {
+			lines.put(END);
+			printer.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		final long droppedLines = dropped.get();
+		if (droppedLines > 0) {
+			out.println(droppedLines + " progress lines were dropped because the console fell behind");
+		}
+	}
+
+}
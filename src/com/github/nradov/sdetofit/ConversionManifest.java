@@ -0,0 +1,179 @@
+package com.github.nradov.sdetofit;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Record of the dive logs already converted into an output directory, so that a
+ * later run can skip dive logs which haven't changed. Dive logs are identified
+ * by their CRC-32 checksum and size rather than their name, because Dive
+ * Manager numbers the entries of an export file sequentially and the numbers
+ * shift when dives are added or deleted.
+ *
+ * <p>
+ * Each line of the manifest file holds the checksum in hexadecimal, the size,
+ * the dive log name, and the name of the FIT file, separated by tabs. A line is
+ * appended and flushed as soon as each FIT file has been written, so after an
+ * interrupted run the next run picks up where it stopped. Incomplete lines left
+ * by an interruption are ignored. The manifest of a {@link FolderWatcher}
+ * records whole input files in the same way, with the output directory of
+ * each in place of the FIT file.
+ * </p>
+ *
+ * @author Nick Radov
+ */
+final class ConversionManifest implements Closeable {
+
+	/** Name of the manifest file within the output directory. */
+	static final String FILE_NAME = ".sdetofit-manifest";
+
+	private static final String HEADER = "# sdetofit manifest: crc32, size, dive log, FIT file";
+
+	private static final int FIELDS = 4;
+
+	private final Path directory;
+
+	/**
+	 * FIT file names by dive log checksum and size. The same dive log can be
+	 * converted into more than one file.
+	 */
+	private final Map<String, Set<String>> converted = new HashMap<>();
+
+	private final BufferedWriter writer;
+
+	private ConversionManifest(final Path directory, final BufferedWriter writer) {
+		this.directory = directory;
+		this.writer = writer;
+	}
+
+	/**
+	 * Open the manifest in an output directory, creating it if it doesn't exist
+	 * yet.
+	 *
+	 * @param directory output directory
+	 * @return manifest
+	 * @throws IOException if an error occurs while reading or creating the
+	 *                     manifest file
+	 */
+	static ConversionManifest open(final Path directory) throws IOException {
+		final Path file = directory.resolve(FILE_NAME);
+		final Map<String, Set<String>> entries = new HashMap<>();
+		try (final BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] fields = line.split("\t", FIELDS);
+				if (!line.startsWith("#") && fields.length == FIELDS && !fields[3].isEmpty()) {
+					entries.computeIfAbsent(key(fields[0], fields[1]), key -> new HashSet<>()).add(fields[3]);
+				}
+			}
+		} catch (final NoSuchFileException e) {
+			// first run into this directory
+		}
+		final boolean created = Files.notExists(file);
+		final BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		if (created) {
+			writer.write(HEADER);
+			writer.newLine();
+			writer.flush();
+		}
+		final ConversionManifest manifest = new ConversionManifest(directory, writer);
+		manifest.converted.putAll(entries);
+		return manifest;
+	}
+
+	private static String key(final String crc, final String size) {
+		return crc + '\t' + size;
+	}
+
+	private static String key(final long crc, final long size) {
+		return key(Long.toHexString(crc), Long.toString(size));
+	}
+
+	private static boolean isIdentified(final long crc, final long size) {
+		return crc != DiveReader.UNKNOWN && size != DiveReader.UNKNOWN;
+	}
+
+	/**
+	 * Check whether a dive log has already been converted. Dive logs without a
+	 * known checksum and size are never considered converted, and neither are
+	 * dive logs whose FIT file has since been deleted.
+	 *
+	 * @param reader dive log
+	 * @return {@code true} if the dive log can be skipped
+	 */
+	synchronized boolean isConverted(final DiveReader reader) {
+		if (!isIdentified(reader.getCrc(), reader.getSize())) {
+			return false;
+		}
+		return converted.getOrDefault(key(reader.getCrc(), reader.getSize()), Set.of()).stream()
+				.anyMatch(fitFile -> Files.exists(directory.resolve(fitFile)));
+	}
+
+	/**
+	 * Check whether a file with a given checksum and size has already been
+	 * converted into a given output, and the output still exists. Identical
+	 * files in different places have outputs of their own.
+	 *
+	 * @param crc    CRC-32 checksum
+	 * @param size   size in bytes
+	 * @param output file or directory written for it, relative to the directory
+	 *               of the manifest
+	 * @return {@code true} if the file can be skipped
+	 */
+	synchronized boolean isConverted(final long crc, final long size, final String output) {
+		return isIdentified(crc, size) && converted.getOrDefault(key(crc, size), Set.of()).contains(output)
+				&& Files.exists(directory.resolve(output));
+	}
+
+	/**
+	 * Record that a dive log has been converted. Has no effect for dive logs
+	 * without a known checksum and size.
+	 *
+	 * @param reader  dive log
+	 * @param fitFile name of the FIT file written for the dive log
+	 * @throws IOException if an error occurs while writing the manifest file
+	 */
+	void add(final DiveReader reader, final String fitFile) throws IOException {
+		add(reader.getCrc(), reader.getSize(), reader.getName(), fitFile);
+	}
+
+	/**
+	 * Record that a file has been converted. Has no effect for files without a
+	 * known checksum and size.
+	 *
+	 * @param crc    CRC-32 checksum
+	 * @param size   size in bytes
+	 * @param name   name of the file
+	 * @param output file or directory written for it, relative to the directory
+	 *               of the manifest
+	 * @throws IOException if an error occurs while writing the manifest file
+	 */
+	synchronized void add(final long crc, final long size, final String name, final String output)
+			throws IOException {
+		if (!isIdentified(crc, size)) {
+			return;
+		}
+		converted.computeIfAbsent(key(crc, size), key -> new HashSet<>()).add(output);
+		writer.write(key(crc, size) + '\t' + name + '\t' + output);
+		writer.newLine();
+		writer.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+}
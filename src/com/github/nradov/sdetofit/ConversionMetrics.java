@@ -0,0 +1,330 @@
+package com.github.nradov.sdetofit;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and timings collected during a conversion run. All methods are safe to
+ * call concurrently from the conversion stage threads. Each stage timing is
+ * also emitted as a Flight Recorder event, so a recording shows which dives
+ * were slow in which stage.
+ *
+ * @author Nick Radov
+ */
+public final class ConversionMetrics {
+
+	/** Stages a dive goes through. */
+	public enum Stage {
+
+		/** Reading a dive from its source, including inflating and parsing. */
+		READ,
+
+		/**
+		 * Inflating a compressed dive log, for sources which report it. A source
+		 * which parses a dive log as it is inflated also counts this time in
+		 * {@link #PARSE}.
+		 */
+		INFLATE,
+
+		/** Parsing a dive log, for sources which report it. */
+		PARSE,
+
+		/**
+		 * Parsing a dive log and encoding it as a FIT file in the same pass, for
+		 * sources which support it.
+		 */
+		TRANSCODE,
+
+		/** Removing samples from a dive profile, when enabled. */
+		DECIMATE,
+
+		/** Encoding a dive. */
+		ENCODE,
+
+		/** Writing an encoded dive. */
+		WRITE;
+
+		private final String displayName = name().toLowerCase(Locale.US);
+	}
+
+	private final LongAdder entries = new LongAdder(), skipped = new LongAdder(), duplicates = new LongAdder(),
+			dives = new LongAdder(), samples = new LongAdder(), samplesRemoved = new LongAdder(),
+			bytesRead = new LongAdder(), bytesInflated = new LongAdder(), bytesWritten = new LongAdder();
+
+	private final LongAdder[] stageCounts = new LongAdder[Stage.values().length],
+			stageNanos = new LongAdder[Stage.values().length];
+
+	private final LatencyHistogram latencies = new LatencyHistogram();
+
+	private final long startNanos = System.nanoTime();
+
+	private volatile long endNanos;
+
+	public ConversionMetrics() {
+		for (int i = 0; i < stageCounts.length; i++) {
+			stageCounts[i] = new LongAdder();
+			stageNanos[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Start timing a stage for one dive. Stop the returned timer when the stage is
+	 * done, in a {@code finally} block.
+	 *
+	 * @param stage stage
+	 * @param dive  name of the dive log
+	 * @return timer
+	 */
+	public StageTimer start(final Stage stage, final String dive) {
+		return new StageTimer(stage, dive);
+	}
+
+	/** Times one stage for one dive. */
+	public final class StageTimer {
+
+		private final Stage stage;
+
+		private final long start = System.nanoTime();
+
+		private final StageEvent event = new StageEvent();
+
+		StageTimer(final Stage stage, final String dive) {
+			this.stage = stage;
+			event.stage = stage.displayName;
+			event.dive = dive;
+			event.begin();
+		}
+
+		/** Record the time since the timer was started. */
+		public void stop() {
+			stageNanos[stage.ordinal()].add(System.nanoTime() - start);
+			stageCounts[stage.ordinal()].increment();
+			event.commit();
+		}
+
+	}
+
+	/**
+	 * Record time spent in a stage for one dive which wasn't timed in one piece,
+	 * such as inflating a dive log a read at a time while it is parsed. No Flight
+	 * Recorder event is emitted for it.
+	 *
+	 * @param stage stage
+	 * @param nanos time in nanoseconds
+	 */
+	public void addStageNanos(final Stage stage, final long nanos) {
+		stageNanos[stage.ordinal()].add(nanos);
+		stageCounts[stage.ordinal()].increment();
+	}
+
+	/** Count a dive log found in the input, whether or not it is converted. */
+	public void addEntry() {
+		entries.increment();
+	}
+
+	/** Count a dive log which was skipped without being converted. */
+	public void addSkipped() {
+		skipped.increment();
+	}
+
+	/**
+	 * Count a dive log which wasn't read because another source of a merge has
+	 * the same dive log.
+	 */
+	public void addDuplicate() {
+		duplicates.increment();
+	}
+
+	/**
+	 * Count samples removed from a dive profile by decimation.
+	 *
+	 * @param removed number of samples removed
+	 */
+	public void addSamplesRemoved(final int removed) {
+		samplesRemoved.add(removed);
+	}
+
+	/**
+	 * Count bytes read from the input.
+	 *
+	 * @param read     bytes read from the input file
+	 * @param inflated bytes after decompression, the same as {@code read} for
+	 *                 uncompressed input
+	 */
+	public void addBytesRead(final long read, final long inflated) {
+		bytesRead.add(read);
+		bytesInflated.add(inflated);
+	}
+
+	/**
+	 * Count a dive which has been converted.
+	 *
+	 * @param sampleCount  number of samples in the dive
+	 * @param bytes        bytes written for the dive
+	 * @param latencyNanos time from the start of reading the dive until it was
+	 *                     written
+	 */
+	public void addDive(final int sampleCount, final long bytes, final long latencyNanos) {
+		dives.increment();
+		samples.add(sampleCount);
+		bytesWritten.add(bytes);
+		latencies.record(latencyNanos);
+	}
+
+	/** Mark the end of the run, which stops the elapsed time. */
+	void finish() {
+		endNanos = System.nanoTime();
+	}
+
+	/** Get the number of dive logs found in the input. */
+	public long getEntries() {
+		return entries.sum();
+	}
+
+	/** Get the number of dive logs skipped without being converted. */
+	public long getSkipped() {
+		return skipped.sum();
+	}
+
+	/** Get the number of duplicate dive logs left out of a merge, which aren't in {@link #getEntries()}. */
+	public long getDuplicates() {
+		return duplicates.sum();
+	}
+
+	/** Get the number of dives converted. */
+	public long getDives() {
+		return dives.sum();
+	}
+
+	/** Get the number of samples in the converted dives. */
+	public long getSamples() {
+		return samples.sum();
+	}
+
+	/** Get the number of samples removed by decimation, which aren't in {@link #getSamples()}. */
+	public long getSamplesRemoved() {
+		return samplesRemoved.sum();
+	}
+
+	/** Get the number of bytes read from the input, as reported by the source. */
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	/** Get the number of bytes read from the input after decompression. */
+	public long getBytesInflated() {
+		return bytesInflated.sum();
+	}
+
+	/** Get the number of bytes written. */
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	/**
+	 * Get the number of dives timed in a stage.
+	 *
+	 * @param stage stage
+	 * @return number of dives
+	 */
+	public long getStageCount(final Stage stage) {
+		return stageCounts[stage.ordinal()].sum();
+	}
+
+	/**
+	 * Get the total time spent in a stage, summed over all of its threads.
+	 *
+	 * @param stage stage
+	 * @return time in nanoseconds
+	 */
+	public long getStageNanos(final Stage stage) {
+		return stageNanos[stage.ordinal()].sum();
+	}
+
+	/**
+	 * Get a percentile of the time each dive took from the start of reading until
+	 * it was written.
+	 *
+	 * @param percentile between 0 and 100
+	 * @return time in nanoseconds, accurate to about 3%
+	 */
+	public long getLatencyPercentile(final double percentile) {
+		return latencies.getPercentile(percentile);
+	}
+
+	/**
+	 * Get the wall clock time of the run, up to now if it hasn't finished.
+	 *
+	 * @return time in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		final long end = endNanos;
+		return (end == 0 ? System.nanoTime() : end) - startNanos;
+	}
+
+	private static double millis(final long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Print a human readable summary.
+	 *
+	 * @param out where to print the summary
+	 */
+	public void printSummary(final PrintStream out) {
+		final double seconds = getElapsedNanos() / 1e9;
+		out.println(String.format(Locale.US, "Converted %d dives (%d samples) from %d dive logs, %d skipped, in %.3f s"
+				+ " (%.1f dives/s)", getDives(), getSamples(), getEntries(), getSkipped(), seconds,
+				getDives() / seconds));
+		if (getDuplicates() > 0) {
+			out.println(String.format(Locale.US, "Left out %d duplicate dive logs", getDuplicates()));
+		}
+		final long removed = getSamplesRemoved();
+		if (removed > 0) {
+			out.println(String.format(Locale.US, "Decimation removed %d of %d samples (%.1f%%)", removed,
+					getSamples() + removed, 100.0 * removed / (getSamples() + removed)));
+		}
+		out.println(String.format(Locale.US, "Read %d bytes (%d inflated), wrote %d bytes", getBytesRead(),
+				getBytesInflated(), getBytesWritten()));
+		out.println("Stage       Dives   Total ms   Mean ms  (totals are summed over the threads of each stage)");
+		for (final Stage stage : Stage.values()) {
+			final long count = getStageCount(stage);
+			if (count > 0) {
+				final long nanos = getStageNanos(stage);
+				out.println(String.format(Locale.US, "%-9s %7d %10.1f %9.3f", stage.displayName, count,
+						millis(nanos), millis(nanos) / count));
+			}
+		}
+		out.println(String.format(Locale.US, "Dive latency: p50 %.1f ms, p99 %.1f ms",
+				millis(getLatencyPercentile(50)), millis(getLatencyPercentile(99))));
+	}
+
+	/**
+	 * Get the metrics as a JSON object.
+	 *
+	 * @return JSON text
+	 */
+	public String toJson() {
+		final StringBuilder json = new StringBuilder(512);
+		json.append(String.format(Locale.US,
+				"{\"elapsedSeconds\":%.3f,\"entries\":%d,\"skipped\":%d,\"duplicates\":%d,\"dives\":%d,"
+						+ "\"samples\":%d,\"samplesRemoved\":%d,\"bytesRead\":%d,\"bytesInflated\":%d,"
+						+ "\"bytesWritten\":%d,\"stages\":{",
+				getElapsedNanos() / 1e9, getEntries(), getSkipped(), getDuplicates(), getDives(), getSamples(),
+				getSamplesRemoved(), getBytesRead(), getBytesInflated(), getBytesWritten()));
+		String separator = "";
+		for (final Stage stage : Stage.values()) {
+			final long count = getStageCount(stage);
+			final long nanos = getStageNanos(stage);
+			json.append(separator).append(String.format(Locale.US, "\"%s\":{\"count\":%d,\"totalMillis\":%.3f}",
+					stage.displayName, count, millis(nanos)));
+			separator = ",";
+		}
+		json.append(String.format(Locale.US, "},\"latencyMillis\":{\"p50\":%.3f,\"p99\":%.3f}}",
+				millis(getLatencyPercentile(50)), millis(getLatencyPercentile(99))));
+		return json.toString();
+	}
+
+}
@@ -0,0 +1,147 @@
+package com.github.nradov.sdetofit;
+
+import java.time.ZoneId;
+import java.util.Objects;
+
+/**
+ * Options for the conversions run by a {@link ConversionService}. Options are
+ * immutable, so one instance can be shared by any number of conversions and
+ * threads; each {@code with} method returns new options which differ in one
+ * setting.
+ *
+ * @author Nick Radov
+ */
+public final class ConversionOptions {
+
+	/**
+	 * Default options: FIT files are only returned in the results, every dive is
+	 * converted with the {@link SdeToFit.Encoder#SDK} encoder, up to the number
+	 * of available processors at the same time, and dive log times are in the
+	 * system default time zone.
+	 */
+	public static final ConversionOptions DEFAULT = new ConversionOptions(null, DiveFilter.ALL,
+			Runtime.getRuntime().availableProcessors(), ZoneId.systemDefault(), SdeToFit.Encoder.SDK, null);
+
+	private final FitSink sink;
+
+	private final DiveFilter filter;
+
+	private final int parallelism;
+
+	private final ZoneId zone;
+
+	private final SdeToFit.Encoder encoder;
+
+	private final DiveListener listener;
+
+	private ConversionOptions(final FitSink sink, final DiveFilter filter, final int parallelism, final ZoneId zone,
+			final SdeToFit.Encoder encoder, final DiveListener listener) {
+		this.sink = sink;
+		this.filter = filter;
+		this.parallelism = parallelism;
+		this.zone = zone;
+		this.encoder = encoder;
+		this.listener = listener;
+	}
+
+	/**
+	 * Write the FIT files to a sink as they are encoded, instead of returning
+	 * them in the results. The sink is shared by every conversion using these
+	 * options, and is never closed or finished by the service.
+	 *
+	 * @param sink where to write the FIT files, or {@code null} to return them
+	 *             in the results
+	 * @return new options
+	 */
+	public ConversionOptions withSink(final FitSink sink) {
+		return new ConversionOptions(sink, filter, parallelism, zone, encoder, listener);
+	}
+
+	/**
+	 * Only convert the dives accepted by a filter.
+	 *
+	 * @param filter selects the dives to convert
+	 * @return new options
+	 */
+	public ConversionOptions withFilter(final DiveFilter filter) {
+		return new ConversionOptions(sink, Objects.requireNonNull(filter), parallelism, zone, encoder, listener);
+	}
+
+	/**
+	 * Set the maximum number of dives of one conversion which are converted at
+	 * the same time. Conversions from a stream or a buffer read their dive logs
+	 * in order, so they always convert one dive at a time.
+	 *
+	 * @param parallelism maximum number of dives
+	 * @return new options
+	 */
+	public ConversionOptions withParallelism(final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+		}
+		return new ConversionOptions(sink, filter, parallelism, zone, encoder, listener);
+	}
+
+	/**
+	 * Set the time zone the dive computer clock was set to, which dive logs
+	 * don't record. FIT files are named after the start time of each dive in
+	 * the same time zone.
+	 *
+	 * @param zone time zone
+	 * @return new options
+	 */
+	public ConversionOptions withZone(final ZoneId zone) {
+		return new ConversionOptions(sink, filter, parallelism, Objects.requireNonNull(zone), encoder, listener);
+	}
+
+	/**
+	 * Select how the FIT files are encoded.
+	 *
+	 * @param encoder FIT encoder
+	 * @return new options
+	 */
+	public ConversionOptions withEncoder(final SdeToFit.Encoder encoder) {
+		return new ConversionOptions(sink, filter, parallelism, zone, Objects.requireNonNull(encoder), listener);
+	}
+
+	/**
+	 * Report the result of each dive as soon as it is known.
+	 *
+	 * @param listener listener, or {@code null}
+	 * @return new options
+	 */
+	public ConversionOptions withListener(final DiveListener listener) {
+		return new ConversionOptions(sink, filter, parallelism, zone, encoder, listener);
+	}
+
+	/** Get where the FIT files are written, or {@code null} if they are returned in the results. */
+	public FitSink getSink() {
+		return sink;
+	}
+
+	/** Get the filter which selects the dives to convert. */
+	public DiveFilter getFilter() {
+		return filter;
+	}
+
+	/** Get the maximum number of dives of one conversion converted at the same time. */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/** Get the time zone the dive computer clock was set to. */
+	public ZoneId getZone() {
+		return zone;
+	}
+
+	/** Get the FIT encoder. */
+	public SdeToFit.Encoder getEncoder() {
+		return encoder;
+	}
+
+	/** Get the listener for the result of each dive, or {@code null}. */
+	public DiveListener getListener() {
+		return listener;
+	}
+
+}
@@ -0,0 +1,211 @@
+package com.github.nradov.sdetofit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Runs a conversion as three stages: reading (Zip inflation and XML parsing),
+ * encoding, and writing. Each stage has its own pool of worker threads fed by a
+ * bounded queue. When a queue is full the upstream stage blocks until there is
+ * room, so the number of dives in memory stays bounded while the disk is kept
+ * busy writing files as other dives are still being parsed.
+ *
+ * @param <D> type of a read dive
+ * @param <E> type of an encoded dive
+ * @author Nick Radov
+ */
+final class ConversionPipeline<D, E> {
+
+	/**
+	 * Work done on each dive by a stage.
+	 *
+	 * @param <I> stage input
+	 * @param <O> stage output
+	 */
+	@FunctionalInterface
+	interface Stage<I, O> {
+
+		O apply(I input) throws Exception;
+
+	}
+
+	private final int readThreads, encodeThreads, writeThreads, queueDepth;
+
+	private final Stage<D, E> encoder;
+
+	private final Stage<E, ?> writer;
+
+	/**
+	 * @param readThreads   number of threads reading dives
+	 * @param encodeThreads number of threads encoding dives
+	 * @param writeThreads  number of threads writing encoded dives
+	 * @param queueDepth    maximum number of dives waiting for each stage
+	 * @param encoder       encoding stage, called concurrently from the encoding
+	 *                      threads
+	 * @param writer        writing stage, called concurrently from the writing
+	 *                      threads
+	 */
+	ConversionPipeline(final int readThreads, final int encodeThreads, final int writeThreads,
+			final int queueDepth, final Stage<D, E> encoder, final Stage<E, ?> writer) {
+		checkPositive("read threads", readThreads);
+		checkPositive("encode threads", encodeThreads);
+		checkPositive("write threads", writeThreads);
+		checkPositive("queue depth", queueDepth);
+		this.readThreads = readThreads;
+		this.encodeThreads = encodeThreads;
+		this.writeThreads = writeThreads;
+		this.queueDepth = queueDepth;
+		this.encoder = encoder;
+		this.writer = writer;
+	}
+
+	private static void checkPositive(final String name, final int value) {
+		if (value < 1) {
+			throw new IllegalArgumentException(name + " must be positive: " + value);
+		}
+	}
+
+	/**
+	 * Run every dive through the pipeline. Returns once every dive has been
+	 * written, or once the dives already in the pipeline have been discarded after
+	 * a failure.
+	 *
+	 * @param readers dive reading tasks, usually derived from
+	 *                {@link DivesSource#readers(boolean)}
+	 * @throws IOException if a stage fails with an {@link IOException} or
+	 *                     {@link UncheckedIOException}; other stage failures are
+	 *                     thrown as is if unchecked or wrapped in an
+	 *                     {@link IOException} if checked
+	 */
+	void run(final Stream<? extends Callable<D>> readers) throws IOException {
+		final ThreadPoolExecutor readPool = newStage("read", readThreads);
+		final ThreadPoolExecutor encodePool = newStage("encode", encodeThreads);
+		final ThreadPoolExecutor writePool = newStage("write", writeThreads);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		// the calling thread is one party, every dive in the pipeline is another
+		final Phaser pending = new Phaser(1);
+		try {
+			final Iterator<? extends Callable<D>> iterator = readers.iterator();
+			while (failure.get() == null && iterator.hasNext()) {
+				final Callable<D> reader = iterator.next();
+				pending.register();
+				execute(readPool, pending, () -> stage(failure, pending, () -> {
+					final D dive = reader.call();
+					encodePool.execute(() -> stage(failure, pending, () -> {
+						final E encoded = encoder.apply(dive);
+						writePool.execute(() -> stage(failure, pending, () -> {
+							writer.apply(encoded);
+							pending.arriveAndDeregister();
+							return null;
+						}));
+						return null;
+					}));
+					return null;
+				}));
+			}
+		} catch (final RuntimeException e) {
+			failure.compareAndSet(null, e);
+		} finally {
+			pending.arriveAndAwaitAdvance();
+			readPool.shutdownNow();
+			encodePool.shutdownNow();
+			writePool.shutdownNow();
+		}
+		rethrow(failure.get());
+	}
+
+	/** Submit work for a dive, taking the dive out of the pipeline if that fails. */
+	private static void execute(final ThreadPoolExecutor pool, final Phaser pending, final Runnable work) {
+		try {
+			pool.execute(work);
+		} catch (final RejectedExecutionException e) {
+			pending.arriveAndDeregister();
+			throw e;
+		}
+	}
+
+	/**
+	 * Run the work of one stage for one dive. If the work fails, or an earlier
+	 * failure means the dive will be discarded, the dive leaves the pipeline.
+	 */
+	private static void stage(final AtomicReference<Throwable> failure, final Phaser pending,
+			final Callable<Void> work) {
+		if (failure.get() != null) {
+			pending.arriveAndDeregister();
+			return;
+		}
+		try {
+			work.call();
+		} catch (final Throwable e) {
+			failure.compareAndSet(null, e);
+			pending.arriveAndDeregister();
+		}
+	}
+
+	private static void rethrow(final Throwable failure) throws IOException {
+		if (failure == null) {
+			return;
+		} else if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure instanceof UncheckedIOException) {
+			throw ((UncheckedIOException) failure).getCause();
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+		throw new IOException(failure);
+	}
+
+	/**
+	 * Create the worker pool for a stage. Submitting work to a stage whose queue
+	 * is full blocks the submitting thread until there is room, which is what
+	 * applies backpressure to the upstream stage.
+	 */
+	private ThreadPoolExecutor newStage(final String name, final int threads) {
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueDepth), new StageThreadFactory(name), (task, executor) -> {
+					try {
+						executor.getQueue().put(task);
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new RejectedExecutionException("interrupted while waiting for the " + name + " stage",
+								e);
+					}
+				});
+		pool.prestartAllCoreThreads();
+		return pool;
+	}
+
+	/** Creates daemon threads named after their stage. */
+	private static final class StageThreadFactory implements ThreadFactory {
+
+		private final String stage;
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		StageThreadFactory(final String stage) {
+			this.stage = stage;
+		}
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "sdetofit-" + stage + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
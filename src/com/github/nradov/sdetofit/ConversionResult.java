@@ -0,0 +1,53 @@
+package com.github.nradov.sdetofit;
+
+import java.util.List;
+
+/**
+ * Result of a conversion run by a {@link ConversionService}. Instances are
+ * immutable, apart from the metrics which are complete once the result is
+ * available.
+ *
+ * @author Nick Radov
+ */
+public final class ConversionResult {
+
+	private final List<DiveResult> dives;
+
+	private final ConversionMetrics metrics;
+
+	ConversionResult(final List<DiveResult> dives, final ConversionMetrics metrics) {
+		this.dives = List.copyOf(dives);
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Get the result of each dive which matched the filter.
+	 *
+	 * @return results, in the order the dives are stored in the input
+	 */
+	public List<DiveResult> getDives() {
+		return dives;
+	}
+
+	/** Get the number of dives which were converted. */
+	public int getConverted() {
+		int converted = 0;
+		for (final DiveResult dive : dives) {
+			if (dive.isConverted()) {
+				converted++;
+			}
+		}
+		return converted;
+	}
+
+	/** Get the number of dives which couldn't be converted. */
+	public int getFailed() {
+		return dives.size() - getConverted();
+	}
+
+	/** Get the counts and timings of the conversion. */
+	public ConversionMetrics getMetrics() {
+		return metrics;
+	}
+
+}
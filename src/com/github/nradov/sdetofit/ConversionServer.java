@@ -0,0 +1,321 @@
+package com.github.nradov.sdetofit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.stream.XMLStreamException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP server which converts uploaded dive logs, so that other tools
+ * can convert without starting a JVM per file. It has two endpoints:
+ * <dl>
+ * <dt>{@code POST /convert/}<i>file name</i></dt>
+ * <dd>Converts the request body, a {@code .sde}, {@code .xml} or {@code .sml}
+ * file selected by the extension of the file name. The response is the FIT
+ * file if the upload holds a single dive, or otherwise a Zip file of FIT
+ * files. The upload is parsed as it arrives and each FIT file is sent as soon
+ * as it is encoded, so neither is held in memory as a whole.</dd>
+ * <dt>{@code GET /metrics}</dt>
+ * <dd>Returns the request count, request latency percentiles and conversion
+ * metrics since the server started, as JSON.</dd>
+ * </dl>
+ * Requests are handled by a fixed number of threads, which caps the number of
+ * conversions running at once. Further requests wait for a free thread.
+ *
+ * @author Nick Radov
+ */
+public final class ConversionServer implements Closeable {
+
+	/** Path prefix of the conversion endpoint. */
+	private static final String CONVERT_PATH = "/convert/";
+
+	/** Path of the metrics endpoint. */
+	private static final String METRICS_PATH = "/metrics";
+
+	private static final String FIT_CONTENT_TYPE = "application/vnd.ant.fit", ZIP_CONTENT_TYPE = "application/zip",
+			JSON_CONTENT_TYPE = "application/json", TEXT_CONTENT_TYPE = "text/plain; charset=utf-8";
+
+	/** Seconds to wait for the requests in progress when stopping. */
+	private static final int STOP_SECONDS = 30;
+
+	private final HttpServer server;
+
+	private final ThreadPoolExecutor executor;
+
+	private volatile SdeToFit.Encoder encoder = SdeToFit.Encoder.SDK;
+
+	private volatile boolean quiet;
+
+	private volatile ConsoleLog console = ConsoleLog.DISCARD;
+
+	/** Metrics for every dive converted since the server started. */
+	private final ConversionMetrics metrics = new ConversionMetrics();
+
+	private final LatencyHistogram requestLatencies = new LatencyHistogram();
+
+	private final LongAdder requests = new LongAdder(), failedRequests = new LongAdder();
+
+	/**
+	 * Create a server. It doesn't accept requests until it is started.
+	 *
+	 * @param address        address to listen on
+	 * @param maxConversions maximum number of requests handled at the same time
+	 * @throws IOException if the server can't listen on the address
+	 */
+	public ConversionServer(final InetSocketAddress address, final int maxConversions) throws IOException {
+		if (maxConversions < 1) {
+			throw new IllegalArgumentException("maximum conversions must be positive: " + maxConversions);
+		}
+		server = HttpServer.create(address, 0);
+		final AtomicInteger threadCount = new AtomicInteger();
+		executor = new ThreadPoolExecutor(maxConversions, maxConversions, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					final Thread thread = new Thread(runnable, "sdetofit-http-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		server.setExecutor(executor);
+		server.createContext(CONVERT_PATH, this::convert);
+		server.createContext(METRICS_PATH, this::metrics);
+	}
+
+	/**
+	 * Select how the FIT files are encoded. The default is
+	 * {@link SdeToFit.Encoder#SDK}.
+	 *
+	 * @param encoder FIT encoder
+	 */
+	public void setEncoder(final SdeToFit.Encoder encoder) {
+		this.encoder = Objects.requireNonNull(encoder);
+	}
+
+	/**
+	 * Don't print a line per request. Set before starting the server. The default
+	 * is {@code false}.
+	 *
+	 * @param quiet {@code true} to print nothing but errors
+	 */
+	public void setQuiet(final boolean quiet) {
+		this.quiet = quiet;
+	}
+
+	/**
+	 * Get the address the server listens on, which has the actual port if the
+	 * server was created with port 0.
+	 *
+	 * @return address
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/** Start accepting requests. */
+	public void start() {
+		if (!quiet) {
+			console = new ConsoleLog(System.out);
+		}
+		server.start();
+		console.log("Listening on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort()
+				+ CONVERT_PATH);
+	}
+
+	/**
+	 * Stop handling requests, wait for the requests in progress and already
+	 * received to finish, and stop listening.
+	 */
+	@Override
+	public void close() {
+		// HttpServer.stop waits for the whole delay even when it is idle, so wait
+		// for the requests in progress and queued here instead
+		executor.shutdown();
+		try {
+			executor.awaitTermination(STOP_SECONDS, TimeUnit.SECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		server.stop(0);
+		console.close();
+	}
+
+	private void convert(final HttpExchange exchange) throws IOException {
+		final long start = System.nanoTime();
+		requests.increment();
+		final String fileName = exchange.getRequestURI().getPath().substring(CONVERT_PATH.length());
+		final var upload = new CountingInputStream(exchange.getRequestBody());
+		final var response = new CountingOutputStream(exchange.getResponseBody());
+		int dives = 0;
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				sendError(exchange, 405, "Use POST to upload a dive log");
+				return;
+			}
+			final Iterator<Dive> iterator;
+			final Dive first;
+			try {
+				iterator = DivesSourceFactory.stream(upload, fileName).iterator();
+				first = next(iterator, fileName);
+			} catch (final IllegalArgumentException e) {
+				sendError(exchange, 415, "Unsupported dive log file name \"" + fileName
+						+ "\", which must end with .sde, .xml or .sml");
+				return;
+			} catch (final IOException | XMLStreamException | UncheckedIOException e) {
+				sendError(exchange, 400, "Unable to read the dive log: " + message(e));
+				return;
+			}
+			if (first == null) {
+				sendError(exchange, 422, "No dives in \"" + fileName + "\"");
+				return;
+			}
+			byte[] data;
+			try {
+				data = encode(first, fileName);
+			} catch (final RuntimeException e) {
+				sendError(exchange, 422, "Unable to convert the dive log: " + message(e));
+				return;
+			}
+			if (!iterator.hasNext()) {
+				exchange.getResponseHeaders().set("Content-Type", FIT_CONTENT_TYPE);
+				exchange.getResponseHeaders().set("Content-Disposition",
+						"attachment; filename=\"" + SdeToFit.fitFileName(first) + "\"");
+				exchange.sendResponseHeaders(200, data.length);
+				response.write(data);
+				dives = 1;
+			} else {
+				exchange.getResponseHeaders().set("Content-Type", ZIP_CONTENT_TYPE);
+				exchange.getResponseHeaders().set("Content-Disposition",
+						"attachment; filename=\"" + withoutExtension(fileName) + ".zip\"");
+				// chunked, so each FIT file goes out as soon as it is encoded
+				exchange.sendResponseHeaders(200, 0);
+				// not closed on failure, so that a partial Zip file has no central directory
+				final var zip = new ZipSink(response);
+				for (Dive dive = first; dive != null; dive = next(iterator, fileName)) {
+					if (dive != first) {
+						data = encode(dive, fileName);
+					}
+					zip.write(SdeToFit.fitFileName(dive), data, dive.getStartTime().getDate().getTime());
+					dives++;
+				}
+				zip.finish();
+			}
+			log(exchange, fileName, dives, upload.getCount(), response.getCount(), System.nanoTime() - start);
+		} catch (final IOException | RuntimeException e) {
+			// the response has already started, so the client sees a truncated body
+			failedRequests.increment();
+			System.err.println("Unable to convert \"" + fileName + "\" after " + dives + " dives: " + e);
+		} finally {
+			requestLatencies.record(System.nanoTime() - start);
+			exchange.close();
+		}
+	}
+
+	/** Parse the next dive, or return {@code null} at the end. */
+	private Dive next(final Iterator<Dive> iterator, final String fileName) throws IOException {
+		if (!iterator.hasNext()) {
+			return null;
+		}
+		final var timer = metrics.start(ConversionMetrics.Stage.PARSE, fileName);
+		try {
+			return iterator.next();
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			timer.stop();
+		}
+	}
+
+	private byte[] encode(final Dive dive, final String fileName) {
+		final long start = System.nanoTime();
+		final byte[] data;
+		final var timer = metrics.start(ConversionMetrics.Stage.ENCODE, fileName);
+		try {
+			data = SdeToFit.encode(encoder, dive);
+		} finally {
+			timer.stop();
+		}
+		metrics.addDive(dive.getProfile().size(), data.length, System.nanoTime() - start);
+		return data;
+	}
+
+	private static String withoutExtension(final String fileName) {
+		final int dot = fileName.lastIndexOf('.');
+		return dot > 0 ? fileName.substring(0, dot) : fileName;
+	}
+
+	private static String message(final Exception e) {
+		Throwable cause = e instanceof UncheckedIOException ? e.getCause() : e;
+		final var message = new StringBuilder(describe(cause));
+		while (cause.getCause() != null) {
+			cause = cause.getCause();
+			message.append(": ").append(describe(cause));
+		}
+		return message.toString();
+	}
+
+	private static String describe(final Throwable t) {
+		return t.getMessage() == null ? t.getClass().getSimpleName() : t.getMessage();
+	}
+
+	private void log(final HttpExchange exchange, final String fileName, final int dives, final long bytesIn,
+			final long bytesOut, final long nanos) {
+		metrics.addBytesRead(bytesIn, bytesIn);
+		final double seconds = nanos / 1e9;
+		console.log(String.format(Locale.US,
+				"%s converted \"%s\": %d dives, %d bytes in, %d bytes out in %.1f ms (%.1f dives/s, %.1f KB/s in)",
+				exchange.getRemoteAddress().getAddress().getHostAddress(), fileName, dives, bytesIn, bytesOut,
+				nanos / 1e6, dives / seconds, bytesIn / 1024.0 / seconds));
+	}
+
+	private void sendError(final HttpExchange exchange, final int status, final String message) throws IOException {
+		failedRequests.increment();
+		// the rest of the upload isn't needed, but must be read to reuse the connection
+		try {
+			exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+		} catch (final IOException e) {
+			// the connection won't be reused
+		}
+		send(exchange, status, TEXT_CONTENT_TYPE, message + "\n");
+	}
+
+	private static void send(final HttpExchange exchange, final int status, final String contentType,
+			final String body) throws IOException {
+		final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		exchange.getResponseBody().write(bytes);
+	}
+
+	private void metrics(final HttpExchange exchange) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				exchange.getResponseHeaders().set("Allow", "GET");
+				send(exchange, 405, TEXT_CONTENT_TYPE, "Use GET for the metrics\n");
+				return;
+			}
+			send(exchange, 200, JSON_CONTENT_TYPE, String.format(Locale.US,
+					"{\"requests\":%d,\"failedRequests\":%d,\"activeRequests\":%d,\"queuedRequests\":%d,"
+							+ "\"requestLatencyMillis\":{\"p50\":%.3f,\"p99\":%.3f},\"conversions\":%s}\n",
+					requests.sum(), failedRequests.sum(), executor.getActiveCount(), executor.getQueue().size(),
+					requestLatencies.getPercentile(50) / 1e6, requestLatencies.getPercentile(99) / 1e6,
+					metrics.toJson()));
+		} finally {
+			exchange.close();
+		}
+	}
+
+}
@@ -0,0 +1,449 @@
+package com.github.nradov.sdetofit;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Converts dive logs for applications which embed the converter. A service is
+ * thread safe, and any number of conversions can run on it at the same time,
+ * sharing one bounded pool of threads. Each conversion runs at most
+ * {@link ConversionOptions#getParallelism()} dives at once, and a dive which
+ * finishes goes to the back of the queue for its next dive, so a large input
+ * doesn't hold up the conversions started after it. Only the dives being
+ * converted are held in memory, apart from the FIT files returned in the
+ * results when there is no sink.
+ *
+ * <p>
+ * Conversion methods return straight away. A dive which can't be converted is
+ * reported in the results, and the rest of the conversion carries on. The
+ * future only completes exceptionally if the input can't be read at all, or
+ * the {@link DiveListener} throws an exception. Cancelling the future stops
+ * the conversion after the dives in progress.
+ * </p>
+ *
+ * @author Nick Radov
+ */
+public final class ConversionService implements Closeable {
+
+	private final ThreadPoolExecutor executor;
+
+	/** Conversions which haven't finished yet, for closing the service. */
+	private final Set<CompletableFuture<ConversionResult>> active = ConcurrentHashMap.newKeySet();
+
+	private boolean closed;
+
+	/**
+	 * Create a service with a thread per available processor.
+	 */
+	public ConversionService() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads number of threads shared by every conversion
+	 */
+	public ConversionService(final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+		final AtomicInteger threadCount = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+				runnable -> {
+					final Thread thread = new Thread(runnable, "sdetofit-service-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+
+	/**
+	 * Convert the dives in a dive log file. The format is selected by the file
+	 * name extension, as for {@link DivesSourceFactory#create(Path)}.
+	 *
+	 * @param input   dive log file
+	 * @param options conversion options
+	 * @return result, once every dive has been converted
+	 */
+	public CompletableFuture<ConversionResult> convert(final Path input, final ConversionOptions options) {
+		Objects.requireNonNull(input);
+		return start(options, options.getParallelism(), metrics -> {
+			final DivesSource source = DivesSourceFactory.create(input, 1, options.getZone());
+			source.setMetrics(metrics);
+			return new Input(source.readers(false).iterator(), source);
+		});
+	}
+
+	/**
+	 * Convert the dives in a dive log read from a stream, such as an upload. The
+	 * format is detected from the start of the input, as for
+	 * {@link StreamConverter}. The stream is read by the service's threads, so it
+	 * must be left open until the future completes, and it isn't closed.
+	 *
+	 * @param input   dive log contents
+	 * @param options conversion options
+	 * @return result, once every dive has been converted
+	 */
+	public CompletableFuture<ConversionResult> convert(final InputStream input, final ConversionOptions options) {
+		Objects.requireNonNull(input);
+		// a stream can only be parsed one dive log at a time
+		return start(options, 1, metrics -> {
+			final var counting = new CountingInputStream(input);
+			final var buffered = new BufferedInputStream(counting);
+			final String fileName = "input." + StreamConverter.detectFormat(buffered);
+			final Iterator<Dive> dives = DivesSourceFactory.stream(buffered, fileName, options.getZone()).iterator();
+			return new Input(new Iterator<>() {
+
+				@Override
+				public boolean hasNext() {
+					return dives.hasNext();
+				}
+
+				@Override
+				public DiveReader next() {
+					final var timer = metrics.start(ConversionMetrics.Stage.PARSE, fileName);
+					try {
+						return DiveReader.of(dives.next());
+					} finally {
+						timer.stop();
+					}
+				}
+
+			}, () -> metrics.addBytesRead(counting.getCount(), counting.getCount()));
+		});
+	}
+
+	/**
+	 * Convert the dives in a dive log held in memory. The format is detected as
+	 * for {@link #convert(InputStream, ConversionOptions)}. The buffer is read
+	 * from its position to its limit, which are left unchanged, so its contents
+	 * must not change until the future completes.
+	 *
+	 * @param input   dive log contents
+	 * @param options conversion options
+	 * @return result, once every dive has been converted
+	 */
+	public CompletableFuture<ConversionResult> convert(final ByteBuffer input, final ConversionOptions options) {
+		return convert(new ByteBufferInputStream(input.duplicate()), options);
+	}
+
+	private CompletableFuture<ConversionResult> start(final ConversionOptions options, final int parallelism,
+			final InputOpener opener) {
+		final var conversion = new Conversion(Objects.requireNonNull(options), parallelism, opener);
+		synchronized (active) {
+			if (closed) {
+				conversion.future.completeExceptionally(new IllegalStateException("service is closed"));
+				return conversion.future;
+			}
+			active.add(conversion.future);
+		}
+		conversion.future.whenComplete((result, e) -> active.remove(conversion.future));
+		try {
+			executor.execute(conversion::open);
+		} catch (final RejectedExecutionException e) {
+			conversion.future.completeExceptionally(e);
+		}
+		return conversion.future;
+	}
+
+	/**
+	 * Stop accepting conversions, wait for the conversions in progress to
+	 * finish, and stop the threads.
+	 */
+	@Override
+	public void close() {
+		final List<CompletableFuture<ConversionResult>> running;
+		synchronized (active) {
+			closed = true;
+			running = List.copyOf(active);
+		}
+		for (final CompletableFuture<ConversionResult> future : running) {
+			try {
+				future.join();
+			} catch (final CancellationException | CompletionException e) {
+				// already reported through the future
+			}
+		}
+		executor.shutdown();
+	}
+
+	/** Opens the input of a conversion, on one of the service's threads. */
+	@FunctionalInterface
+	private interface InputOpener {
+
+		Input open(ConversionMetrics metrics) throws IOException, XMLStreamException;
+
+	}
+
+	/** Dives of an open input, and how to close it. */
+	private static final class Input {
+
+		private final Iterator<DiveReader> readers;
+
+		private final Closeable closeable;
+
+		Input(final Iterator<DiveReader> readers, final Closeable closeable) {
+			this.readers = readers;
+			this.closeable = closeable;
+		}
+
+	}
+
+	/**
+	 * One conversion. Each of its tasks converts one dive and then queues the
+	 * task for the next dive, until there are no more dives. The last task to
+	 * end closes the input and completes the future.
+	 */
+	private final class Conversion {
+
+		private final ConversionOptions options;
+
+		private final int parallelism;
+
+		private final InputOpener opener;
+
+		private final CompletableFuture<ConversionResult> future = new CompletableFuture<>();
+
+		private final ConversionMetrics metrics = new ConversionMetrics();
+
+		/** Results by the position of the dive in the input. */
+		private final Map<Integer, DiveResult> results = new TreeMap<>();
+
+		private Input input;
+
+		private int position;
+
+		/** Number of tasks queued or running. */
+		private int tasks;
+
+		private boolean exhausted;
+
+		Conversion(final ConversionOptions options, final int parallelism, final InputOpener opener) {
+			this.options = options;
+			this.parallelism = parallelism;
+			this.opener = opener;
+		}
+
+		void open() {
+			if (future.isDone()) {
+				return;
+			}
+			final Input opened;
+			try {
+				opened = opener.open(metrics);
+			} catch (final IOException | XMLStreamException | RuntimeException e) {
+				future.completeExceptionally(unwrap(e));
+				return;
+			}
+			synchronized (this) {
+				input = opened;
+				tasks = parallelism;
+			}
+			for (int i = 0; i < parallelism; i++) {
+				submit();
+			}
+		}
+
+		private void submit() {
+			try {
+				executor.execute(this::step);
+			} catch (final RejectedExecutionException e) {
+				future.completeExceptionally(e);
+				taskEnded();
+			}
+		}
+
+		/** Convert the next dive, or end the task if there are none left. */
+		private void step() {
+			DiveReader reader = null;
+			RuntimeException readerError = null;
+			int index = 0;
+			synchronized (this) {
+				if (!exhausted && !future.isDone()) {
+					try {
+						if (input.readers.hasNext()) {
+							index = position++;
+							try {
+								reader = input.readers.next();
+							} catch (final RuntimeException e) {
+								// only this dive log couldn't be parsed
+								readerError = e;
+							}
+						} else {
+							exhausted = true;
+						}
+					} catch (final RuntimeException e) {
+						// the input can't be read any further
+						future.completeExceptionally(unwrap(e));
+					}
+				}
+			}
+			if (reader == null && readerError == null) {
+				taskEnded();
+				return;
+			}
+			metrics.addEntry();
+			final DiveResult result = reader == null ? DiveResult.failed("", unwrap(readerError)) : convert(reader);
+			if (result != null) {
+				synchronized (this) {
+					results.put(index, result);
+				}
+				final DiveListener listener = options.getListener();
+				if (listener != null) {
+					try {
+						listener.diveFinished(result);
+					} catch (final RuntimeException e) {
+						future.completeExceptionally(e);
+					}
+				}
+			}
+			submit();
+		}
+
+		/**
+		 * Convert a dive.
+		 *
+		 * @return result, or {@code null} if the dive doesn't match the filter
+		 */
+		private DiveResult convert(final DiveReader reader) {
+			final long start = System.nanoTime();
+			final String name = reader.getName();
+			try {
+				final DiveFilter filter = options.getFilter();
+				if (!filter.acceptsAll() && !filter.test(reader.getHeader())) {
+					metrics.addSkipped();
+					return null;
+				}
+				final SdeToFit.Encoder encoder = options.getEncoder();
+				final TranscodedDive transcoded;
+				final Dive dive;
+				final var readTimer = metrics.start(ConversionMetrics.Stage.READ, name);
+				try {
+					transcoded = encoder == SdeToFit.Encoder.SDK ? null : SdeToFit.transcode(encoder, reader);
+					dive = transcoded == null ? reader.call() : null;
+				} finally {
+					readTimer.stop();
+				}
+				final DiveHeader header;
+				final byte[] data;
+				final int samples;
+				if (transcoded == null) {
+					final var encodeTimer = metrics.start(ConversionMetrics.Stage.ENCODE, name);
+					try {
+						data = SdeToFit.encode(encoder, dive);
+					} finally {
+						encodeTimer.stop();
+					}
+					header = DiveHeader.of(dive);
+					samples = dive.getProfile().size();
+				} else {
+					header = transcoded.getHeader();
+					data = transcoded.getData();
+					samples = transcoded.getSamples();
+				}
+				final String fileName = SdeToFit.fitFileName(header.getStartTime(), options.getZone());
+				final FitSink sink = options.getSink();
+				String location = null;
+				if (sink != null) {
+					final var writeTimer = metrics.start(ConversionMetrics.Stage.WRITE, name);
+					try {
+						location = sink.write(fileName, data, header.getStartTime().getDate().getTime());
+					} finally {
+						writeTimer.stop();
+					}
+				}
+				metrics.addDive(samples, data.length, System.nanoTime() - start);
+				return DiveResult.converted(name, header, fileName, location, sink == null ? data : null, samples);
+			} catch (final IOException | RuntimeException e) {
+				return DiveResult.failed(name, e);
+			}
+		}
+
+		private void taskEnded() {
+			final boolean last;
+			synchronized (this) {
+				last = --tasks == 0;
+			}
+			if (last) {
+				finish();
+			}
+		}
+
+		private void finish() {
+			final List<DiveResult> dives;
+			synchronized (this) {
+				dives = new ArrayList<>(results.values());
+			}
+			try {
+				input.closeable.close();
+			} catch (final IOException e) {
+				future.completeExceptionally(e);
+			}
+			metrics.finish();
+			future.complete(new ConversionResult(dives, metrics));
+		}
+
+	}
+
+	/** Get the cause of an unchecked I/O exception thrown by a stream of dives. */
+	private static Exception unwrap(final Exception e) {
+		return e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause() : e;
+	}
+
+	/** Reads a buffer without changing its position. */
+	private static final class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(final ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) {
+			Objects.checkFromIndexSize(off, len, b.length);
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			final int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+
+	}
+
+}
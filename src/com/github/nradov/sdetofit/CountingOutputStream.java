@@ -0,0 +1,48 @@
+package com.github.nradov.sdetofit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts the bytes written to a stream, for output which has no file size.
+ *
+ * @author Nick Radov
+ */
+final class CountingOutputStream extends OutputStream {
+
+	private final OutputStream out;
+
+	private long count;
+
+	CountingOutputStream(final OutputStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		out.write(b);
+		count++;
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+		out.write(b, off, len);
+		count += len;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	/** Get the number of bytes written so far. */
+	long getCount() {
+		return count;
+	}
+
+}
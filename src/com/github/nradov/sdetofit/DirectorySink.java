@@ -0,0 +1,87 @@
+package com.github.nradov.sdetofit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Writes each FIT file to a file of its own in a directory. A file is written
+ * under a temporary name and renamed once complete, so a FIT file only appears
+ * once it is complete, even if the JVM stops. Files get unique names, so dives
+ * which start at the same time are all kept, each on a name claimed before its
+ * temporary file is written. A file left by an earlier run with the same name
+ * is replaced.
+ *
+ * @author Nick Radov
+ */
+public final class DirectorySink implements FitSink {
+
+	/** Extension of files which are still being written. */
+	private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+
+	private final Path directory;
+
+	private final UniqueNames names = new UniqueNames();
+
+	/**
+	 * @param directory output directory, which is created if it doesn't exist
+	 * @throws IOException if the directory can't be created
+	 */
+	public DirectorySink(final Path directory) throws IOException {
+		this.directory = Objects.requireNonNull(directory);
+		Files.createDirectories(directory);
+	}
+
+	@Override
+	public String write(final String name, final byte[] data, final long modifiedMillis) throws IOException {
+		final Path file = directory.resolve(names.claim(name));
+		final Path temporaryFile = temporaryFile(file);
+		try (final FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			final ByteBuffer buffer = ByteBuffer.wrap(data);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+		publish(temporaryFile, file);
+		return file.toString();
+	}
+
+	/**
+	 * Get the hidden temporary file a file is written to before it is complete.
+	 *
+	 * @param file file being written
+	 * @return temporary file in the same directory
+	 */
+	static Path temporaryFile(final Path file) {
+		return file.resolveSibling("." + file.getFileName() + TEMPORARY_FILE_EXTENSION);
+	}
+
+	/**
+	 * Rename a complete temporary file to its final name, atomically if the file
+	 * system supports it.
+	 *
+	 * @param temporaryFile complete temporary file
+	 * @param file          final name, which is replaced if it exists
+	 * @throws IOException if the file can't be renamed
+	 */
+	static void publish(final Path temporaryFile, final Path file) throws IOException {
+		try {
+			Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final AtomicMoveNotSupportedException e) {
+			Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/** Nothing to do, as every file is complete once written. */
+	@Override
+	public void close() {
+	}
+
+}
@@ -25,8 +25,21 @@ public interface Dive extends Comparable<Dive> {
 	 */
 	DateTime getEndTime();
 
-	/** Get the dive profile records. */
-	List<Record> getRecords();
+	/**
+	 * Get the dive profile records. The records are created from
+	 * {@link #getProfile()} on demand.
+	 */
+	default List<Record> getRecords() {
+		return getProfile().toRecords();
+	}
+
+	/**
+	 * Get the dive profile samples in a compact form which doesn't need an object
+	 * per sample.
+	 *
+	 * @return dive profile
+	 */
+	DiveProfile getProfile();
 
 	/** Get the dive computer model name. */
 	String getProductName();
@@ -42,6 +55,16 @@ public interface Dive extends Comparable<Dive> {
 
     /** Get the surface interval time */
     long getSurfaceTime();
+
+	/**
+	 * Check whether the dive log records the surface interval time. If it doesn't,
+	 * {@link #getSurfaceTime()} throws {@link UnsupportedOperationException}.
+	 *
+	 * @return {@code true} if the surface interval time is known
+	 */
+	default boolean hasSurfaceTime() {
+		return true;
+	}
 	
 	/** Get the average dive depth in meters. */
 	float getAvgDepth();
@@ -55,11 +78,35 @@ public interface Dive extends Comparable<Dive> {
 	/**
 	 * {@inheritDoc}
 	 *
-	 * @return a negative integer, zero, or a positive integer as the start time of
-	 *         this dive is before, equal to, or after the specified dive.
+	 * <p>
+	 * Implementations must order dives as {@link #compare(Dive, Dive)} does.
+	 * </p>
+	 *
+	 * @return a negative integer, zero, or a positive integer as this dive is
+	 *         before, the same as, or after the specified dive.
 	 * @see #getStartTime()
 	 */
 	@Override
 	int compareTo(Dive o);
 
+	/**
+	 * Compare two dives by start time, then by dive computer serial number and
+	 * then by dive log number. Dives which start in the same second are only
+	 * equal if they are the same dive log from the same dive computer, so a
+	 * sorted set of dives doesn't drop dives from different dive computers, or
+	 * dives logged less than a second apart.
+	 *
+	 * @param a dive
+	 * @param b another dive
+	 * @return a negative integer, zero, or a positive integer as {@code a} is
+	 *         before, the same as, or after {@code b}
+	 */
+	static int compare(final Dive a, final Dive b) {
+		int result = Long.compare(a.getStartTime().getTimestamp(), b.getStartTime().getTimestamp());
+		if (result == 0) {
+			result = Long.compare(a.getSerialNumber(), b.getSerialNumber());
+		}
+		return result == 0 ? Long.compare(a.getDiveNumber(), b.getDiveNumber()) : result;
+	}
+
 }
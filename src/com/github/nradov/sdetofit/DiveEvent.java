@@ -0,0 +1,34 @@
+package com.github.nradov.sdetofit;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering one dive from the start of reading until its
+ * output has been written, including time spent waiting between stages.
+ *
+ * @author Nick Radov
+ */
+@Name("com.github.nradov.sdetofit.Dive")
+@Label("Dive Conversion")
+@Category("SdeToFit")
+@Description("Conversion of one dive, from reading to writing")
+final class DiveEvent extends jdk.jfr.Event {
+
+	@Label("Dive Log")
+	String dive;
+
+	@Label("Output")
+	String output;
+
+	@Label("Samples")
+	int samples;
+
+	@Label("Bytes Written")
+	@DataAmount
+	long bytesWritten;
+
+}
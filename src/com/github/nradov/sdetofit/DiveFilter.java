@@ -0,0 +1,92 @@
+package com.github.nradov.sdetofit;
+
+import java.util.function.Predicate;
+
+import com.garmin.fit.DateTime;
+
+/**
+ * Selects dives by the fields of their {@link DiveHeader}, so that dives which
+ * don't match can be skipped before their samples are parsed. Filters are
+ * immutable; each {@code with} method returns a new filter which also applies
+ * the given condition.
+ *
+ * @author Nick Radov
+ */
+public final class DiveFilter implements Predicate<DiveHeader> {
+
+	/** Filter which accepts every dive. */
+	public static final DiveFilter ALL = new DiveFilter(Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE,
+			Long.MAX_VALUE, null);
+
+	/** Start time range in seconds since the FIT epoch, end exclusive. */
+	private final long fromTimestamp, toTimestamp;
+
+	/** Dive number range, both inclusive. */
+	private final long firstDiveNumber, lastDiveNumber;
+
+	/** Dive computer serial number, or {@code null} for any. */
+	private final Long serialNumber;
+
+	private DiveFilter(final long fromTimestamp, final long toTimestamp, final long firstDiveNumber,
+			final long lastDiveNumber, final Long serialNumber) {
+		this.fromTimestamp = fromTimestamp;
+		this.toTimestamp = toTimestamp;
+		this.firstDiveNumber = firstDiveNumber;
+		this.lastDiveNumber = lastDiveNumber;
+		this.serialNumber = serialNumber;
+	}
+
+	/**
+	 * Only accept dives which started within a period of time.
+	 *
+	 * @param from earliest start time, inclusive, or {@code null} for no limit
+	 * @param to   latest start time, exclusive, or {@code null} for no limit
+	 * @return new filter
+	 */
+	public DiveFilter withStartTime(final DateTime from, final DateTime to) {
+		return new DiveFilter(from == null ? Long.MIN_VALUE : from.getTimestamp(),
+				to == null ? Long.MAX_VALUE : to.getTimestamp(), firstDiveNumber, lastDiveNumber, serialNumber);
+	}
+
+	/**
+	 * Only accept dives with a dive number within a range.
+	 *
+	 * @param first first dive number, inclusive
+	 * @param last  last dive number, inclusive
+	 * @return new filter
+	 */
+	public DiveFilter withDiveNumbers(final long first, final long last) {
+		return new DiveFilter(fromTimestamp, toTimestamp, first, last, serialNumber);
+	}
+
+	/**
+	 * Only accept dives recorded by one dive computer.
+	 *
+	 * @param serialNumber dive computer serial number ({@code WRISTOPID} in Suunto
+	 *                     dive logs)
+	 * @return new filter
+	 */
+	public DiveFilter withSerialNumber(final long serialNumber) {
+		return new DiveFilter(fromTimestamp, toTimestamp, firstDiveNumber, lastDiveNumber, serialNumber);
+	}
+
+	/**
+	 * Check whether the filter accepts every dive, in which case there is no need
+	 * to read the headers at all.
+	 *
+	 * @return {@code true} if no conditions have been applied
+	 */
+	public boolean acceptsAll() {
+		return fromTimestamp == Long.MIN_VALUE && toTimestamp == Long.MAX_VALUE && firstDiveNumber == Long.MIN_VALUE
+				&& lastDiveNumber == Long.MAX_VALUE && serialNumber == null;
+	}
+
+	@Override
+	public boolean test(final DiveHeader header) {
+		final long startTime = header.getStartTime().getTimestamp();
+		return startTime >= fromTimestamp && startTime < toTimestamp && header.getDiveNumber() >= firstDiveNumber
+				&& header.getDiveNumber() <= lastDiveNumber
+				&& (serialNumber == null || serialNumber == header.getSerialNumber());
+	}
+
+}
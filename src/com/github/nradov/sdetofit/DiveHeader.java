@@ -0,0 +1,80 @@
+package com.github.nradov.sdetofit;
+
+import com.garmin.fit.DateTime;
+
+/**
+ * Summary of a dive which can be read from the start of a dive log, without
+ * parsing the samples.
+ *
+ * @author Nick Radov
+ */
+public final class DiveHeader {
+
+	private final DateTime startTime;
+	private final long diveNumber;
+	private final long serialNumber;
+	private final String productName;
+	private final float maxDepth;
+	private final long duration;
+
+	/**
+	 * @param startTime    time when the dive started
+	 * @param diveNumber   dive log number
+	 * @param serialNumber dive computer serial number
+	 * @param productName  dive computer model name
+	 * @param maxDepth     maximum depth in meters
+	 * @param duration     dive time in seconds
+	 */
+	public DiveHeader(final DateTime startTime, final long diveNumber, final long serialNumber,
+			final String productName, final float maxDepth, final long duration) {
+		this.startTime = startTime;
+		this.diveNumber = diveNumber;
+		this.serialNumber = serialNumber;
+		this.productName = productName;
+		this.maxDepth = maxDepth;
+		this.duration = duration;
+	}
+
+	/**
+	 * Create the header of a dive which has already been read.
+	 *
+	 * @param dive dive
+	 * @return header
+	 */
+	public static DiveHeader of(final Dive dive) {
+		return new DiveHeader(dive.getStartTime(), dive.getDiveNumber(), dive.getSerialNumber(),
+				dive.getProductName(), dive.getMaxDepth(),
+				dive.getEndTime().getTimestamp() - dive.getStartTime().getTimestamp());
+	}
+
+	/** Get the time when the dive started. */
+	public DateTime getStartTime() {
+		return startTime;
+	}
+
+	/** Get the dive log number. */
+	public long getDiveNumber() {
+		return diveNumber;
+	}
+
+	/** Get the dive computer serial number. */
+	public long getSerialNumber() {
+		return serialNumber;
+	}
+
+	/** Get the dive computer model name. */
+	public String getProductName() {
+		return productName;
+	}
+
+	/** Get the maximum dive depth in meters. */
+	public float getMaxDepth() {
+		return maxDepth;
+	}
+
+	/** Get the dive time in seconds. */
+	public long getDuration() {
+		return duration;
+	}
+
+}
@@ -0,0 +1,23 @@
+package com.github.nradov.sdetofit;
+
+/**
+ * Receives the result of each dive of a conversion run by a
+ * {@link ConversionService}, for reporting progress. It is called by the
+ * service's threads, possibly by several at once for the same conversion, so
+ * implementations must be thread safe and should return quickly.
+ *
+ * @author Nick Radov
+ */
+@FunctionalInterface
+public interface DiveListener {
+
+	/**
+	 * Called once a dive has been converted, or has failed. Dives which don't
+	 * match the filter aren't reported. If this method throws an exception, the
+	 * conversion stops and its future completes with that exception.
+	 *
+	 * @param result result of the dive
+	 */
+	void diveFinished(DiveResult result);
+
+}
@@ -0,0 +1,203 @@
+package com.github.nradov.sdetofit;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.xml.stream.XMLStreamException;
+
+import com.github.nradov.sdetofit.report.DiveStatistics;
+import com.github.nradov.sdetofit.report.FleetReport;
+
+/**
+ * Computes a {@link FleetReport} over many dive log files without converting
+ * them. Inputs are selected as for a {@link BatchConverter}. Every dive of
+ * every file is parsed and summarized as a separate task in one fork/join pool,
+ * and each thread fills a report of its own which are combined at the end, so
+ * the threads never wait for each other. A dive is dropped as soon as its
+ * statistics are computed, so memory use doesn't grow with the number of dives.
+ *
+ * @author Nick Radov
+ */
+public final class DiveLogReporter {
+
+	/** Report output formats. */
+	public enum Format {
+
+		/** One CSV table per part of the report. */
+		CSV,
+
+		/** A single JSON object. */
+		JSON
+	}
+
+	private final List<String> inputs;
+
+	private float maxAscentRate = DiveStatistics.DEFAULT_MAX_ASCENT_RATE;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private DiveFilter filter = DiveFilter.ALL;
+
+	private boolean quiet;
+
+	private volatile int failures;
+
+	/**
+	 * @param inputs dive log files, directories and glob patterns
+	 */
+	public DiveLogReporter(final List<String> inputs) {
+		if (inputs.isEmpty()) {
+			throw new IllegalArgumentException("no inputs");
+		}
+		this.inputs = List.copyOf(inputs);
+	}
+
+	/**
+	 * Set the ascent rate above which an ascent is reported as a violation. The
+	 * default is {@value DiveStatistics#DEFAULT_MAX_ASCENT_RATE} meters per
+	 * minute.
+	 *
+	 * @param maxAscentRate maximum ascent rate in meters per minute
+	 */
+	public void setMaxAscentRate(final float maxAscentRate) {
+		if (!(maxAscentRate > 0)) {
+			throw new IllegalArgumentException("maximum ascent rate must be positive: " + maxAscentRate);
+		}
+		this.maxAscentRate = maxAscentRate;
+	}
+
+	/**
+	 * Set the number of threads parsing dives. The default is the number of
+	 * available processors.
+	 *
+	 * @param threads number of threads
+	 */
+	public void setThreads(final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Only report the dives accepted by a filter. The default is
+	 * {@link DiveFilter#ALL}.
+	 *
+	 * @param filter selects the dives to report
+	 */
+	public void setFilter(final DiveFilter filter) {
+		this.filter = Objects.requireNonNull(filter);
+	}
+
+	/**
+	 * Don't print the summary line on the standard error stream. Errors are still
+	 * printed. The default is {@code false}.
+	 *
+	 * @param quiet {@code true} to print nothing but errors
+	 */
+	public void setQuiet(final boolean quiet) {
+		this.quiet = quiet;
+	}
+
+	/**
+	 * Get the number of dive logs which couldn't be read by the latest report.
+	 *
+	 * @return number of dive logs
+	 */
+	public int getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Compute the report. Dives which can't be read are reported on the standard
+	 * error stream and left out, and the rest of the report carries on. The
+	 * number left out is available from {@link #getFailures()} afterwards.
+	 *
+	 * @return report
+	 * @throws IOException if an error occurs while searching for the input files
+	 */
+	public FleetReport report() throws IOException {
+		final long start = System.nanoTime();
+		final List<Path> files = new ArrayList<>(BatchConverter.findFiles(inputs).keySet());
+		final AtomicInteger failed = new AtomicInteger();
+		final ForkJoinPool pool = new ForkJoinPool(threads);
+		final FleetReport report;
+		try {
+			// parallel streams started by a task in the pool run in that pool
+			report = pool.invoke(new RecursiveTask<FleetReport>() {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected FleetReport compute() {
+					return files.parallelStream().map(file -> report(file, failed)).collect(FleetReport::new,
+							FleetReport::combine, FleetReport::combine);
+				}
+
+			});
+		} finally {
+			pool.shutdown();
+		}
+		if (!quiet) {
+			final double seconds = (System.nanoTime() - start) / 1e9;
+			System.err.println(String.format(Locale.US, "Analyzed %d dives from %d files in %.1f s (%.0f dives/s)",
+					report.getDives(), files.size(), seconds, report.getDives() / seconds));
+		}
+		failures = failed.get();
+		return report;
+	}
+
+	/**
+	 * Compute the report and write it. Dives which can't be read are left out of
+	 * the report.
+	 *
+	 * @param format output format
+	 * @param out    where to write the report
+	 * @throws IOException if an error occurs while searching for the input files
+	 *                     or writing the report, or if any dive couldn't be read
+	 */
+	public void report(final Format format, final PrintStream out) throws IOException {
+		final FleetReport report = report();
+		if (format == Format.JSON) {
+			out.println(report.toJson());
+		} else {
+			report.writeCsv(out);
+		}
+		out.flush();
+		if (failures > 0) {
+			throw new IOException(failures + " dive logs couldn't be read");
+		}
+	}
+
+	/** Report the dives of one file, which must be called from a task in the pool. */
+	private FleetReport report(final Path file, final AtomicInteger failed) {
+		try (final DivesSource divesSource = DivesSourceFactory.create(file, 1)) {
+			final List<DiveReader> readers = divesSource.readers(false).collect(Collectors.toList());
+			return readers.parallelStream().map(reader -> {
+				try {
+					// the header is read by the task, so one bad dive log doesn't stop the file
+					return filter.test(reader.getHeader()) ? DiveStatistics.of(reader.call(), maxAscentRate) : null;
+				} catch (final IOException | RuntimeException e) {
+					failed.incrementAndGet();
+					System.err.println("Unable to read \"" + file + "\" " + reader.getName() + ": " + e);
+					return null;
+				}
+			}).filter(Objects::nonNull).collect(FleetReport::new, FleetReport::add, FleetReport::combine);
+		} catch (final IOException | XMLStreamException | UncheckedIOException | IllegalArgumentException e) {
+			failed.incrementAndGet();
+			System.err.println("Unable to read \"" + file + "\": " + e);
+			return new FleetReport();
+		}
+	}
+
+}
@@ -0,0 +1,129 @@
+package com.github.nradov.sdetofit;
+
+import java.util.AbstractList;
+import java.util.List;
+
+import com.garmin.fit.DateTime;
+
+/**
+ * Compact representation of a dive profile: a start time plus one primitive
+ * array per value, so that a profile with many samples doesn't need one object
+ * per sample. Sample {@code i} is made up of the values at index {@code i} in
+ * each array.
+ *
+ * @author Nick Radov
+ */
+public final class DiveProfile {
+
+	/** Start time in seconds since the FIT epoch. */
+	private final long startTime;
+
+	/** Seconds since the start time. */
+	private final int[] timeOffsets;
+
+	/** Depth in meters. */
+	private final float[] depths;
+
+	/** Temperature in degrees Celsius. */
+	private final byte[] temperatures;
+
+	/**
+	 * Create a profile which takes ownership of the arrays. They are not copied,
+	 * so the caller must not modify them afterwards.
+	 *
+	 * @param startTime    start time in seconds since the FIT epoch
+	 * @param timeOffsets  sample times in seconds since the start time
+	 * @param depths       sample depths in meters
+	 * @param temperatures sample temperatures in degrees Celsius
+	 * @throws IllegalArgumentException if the arrays aren't all the same length
+	 */
+	public DiveProfile(final long startTime, final int[] timeOffsets, final float[] depths,
+			final byte[] temperatures) {
+		if (timeOffsets.length != depths.length || timeOffsets.length != temperatures.length) {
+			throw new IllegalArgumentException("profile arrays have different lengths: " + timeOffsets.length + ", "
+					+ depths.length + ", " + temperatures.length);
+		}
+		this.startTime = startTime;
+		this.timeOffsets = timeOffsets;
+		this.depths = depths;
+		this.temperatures = temperatures;
+	}
+
+	/**
+	 * Get the start time.
+	 *
+	 * @return start time in seconds since the FIT epoch
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/** Get the number of samples. */
+	public int size() {
+		return timeOffsets.length;
+	}
+
+	/**
+	 * Get the time of a sample relative to the start time.
+	 *
+	 * @param index sample index
+	 * @return seconds since the start time
+	 */
+	public int getTimeOffset(final int index) {
+		return timeOffsets[index];
+	}
+
+	/**
+	 * Get the time of a sample.
+	 *
+	 * @param index sample index
+	 * @return seconds since the FIT epoch
+	 */
+	public long getTimestamp(final int index) {
+		return startTime + timeOffsets[index];
+	}
+
+	/**
+	 * Get the depth of a sample.
+	 *
+	 * @param index sample index
+	 * @return depth in meters
+	 */
+	public float getDepth(final int index) {
+		return depths[index];
+	}
+
+	/**
+	 * Get the temperature of a sample.
+	 *
+	 * @param index sample index
+	 * @return temperature in degrees Celsius
+	 */
+	public byte getTemperature(final int index) {
+		return temperatures[index];
+	}
+
+	/**
+	 * Get a view of the profile as records. Each call to {@link List#get(int)}
+	 * creates a new {@link Record}, so prefer the primitive accessors in loops over
+	 * long profiles.
+	 *
+	 * @return unmodifiable list of records
+	 */
+	public List<Record> toRecords() {
+		return new AbstractList<Record>() {
+
+			@Override
+			public Record get(final int index) {
+				return new Record(new DateTime(getTimestamp(index)), depths[index], temperatures[index]);
+			}
+
+			@Override
+			public int size() {
+				return timeOffsets.length;
+			}
+
+		};
+	}
+
+}
@@ -0,0 +1,113 @@
+package com.github.nradov.sdetofit;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import com.github.nradov.sdetofit.fit.DirectFitEncoder;
+
+/**
+ * Task which reads a single dive from a {@link DivesSource} when called. The
+ * name, checksum, size and header are available without reading the whole
+ * dive, so callers can decide whether a dive needs to be read at all.
+ *
+ * @author Nick Radov
+ */
+public interface DiveReader extends Callable<Dive> {
+
+	/** Value returned by {@link #getCrc()} and {@link #getSize()} when unknown. */
+	long UNKNOWN = -1;
+
+	/**
+	 * Get the name of the dive within its source, such as the Zip entry name.
+	 *
+	 * @return name, or an empty string if the source only contains one dive
+	 */
+	String getName();
+
+	/**
+	 * Get the CRC-32 checksum of the raw dive log data.
+	 *
+	 * @return checksum, or {@link #UNKNOWN}
+	 */
+	long getCrc();
+
+	/**
+	 * Get the size of the raw dive log data.
+	 *
+	 * @return size in bytes, or {@link #UNKNOWN}
+	 */
+	long getSize();
+
+	/**
+	 * Get the header of the dive. Sources which can read the header without the
+	 * samples override the default implementation, which reads the whole dive.
+	 *
+	 * @return header
+	 * @throws IOException if an error occurs while reading the header; the
+	 *                     message identifies the dive
+	 */
+	default DiveHeader getHeader() throws IOException {
+		return DiveHeader.of(call());
+	}
+
+	/**
+	 * Read the dive.
+	 *
+	 * @return dive
+	 * @throws IOException if an error occurs while reading the dive; the message
+	 *                     identifies the dive
+	 */
+	@Override
+	Dive call() throws IOException;
+
+	/**
+	 * Encode the dive as a FIT file while its dive log is parsed, without
+	 * building the dive and its profile in memory. The file is the same as the
+	 * one the encoder writes for the dive returned by {@link #call()}. Sources
+	 * which can stream their samples override the default implementation, which
+	 * returns {@code null}. A source may also return {@code null} for a dive log
+	 * it can't stream, such as one whose header comes after its samples, and the
+	 * caller then reads the dive with {@link #call()} instead.
+	 *
+	 * @param encoder FIT encoder
+	 * @return encoded dive, or {@code null} if the dive has to be read first
+	 * @throws IOException if an error occurs while reading the dive; the message
+	 *                     identifies the dive
+	 */
+	default TranscodedDive transcode(final DirectFitEncoder encoder) throws IOException {
+		return null;
+	}
+
+	/**
+	 * Create a reader for a dive which has already been read.
+	 *
+	 * @param dive dive
+	 * @return reader with an empty name and unknown checksum and size
+	 */
+	static DiveReader of(final Dive dive) {
+		return new DiveReader() {
+
+			@Override
+			public String getName() {
+				return "";
+			}
+
+			@Override
+			public long getCrc() {
+				return UNKNOWN;
+			}
+
+			@Override
+			public long getSize() {
+				return UNKNOWN;
+			}
+
+			@Override
+			public Dive call() {
+				return dive;
+			}
+
+		};
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.github.nradov.sdetofit;
+
+/**
+ * Result of converting one dive with a {@link ConversionService}: either the
+ * FIT file which was written, or the error which stopped the dive from being
+ * converted. Instances are immutable.
+ *
+ * @author Nick Radov
+ */
+public final class DiveResult {
+
+	private final String name;
+
+	private final DiveHeader header;
+
+	private final String fileName;
+
+	private final String location;
+
+	private final byte[] data;
+
+	private final int samples;
+
+	private final Exception error;
+
+	private DiveResult(final String name, final DiveHeader header, final String fileName, final String location,
+			final byte[] data, final int samples, final Exception error) {
+		this.name = name;
+		this.header = header;
+		this.fileName = fileName;
+		this.location = location;
+		this.data = data;
+		this.samples = samples;
+		this.error = error;
+	}
+
+	/** Create the result of a dive which was converted. */
+	static DiveResult converted(final String name, final DiveHeader header, final String fileName,
+			final String location, final byte[] data, final int samples) {
+		return new DiveResult(name, header, fileName, location, data, samples, null);
+	}
+
+	/** Create the result of a dive which couldn't be converted. */
+	static DiveResult failed(final String name, final Exception error) {
+		return new DiveResult(name, null, null, null, null, 0, error);
+	}
+
+	/**
+	 * Get the name of the dive log within its input, such as the Zip entry name.
+	 *
+	 * @return name, or an empty string if the input only contains one dive or is
+	 *         read as a stream
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/** Check whether the dive was converted, in which case there is no error. */
+	public boolean isConverted() {
+		return error == null;
+	}
+
+	/**
+	 * Get the header of the dive.
+	 *
+	 * @return header, or {@code null} if the dive wasn't converted
+	 */
+	public DiveHeader getHeader() {
+		return header;
+	}
+
+	/**
+	 * Get the name of the FIT file, which is the start time of the dive.
+	 *
+	 * @return file name, or {@code null} if the dive wasn't converted
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * Get where the FIT file was written.
+	 *
+	 * @return location reported by the sink, or {@code null} if there is no sink
+	 *         or the dive wasn't converted
+	 */
+	public String getLocation() {
+		return location;
+	}
+
+	/**
+	 * Get the FIT file contents, which must not be modified.
+	 *
+	 * @return contents, or {@code null} if the file was written to a sink or the
+	 *         dive wasn't converted
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	/** Get the number of samples in the dive profile. */
+	public int getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Get the error which stopped the dive from being converted.
+	 *
+	 * @return error, or {@code null} if the dive was converted
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+}
@@ -1,6 +1,11 @@
 package com.github.nradov.sdetofit;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.NavigableSet;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * Source of zero or more dive profiles. A dive profile is a series of depths at
@@ -8,8 +13,105 @@ import java.util.NavigableSet;
  *
  * @author Nick Radov
  */
-public interface DivesSource {
+public interface DivesSource extends Closeable {
 
+	/**
+	 * Get all of the dives. Every dive is kept in memory for as long as the
+	 * returned set is reachable, so use {@link #stream(boolean)} for sources which
+	 * might contain many dives.
+	 *
+	 * @return dives in chronological order
+	 */
 	NavigableSet<Dive> getDives();
-	
+
+	/**
+	 * Stream the dives one at a time. Sources containing more than one dive parse
+	 * each dive only when the stream reaches it, so a dive can be garbage collected
+	 * as soon as the caller is done with it. Errors reading a dive are thrown as
+	 * {@link java.io.UncheckedIOException}.
+	 *
+	 * @param chronological {@code true} to stream the dives in start time order,
+	 *                      {@code false} to stream them in the order they are
+	 *                      stored in the source
+	 * @return dives
+	 */
+	default Stream<Dive> stream(final boolean chronological) {
+		return getDives().stream();
+	}
+
+	/**
+	 * Get one task per dive which reads the dive when it is called, so that dives
+	 * can be parsed concurrently. The tasks may be called from any thread, and
+	 * only hold a dive in memory once called. Sources containing a single dive
+	 * read it when the stream reaches it, and return a reader whose checksum and
+	 * size are unknown.
+	 *
+	 * @param chronological {@code true} to return the tasks in start time order,
+	 *                      {@code false} to return them in the order the dives are
+	 *                      stored in the source
+	 * @return dive reading tasks
+	 */
+	default Stream<DiveReader> readers(final boolean chronological) {
+		return stream(chronological).map(DiveReader::of);
+	}
+
+	/**
+	 * Get one task per dive whose header is accepted by a filter. Only the headers
+	 * of the dives are read to apply the filter, so sources which can read a
+	 * header without the samples never parse the samples of the dives which don't
+	 * match. Errors reading a header are thrown as {@link UncheckedIOException}.
+	 *
+	 * @param chronological {@code true} to return the tasks in start time order,
+	 *                      {@code false} to return them in the order the dives are
+	 *                      stored in the source
+	 * @param filter        selects the dives to read
+	 * @return dive reading tasks
+	 */
+	default Stream<DiveReader> readers(final boolean chronological, final Predicate<? super DiveHeader> filter) {
+		return readers(chronological).filter(reader -> filter.test(readHeader(reader)));
+	}
+
+	/**
+	 * Get the headers of the dives, without reading their samples where the source
+	 * allows it. Errors reading a header are thrown as
+	 * {@link UncheckedIOException}.
+	 *
+	 * @param chronological {@code true} to return the headers in start time order,
+	 *                      {@code false} to return them in the order the dives are
+	 *                      stored in the source
+	 * @return dive headers
+	 */
+	default Stream<DiveHeader> headers(final boolean chronological) {
+		return readers(chronological).map(DivesSource::readHeader);
+	}
+
+	private static DiveHeader readHeader(final DiveReader reader) {
+		try {
+			return reader.getHeader();
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Collect metrics about reading the dives, such as the time taken by stages
+	 * which happen inside the source. The default implementation collects
+	 * nothing, which is fine for sources whose readers do all of their work in
+	 * {@link DiveReader#call()}.
+	 *
+	 * @param metrics where to record the metrics
+	 */
+	default void setMetrics(final ConversionMetrics metrics) {
+		// nothing to collect
+	}
+
+	/**
+	 * Release any resources held by the source. The default implementation does
+	 * nothing.
+	 */
+	@Override
+	default void close() throws IOException {
+		// nothing to release
+	}
+
 }
@@ -1,16 +1,19 @@
 package com.github.nradov.sdetofit;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.util.Locale;
+import java.util.stream.Stream;
 import java.util.zip.ZipException;
 
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLStreamException;
 
+import com.github.nradov.sdetofit.catalog.DiveCatalog;
 import com.github.nradov.sdetofit.suunto.SuuntoSde;
 import com.github.nradov.sdetofit.suunto.SuuntoSml;
 import com.github.nradov.sdetofit.suunto.SuuntoXml;
@@ -39,6 +42,18 @@ public final class DivesSourceFactory {
 		final static String SML = ".sml";
 	}
 
+	/**
+	 * Check whether a file has the extension of a supported dive log format.
+	 *
+	 * @param file dive log file
+	 * @return {@code true} if {@link #create(Path)} can read the file
+	 */
+	public static boolean isSupported(final Path file) {
+		final var lowerCaseFile = file.toString().toLowerCase(Locale.US);
+		return lowerCaseFile.endsWith(FileExtension.SUUNTO_DIVE_EXPORT) || lowerCaseFile.endsWith(FileExtension.XML)
+				|| lowerCaseFile.endsWith(FileExtension.SML) || lowerCaseFile.endsWith(DiveCatalog.FILE_EXTENSION);
+	}
+
 	/**
 	 * Factory method to automatically create the right source of dive profiles
 	 * based on the file extension. Currently only Suunto Dive Manager (.sde) files
@@ -50,29 +65,126 @@ public final class DivesSourceFactory {
 	 *                                      compressed dive log file
 	 * @throws IOException                  if an error occurs while reading a dive
 	 *                                      log file
-	 * @throws ParserConfigurationException if an error occurs while reading an XML
-	 *                                      dive log file
-	 * @throws SAXException                 if an error occurs while reading an XML
+	 * @throws XMLStreamException           if an error occurs while reading an XML
 	 *                                      dive log file
 	 */
 	public static DivesSource create(final Path file)
-			throws ZipException, IOException, ParserConfigurationException, SAXException {
+			throws ZipException, IOException, XMLStreamException {
+		return create(file, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Factory method to automatically create the right source of dive profiles
+	 * based on the file extension.
+	 *
+	 * @param file        dive profiles
+	 * @param parallelism maximum number of dive logs to parse at the same time
+	 *                    when the file contains more than one
+	 * @return source of zero or more dive profiles
+	 * @throws ZipException       if an error occurs while reading a compressed
+	 *                            dive log file
+	 * @throws IOException        if an error occurs while reading a dive log file
+	 * @throws XMLStreamException if an error occurs while reading an XML dive log
+	 *                            file
+	 */
+	public static DivesSource create(final Path file, final int parallelism)
+			throws ZipException, IOException, XMLStreamException {
+		return create(file, parallelism, ZoneId.systemDefault());
+	}
+
+	/**
+	 * Factory method to automatically create the right source of dive profiles
+	 * based on the file extension, with the times of the dive logs in a given
+	 * time zone. Dive catalogs hold times which have already been converted, so
+	 * the time zone doesn't apply to them.
+	 *
+	 * @param file        dive profiles
+	 * @param parallelism maximum number of dive logs to parse at the same time
+	 *                    when the file contains more than one
+	 * @param zone        time zone the dive computer clock was set to
+	 * @return source of zero or more dive profiles
+	 * @throws ZipException       if an error occurs while reading a compressed
+	 *                            dive log file
+	 * @throws IOException        if an error occurs while reading a dive log file
+	 * @throws XMLStreamException if an error occurs while reading an XML dive log
+	 *                            file
+	 */
+	public static DivesSource create(final Path file, final int parallelism, final ZoneId zone)
+			throws ZipException, IOException, XMLStreamException {
 		final var lowerCaseFile = file.toString().toLowerCase(Locale.US);
 		if (lowerCaseFile.endsWith(FileExtension.SUUNTO_DIVE_EXPORT)) {
-			return new SuuntoSde(file);
+			return new SuuntoSde(file, parallelism, zone);
 		} else if (lowerCaseFile.endsWith(FileExtension.XML)) {
-			return new SuuntoXml(file);
+			return new SuuntoXml(file, zone);
 		} else if (lowerCaseFile.endsWith(FileExtension.SML)) {
-			return new SuuntoSml(file);
+			return new SuuntoSml(file, zone);
+		} else if (lowerCaseFile.endsWith(DiveCatalog.FILE_EXTENSION)) {
+			return new DiveCatalog(file);
 		}
 		// TODO: add support for other file formats
 
 		throw new IllegalArgumentException("unrecognized file format: \"" + file + "\"");
 	}
 
+	/**
+	 * Read the dives in a dive log from a stream, such as an upload or a pipe,
+	 * without needing a file on disk. The format is selected by the file name
+	 * extension, as for {@link #create(Path)}. Dives are parsed as the input
+	 * arrives, and export files are read one entry at a time. Errors reading the
+	 * dives after the first are thrown as {@link java.io.UncheckedIOException} by
+	 * the returned stream. The input stream is left open.
+	 *
+	 * @param is       dive log contents
+	 * @param fileName dive log file name, only used for its extension
+	 * @return dives, in the order they are stored
+	 * @throws IOException        if an error occurs while reading a single dive
+	 *                            log
+	 * @throws XMLStreamException if a single dive log is not well formed XML
+	 */
+	public static Stream<Dive> stream(final InputStream is, final String fileName)
+			throws IOException, XMLStreamException {
+		return stream(is, fileName, ZoneId.systemDefault());
+	}
+
+	/**
+	 * Read the dives in a dive log from a stream, with their times in a given
+	 * time zone.
+	 *
+	 * @param is       dive log contents
+	 * @param fileName dive log file name, only used for its extension
+	 * @param zone     time zone the dive computer clock was set to
+	 * @return dives, in the order they are stored
+	 * @throws IOException        if an error occurs while reading a single dive
+	 *                            log
+	 * @throws XMLStreamException if a single dive log is not well formed XML
+	 * @see #stream(InputStream, String)
+	 */
+	public static Stream<Dive> stream(final InputStream is, final String fileName, final ZoneId zone)
+			throws IOException, XMLStreamException {
+		final var lowerCaseFile = fileName.toLowerCase(Locale.US);
+		if (lowerCaseFile.endsWith(FileExtension.SUUNTO_DIVE_EXPORT)) {
+			return SuuntoSde.stream(is, zone);
+		}
+		// the XML parser closes its input at the end of the document
+		final InputStream unclosed = new FilterInputStream(is) {
+
+			@Override
+			public void close() {
+				// left open for the caller
+			}
+
+		};
+		if (lowerCaseFile.endsWith(FileExtension.XML)) {
+			return Stream.of(new SuuntoXml(unclosed, zone));
+		} else if (lowerCaseFile.endsWith(FileExtension.SML)) {
+			return Stream.of(new SuuntoSml(unclosed, zone));
+		}
+		throw new IllegalArgumentException("unrecognized file format: \"" + fileName + "\"");
+	}
+
 	public static DivesSource create(final String file, final ZoneOffset zoneOffset)
-			throws ZipException, IOException, ParserConfigurationException, SAXException {
-		return create(Paths.get(file));
+			throws ZipException, IOException, XMLStreamException {
+		return create(Paths.get(file), Runtime.getRuntime().availableProcessors(), zoneOffset);
 	}
 
 }
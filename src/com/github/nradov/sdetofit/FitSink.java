@@ -0,0 +1,31 @@
+package com.github.nradov.sdetofit;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination for converted FIT files and the other files written for each
+ * dive, such as a directory with a file per dive or a single archive holding
+ * all of them.
+ *
+ * @author Nick Radov
+ */
+public interface FitSink extends Closeable {
+
+	/**
+	 * Write a file. Safe to call from several threads at once. A file is never
+	 * replaced by a later file of the same sink: if the name has already been
+	 * written, a numbered suffix such as {@code -2} is added before the
+	 * extension.
+	 *
+	 * @param name           file name, normally from
+	 *                       {@link SdeToFit#fitFileName(Dive)}
+	 * @param data           file contents
+	 * @param modifiedMillis modification time in milliseconds since the Unix
+	 *                       Epoch, recorded by archives
+	 * @return where the file was written, for messages
+	 * @throws IOException if an error occurs while writing
+	 */
+	String write(String name, byte[] data, long modifiedMillis) throws IOException;
+
+}
@@ -0,0 +1,427 @@
+package com.github.nradov.sdetofit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Watches input directories and converts dive log files as they are added or
+ * changed, for a long running process which keeps its threads and encoders
+ * warm between files. The output directory mirrors the input directories the
+ * same way as a {@link BatchConverter}.
+ *
+ * <p>
+ * A file is converted once its size and modification time have stayed the same
+ * for the settle time, so that files which are still being copied in aren't
+ * read half written. Converted files are recorded by checksum and size in a
+ * manifest in the output directory, so they aren't converted again after a
+ * restart unless they change. Conversions are always incremental, so when an
+ * export file grows only its new dives are converted.
+ * </p>
+ *
+ * <p>
+ * {@link #close()} stops watching and waits for the conversions in progress.
+ * FIT files are written under a temporary name and renamed once complete, so
+ * stopping never leaves a partial FIT file behind.
+ * </p>
+ *
+ * @author Nick Radov
+ */
+public final class FolderWatcher implements Closeable {
+
+	/** Default time a file must stay unchanged before it is converted. */
+	private static final long DEFAULT_SETTLE_MILLIS = 2000;
+
+	/** How often files waiting to settle are checked. */
+	private static final long POLL_MILLIS = 250;
+
+	/** How long to wait for the conversions in progress when stopping. */
+	private static final long SHUTDOWN_SECONDS = 30;
+
+	private final List<Path> inputs;
+
+	private final Path output;
+
+	private SdeToFit.Encoder encoder = SdeToFit.Encoder.SDK;
+
+	private Set<SdeToFit.Format> formats = EnumSet.of(SdeToFit.Format.FIT);
+
+	private ProfileDecimator decimator;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private DiveFilter filter = DiveFilter.ALL;
+
+	private boolean quiet;
+
+	private long settleMillis = DEFAULT_SETTLE_MILLIS;
+
+	/** Input directory containing each watched directory, by watch key. */
+	private final Map<WatchKey, Path> roots = new HashMap<>();
+
+	/** Files waiting to settle, in the order they were seen. */
+	private final Map<Path, PendingFile> pending = new LinkedHashMap<>();
+
+	/** Files being converted, which are left pending if they change again. */
+	private final Set<Path> converting = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean closing;
+
+	private volatile CountDownLatch stopped;
+
+	/**
+	 * @param inputs input directories
+	 * @param output output directory
+	 */
+	public FolderWatcher(final List<Path> inputs, final Path output) {
+		if (inputs.isEmpty()) {
+			throw new IllegalArgumentException("no input directories");
+		}
+		this.inputs = inputs.stream().map(input -> input.toAbsolutePath().normalize())
+				.collect(Collectors.toUnmodifiableList());
+		this.output = output.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Select how the FIT files are encoded. The default is
+	 * {@link SdeToFit.Encoder#SDK}.
+	 *
+	 * @param encoder FIT encoder
+	 */
+	public void setEncoder(final SdeToFit.Encoder encoder) {
+		this.encoder = Objects.requireNonNull(encoder);
+	}
+
+	/**
+	 * Select the files written for each dive. The default is only
+	 * {@link SdeToFit.Format#FIT}.
+	 *
+	 * @param formats one or more formats
+	 * @see SdeToFit#setFormats(Set)
+	 */
+	public void setFormats(final Set<SdeToFit.Format> formats) {
+		if (formats.isEmpty()) {
+			throw new IllegalArgumentException("no output formats");
+		}
+		this.formats = EnumSet.copyOf(formats);
+	}
+
+	/**
+	 * Remove samples which add nothing to the shape of each dive profile. The
+	 * default is {@code null}, which keeps every sample.
+	 *
+	 * @param decimator decimator, or {@code null}
+	 * @see SdeToFit#setDecimator(ProfileDecimator)
+	 */
+	public void setDecimator(final ProfileDecimator decimator) {
+		this.decimator = decimator;
+	}
+
+	/**
+	 * Set the number of threads converting dives. The default is the number of
+	 * available processors.
+	 *
+	 * @param threads number of threads
+	 */
+	public void setThreads(final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Only convert the dives accepted by a filter. The default is
+	 * {@link DiveFilter#ALL}.
+	 *
+	 * @param filter selects the dives to convert
+	 */
+	public void setFilter(final DiveFilter filter) {
+		this.filter = Objects.requireNonNull(filter);
+	}
+
+	/**
+	 * Don't print a line per dive and per file. Errors are still printed. The
+	 * default is {@code false}.
+	 *
+	 * @param quiet {@code true} to print nothing but errors
+	 */
+	public void setQuiet(final boolean quiet) {
+		this.quiet = quiet;
+	}
+
+	/**
+	 * Set how long a file's size and modification time must stay the same before
+	 * it is converted. The default is 2 seconds.
+	 *
+	 * @param settleMillis settle time in milliseconds
+	 */
+	public void setSettleMillis(final long settleMillis) {
+		this.settleMillis = settleMillis;
+	}
+
+	/**
+	 * Convert the files already in the input directories which haven't been
+	 * converted yet, then watch for new and changed files until {@link #close()}
+	 * is called.
+	 *
+	 * @throws IOException if an error occurs while watching the input directories
+	 *                     or writing the manifest
+	 */
+	public void run() throws IOException {
+		stopped = new CountDownLatch(1);
+		try {
+			Files.createDirectories(output);
+			try (final WatchService watchService = FileSystems.getDefault().newWatchService();
+					final ConversionManifest manifest = ConversionManifest.open(output);
+					final ConsoleLog console = quiet ? ConsoleLog.DISCARD : new ConsoleLog(System.out)) {
+				final ForkJoinPool pool = new ForkJoinPool(threads);
+				try {
+					for (final Path input : inputs) {
+						register(watchService, input, input);
+					}
+					console.log("Watching " + inputs + " for dive logs to convert into \"" + output + "\"");
+					watch(watchService, pool, manifest, console);
+				} finally {
+					pool.shutdown();
+					awaitTermination(pool);
+					console.log("Stopped watching");
+				}
+			}
+		} finally {
+			stopped.countDown();
+		}
+	}
+
+	private void watch(final WatchService watchService, final ForkJoinPool pool, final ConversionManifest manifest,
+			final ConsoleLog console) throws IOException {
+		while (!closing) {
+			WatchKey key;
+			try {
+				key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (final ClosedWatchServiceException e) {
+				return;
+			}
+			while (key != null) {
+				handle(watchService, key);
+				key = watchService.poll();
+			}
+			dispatch(pool, manifest, console);
+		}
+	}
+
+	/**
+	 * Watch a directory and its subdirectories, and queue the dive log files
+	 * already in them.
+	 */
+	private void register(final WatchService watchService, final Path root, final Path directory)
+			throws IOException {
+		try (final Stream<Path> paths = Files.walk(directory)) {
+			for (final Path path : (Iterable<Path>) paths::iterator) {
+				if (path.startsWith(output)) {
+					// the output directory can be inside an input directory
+					continue;
+				}
+				if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+					roots.put(path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_MODIFY), root);
+				} else if (DivesSourceFactory.isSupported(path)) {
+					queue(root, path);
+				}
+			}
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void handle(final WatchService watchService, final WatchKey key) throws IOException {
+		final Path root = roots.get(key);
+		final Path directory = (Path) key.watchable();
+		for (final WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				// some events were lost, so look at everything again
+				for (final Path input : inputs) {
+					register(watchService, input, input);
+				}
+				continue;
+			}
+			final Path path = directory.resolve((Path) event.context());
+			if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+				if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+					register(watchService, root, path);
+				}
+			} else if (DivesSourceFactory.isSupported(path)) {
+				queue(root, path);
+			}
+		}
+		if (!key.reset()) {
+			roots.remove(key);
+		}
+	}
+
+	private void queue(final Path root, final Path file) {
+		pending.computeIfAbsent(file, path -> new PendingFile(root));
+	}
+
+	/** Start converting the files which have settled. */
+	private void dispatch(final ForkJoinPool pool, final ConversionManifest manifest, final ConsoleLog console) {
+		final long now = System.nanoTime();
+		for (final Iterator<Map.Entry<Path, PendingFile>> i = pending.entrySet().iterator(); i.hasNext();) {
+			final Map.Entry<Path, PendingFile> entry = i.next();
+			final Path file = entry.getKey();
+			final PendingFile pendingFile = entry.getValue();
+			try {
+				if (pendingFile.changed(Files.size(file), Files.getLastModifiedTime(file).toMillis(), now)
+						|| now - pendingFile.since < TimeUnit.MILLISECONDS.toNanos(settleMillis)
+						|| !converting.add(file)) {
+					continue;
+				}
+			} catch (final IOException e) {
+				// deleted or renamed before it settled
+				i.remove();
+				continue;
+			}
+			i.remove();
+			pool.execute(new RecursiveAction() {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					try {
+						convert(pendingFile.root, file, manifest, console);
+					} catch (final IOException | XMLStreamException | RuntimeException e) {
+						System.err.println("Unable to convert \"" + file + "\": " + e);
+					} finally {
+						converting.remove(file);
+					}
+				}
+
+			});
+		}
+	}
+
+	private void convert(final Path root, final Path file, final ConversionManifest manifest,
+			final ConsoleLog console) throws IOException, XMLStreamException {
+		final long size = Files.size(file);
+		final long crc = checksum(file);
+		final Path directory = BatchConverter.outputDirectory(output, root.relativize(file));
+		final String relativeDirectory = output.relativize(directory).toString();
+		if (manifest.isConverted(crc, size, relativeDirectory)) {
+			console.log("Skipping unchanged file: \"" + file + "\"");
+			return;
+		}
+		final var converter = new SdeToFit(file, directory);
+		converter.setEncoder(encoder);
+		converter.setFormats(formats);
+		converter.setDecimator(decimator);
+		converter.setIncremental(true);
+		converter.setFilter(filter);
+		final var metrics = new ConversionMetrics();
+		converter.convertInPool(metrics, console);
+		manifest.add(crc, size, file.toString(), relativeDirectory);
+		console.log(String.format(Locale.US, "Converted \"%s\" into \"%s\": %d dives, %d skipped", file,
+				directory, metrics.getDives(), metrics.getSkipped()));
+	}
+
+	private static long checksum(final Path file) throws IOException {
+		final CRC32 crc = new CRC32();
+		final byte[] buffer = new byte[1 << 16];
+		try (final InputStream is = Files.newInputStream(file)) {
+			int read;
+			while ((read = is.read(buffer)) >= 0) {
+				crc.update(buffer, 0, read);
+			}
+		}
+		return crc.getValue();
+	}
+
+	private static void awaitTermination(final ForkJoinPool pool) {
+		try {
+			if (!pool.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+				// interrupted dives are converted again on the next run
+				pool.shutdownNow();
+				pool.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Stop watching, and wait for the conversions in progress to finish. Safe to
+	 * call from a shutdown hook or any other thread.
+	 */
+	@Override
+	public void close() {
+		closing = true;
+		final CountDownLatch running = stopped;
+		if (running != null) {
+			try {
+				running.await();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/** File waiting for its size and modification time to stop changing. */
+	private static final class PendingFile {
+
+		private final Path root;
+
+		private long size = -1, modified = -1;
+
+		/** When the size or modification time last changed. */
+		private long since;
+
+		PendingFile(final Path root) {
+			this.root = root;
+		}
+
+		/** Record the current size and modification time, and check for a change. */
+		boolean changed(final long size, final long modified, final long now) {
+			if (size == this.size && modified == this.modified) {
+				return false;
+			}
+			this.size = size;
+			this.modified = modified;
+			since = now;
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.github.nradov.sdetofit;
+
+import java.util.Objects;
+
+import com.garmin.fit.DateTime;
+
+/**
+ * Dive which forwards every call to another dive, for subclasses which replace
+ * part of a dive and keep the rest.
+ *
+ * @author Nick Radov
+ */
+abstract class ForwardingDive implements Dive {
+
+	private final Dive dive;
+
+	ForwardingDive(final Dive dive) {
+		this.dive = Objects.requireNonNull(dive);
+	}
+
+	@Override
+	public DateTime getStartTime() {
+		return dive.getStartTime();
+	}
+
+	@Override
+	public DateTime getEndTime() {
+		return dive.getEndTime();
+	}
+
+	@Override
+	public DiveProfile getProfile() {
+		return dive.getProfile();
+	}
+
+	@Override
+	public String getProductName() {
+		return dive.getProductName();
+	}
+
+	@Override
+	public Integer getManufacturer() {
+		return dive.getManufacturer();
+	}
+
+	@Override
+	public long getSerialNumber() {
+		return dive.getSerialNumber();
+	}
+
+	@Override
+	public long getDiveNumber() {
+		return dive.getDiveNumber();
+	}
+
+	@Override
+	public long getSurfaceTime() {
+		return dive.getSurfaceTime();
+	}
+
+	@Override
+	public boolean hasSurfaceTime() {
+		return dive.hasSurfaceTime();
+	}
+
+	@Override
+	public float getAvgDepth() {
+		return dive.getAvgDepth();
+	}
+
+	@Override
+	public float getMaxDepth() {
+		return dive.getMaxDepth();
+	}
+
+	@Override
+	public float getBottomTime() {
+		return dive.getBottomTime();
+	}
+
+	@Override
+	public int compareTo(final Dive o) {
+		return Dive.compare(this, o);
+	}
+
+}
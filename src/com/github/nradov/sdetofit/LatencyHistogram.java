@@ -0,0 +1,77 @@
+package com.github.nradov.sdetofit;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size histogram of durations, for percentiles over any number of dives
+ * without keeping every value. Values below 64 microseconds have their own
+ * bucket; larger values share a bucket with values within about 3% of them.
+ * Safe for concurrent use.
+ *
+ * @author Nick Radov
+ */
+final class LatencyHistogram {
+
+	/** Number of buckets per power of two above the linear range. */
+	private static final int SUB_BUCKET_BITS = 5, SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/** Values below this have a bucket each. */
+	private static final int LINEAR = SUB_BUCKETS * 2;
+
+	private final AtomicLongArray counts = new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+
+	/**
+	 * Record a duration.
+	 *
+	 * @param nanos duration in nanoseconds
+	 */
+	void record(final long nanos) {
+		counts.incrementAndGet(bucket(Math.max(0, nanos / 1000)));
+	}
+
+	private static int bucket(final long micros) {
+		if (micros < LINEAR) {
+			return (int) micros;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		final int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/** Get the smallest value in a bucket, in microseconds. */
+	private static long lowestValue(final int bucket) {
+		if (bucket < LINEAR) {
+			return bucket;
+		}
+		final int exponent = (bucket - LINEAR) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+		final long subBucket = (bucket - LINEAR) % SUB_BUCKETS;
+		return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * Get a percentile of the recorded durations.
+	 *
+	 * @param percentile between 0 and 100
+	 * @return duration in nanoseconds, accurate to about 3%, or 0 if nothing has
+	 *         been recorded
+	 */
+	long getPercentile(final double percentile) {
+		long total = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			total += counts.get(i);
+		}
+		if (total == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long cumulative = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			cumulative += counts.get(i);
+			if (cumulative >= rank) {
+				return lowestValue(i) * 1000;
+			}
+		}
+		return lowestValue(counts.length() - 1) * 1000;
+	}
+
+}
@@ -0,0 +1,365 @@
+package com.github.nradov.sdetofit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+import javax.xml.stream.XMLStreamException;
+
+import com.github.nradov.sdetofit.fit.DirectFitEncoder;
+
+/**
+ * Source which merges the dives of several dive log files, such as overlapping
+ * exports of the same dive computer made on different PCs, into one timeline.
+ * Each file is read in start time order, and the files are merged as they are
+ * read, so only the header of the next dive of each file is held in memory.
+ *
+ * <p>
+ * A dive log with the same dive computer serial number, start time and
+ * CRC-32 checksum as one already merged is a duplicate, and is left out
+ * without parsing its samples. For a file holding a single dive log the
+ * checksum is that of the whole file, which matches the checksum of the same
+ * dive log inside an {@code .sde} export. The surface interval of each dive is
+ * recomputed from the end of the previous dive of the same dive computer in
+ * the merged timeline. The first dive of each dive computer keeps the surface
+ * interval it was logged with. The checksums of the dives in a
+ * {@link com.github.nradov.sdetofit.catalog.DiveCatalog} are those of their
+ * catalog records, so they are only duplicates of dives from other catalogs.
+ * </p>
+ *
+ * @author Nick Radov
+ */
+public final class MergedDivesSource implements DivesSource {
+
+	private final List<Path> files;
+
+	private final List<DivesSource> sources;
+
+	private volatile ConversionMetrics metrics = new ConversionMetrics();
+
+	/**
+	 * Open dive log files.
+	 *
+	 * @param files       dive log files, each of which may hold any number of
+	 *                    dives
+	 * @param parallelism maximum number of dive logs to parse at the same time
+	 *                    in each file
+	 * @throws ZipException       if an error occurs while opening a compressed
+	 *                            dive log file
+	 * @throws IOException        if an error occurs while opening a dive log file
+	 * @throws XMLStreamException if an error occurs while reading an XML dive log
+	 *                            file
+	 */
+	public MergedDivesSource(final List<Path> files, final int parallelism)
+			throws ZipException, IOException, XMLStreamException {
+		if (files.isEmpty()) {
+			throw new IllegalArgumentException("no files to merge");
+		}
+		this.files = List.copyOf(files);
+		sources = new ArrayList<>(files.size());
+		try {
+			for (final Path file : this.files) {
+				sources.add(DivesSourceFactory.create(file, parallelism));
+			}
+		} catch (final IOException | XMLStreamException | RuntimeException e) {
+			try {
+				close();
+			} catch (final IOException closeException) {
+				e.addSuppressed(closeException);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>
+	 * Duplicates are left out, as for {@link #readers(boolean)}.
+	 * </p>
+	 */
+	@Override
+	public NavigableSet<Dive> getDives() {
+		return stream(true).collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>
+	 * The dives are always in start time order, as the surface intervals are
+	 * computed from the merged timeline.
+	 * </p>
+	 */
+	@Override
+	public Stream<Dive> stream(final boolean chronological) {
+		return readers(chronological).map(reader -> {
+			try {
+				return reader.call();
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>
+	 * The tasks are always in start time order, and duplicates are left out. The
+	 * header of every dive is read to merge the files, and each task is named
+	 * after its file followed by its name within the file, if any.
+	 * </p>
+	 */
+	@Override
+	public Stream<DiveReader> readers(final boolean chronological) {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new Merge(),
+				Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	@Override
+	public void setMetrics(final ConversionMetrics metrics) {
+		this.metrics = Objects.requireNonNull(metrics);
+		for (final DivesSource source : sources) {
+			source.setMetrics(metrics);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException exception = null;
+		for (final DivesSource source : sources) {
+			try {
+				source.close();
+			} catch (final IOException e) {
+				if (exception == null) {
+					exception = e;
+				} else {
+					exception.addSuppressed(e);
+				}
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	/** Next dive of one of the files being merged. */
+	private static final class Head implements Comparable<Head> {
+
+		private final int source;
+
+		private final Iterator<DiveReader> readers;
+
+		private DiveReader reader;
+
+		private DiveHeader header;
+
+		Head(final int source, final Iterator<DiveReader> readers) {
+			this.source = source;
+			this.readers = readers;
+		}
+
+		/** Move to the next dive of the file, or return {@code false} at the end. */
+		boolean advance() {
+			if (!readers.hasNext()) {
+				return false;
+			}
+			reader = readers.next();
+			try {
+				header = reader.getHeader();
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return true;
+		}
+
+		long getStartTime() {
+			return header.getStartTime().getTimestamp();
+		}
+
+		/** Dives which start at the same time stay in the order of their files. */
+		@Override
+		public int compareTo(final Head o) {
+			int result = Long.compare(getStartTime(), o.getStartTime());
+			if (result == 0) {
+				result = Long.compare(header.getSerialNumber(), o.header.getSerialNumber());
+			}
+			return result == 0 ? Integer.compare(source, o.source) : result;
+		}
+
+	}
+
+	/**
+	 * K-way merge of the files. Duplicates start at the same time, so they are
+	 * next to each other in the merged timeline, and only the keys of the dives
+	 * starting at the current time need to be kept to find them.
+	 */
+	private final class Merge implements Iterator<DiveReader> {
+
+		private final PriorityQueue<Head> heads = new PriorityQueue<>();
+
+		private long currentStartTime = Long.MIN_VALUE;
+
+		private final Set<String> currentKeys = new HashSet<>();
+
+		/** End time of the latest dive of each dive computer. */
+		private final Map<Long, Long> endTimes = new HashMap<>();
+
+		private DiveReader next;
+
+		private boolean started;
+
+		@Override
+		public boolean hasNext() {
+			if (!started) {
+				started = true;
+				for (int i = 0; i < sources.size(); i++) {
+					final Head head = new Head(i, sources.get(i).readers(true).iterator());
+					if (head.advance()) {
+						heads.add(head);
+					}
+				}
+			}
+			while (next == null && !heads.isEmpty()) {
+				final Head head = heads.poll();
+				next = merge(head);
+				if (head.advance()) {
+					heads.add(head);
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public DiveReader next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final DiveReader reader = next;
+			next = null;
+			return reader;
+		}
+
+		/** Get the merged reader for the current dive of a file, or {@code null} for a duplicate. */
+		private DiveReader merge(final Head head) {
+			final long startTime = head.getStartTime();
+			if (startTime != currentStartTime) {
+				currentStartTime = startTime;
+				currentKeys.clear();
+			}
+			final long serialNumber = head.header.getSerialNumber();
+			if (!currentKeys.add(serialNumber + ":" + checksum(head))) {
+				metrics.addDuplicate();
+				return null;
+			}
+			final Long previousEndTime = endTimes.get(serialNumber);
+			final long endTime = startTime + head.header.getDuration();
+			endTimes.put(serialNumber, previousEndTime == null ? endTime : Math.max(previousEndTime, endTime));
+			return new MergedReader(files.get(head.source), head.reader,
+					previousEndTime == null ? null : Math.max(0, startTime - previousEndTime));
+		}
+
+		/** Get the checksum of the raw dive log, computing it for a file holding a single dive log. */
+		private long checksum(final Head head) {
+			if (head.reader.getCrc() != DiveReader.UNKNOWN || !head.reader.getName().isEmpty()) {
+				return head.reader.getCrc();
+			}
+			final var crc = new CRC32();
+			try (final InputStream is = Files.newInputStream(files.get(head.source))) {
+				final byte[] buffer = new byte[8192];
+				for (int n = is.read(buffer); n >= 0; n = is.read(buffer)) {
+					crc.update(buffer, 0, n);
+				}
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return crc.getValue();
+		}
+
+	}
+
+	/** Reader of a merged dive, which replaces its surface interval. */
+	private static final class MergedReader implements DiveReader {
+
+		private final String name;
+
+		private final DiveReader reader;
+
+		/** Surface interval in seconds, or {@code null} to keep the logged one. */
+		private final Long surfaceTime;
+
+		MergedReader(final Path file, final DiveReader reader, final Long surfaceTime) {
+			this.name = reader.getName().isEmpty() ? file.toString() : file + "/" + reader.getName();
+			this.reader = reader;
+			this.surfaceTime = surfaceTime;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public long getCrc() {
+			return reader.getCrc();
+		}
+
+		@Override
+		public long getSize() {
+			return reader.getSize();
+		}
+
+		@Override
+		public DiveHeader getHeader() throws IOException {
+			return reader.getHeader();
+		}
+
+		@Override
+		public Dive call() throws IOException {
+			final Dive dive = reader.call();
+			return surfaceTime == null ? dive : new ForwardingDive(dive) {
+
+				@Override
+				public long getSurfaceTime() {
+					return surfaceTime;
+				}
+
+				@Override
+				public boolean hasSurfaceTime() {
+					return true;
+				}
+
+			};
+		}
+
+		/** Only a dive which keeps its logged surface interval can be transcoded. */
+		@Override
+		public TranscodedDive transcode(final DirectFitEncoder encoder) throws IOException {
+			return surfaceTime == null ? reader.transcode(encoder) : null;
+		}
+
+	}
+
+}
@@ -0,0 +1,195 @@
+package com.github.nradov.sdetofit;
+
+/**
+ * Removes samples which add nothing to the shape of a dive profile, using the
+ * Ramer-Douglas-Peucker line simplification on depth over time. A sample is
+ * removed only if the depth interpolated between the samples either side of it
+ * is within a maximum error of the recorded depth, and the samples either side
+ * are no more than a maximum time apart. The first and last samples and the
+ * deepest sample are always kept. Temperatures are kept for the samples which
+ * remain.
+ *
+ * <p>
+ * Instances are immutable and thread safe.
+ * </p>
+ *
+ * @author Nick Radov
+ */
+public final class ProfileDecimator {
+
+	/** Default maximum time between kept samples in seconds. */
+	public static final int DEFAULT_MAX_GAP = 30;
+
+	private final float maxDepthError;
+
+	private final int maxGap;
+
+	/**
+	 * @param maxDepthError maximum difference in meters between a removed
+	 *                      sample's depth and the depth interpolated from the
+	 *                      kept samples
+	 * @param maxGap        maximum time in seconds between kept samples
+	 */
+	public ProfileDecimator(final float maxDepthError, final int maxGap) {
+		if (!(maxDepthError >= 0)) {
+			throw new IllegalArgumentException("maximum depth error must not be negative: " + maxDepthError);
+		}
+		if (maxGap < 1) {
+			throw new IllegalArgumentException("maximum gap must be positive: " + maxGap);
+		}
+		this.maxDepthError = maxDepthError;
+		this.maxGap = maxGap;
+	}
+
+	/** Get the maximum depth error in meters. */
+	public float getMaxDepthError() {
+		return maxDepthError;
+	}
+
+	/** Get the maximum time between kept samples in seconds. */
+	public int getMaxGap() {
+		return maxGap;
+	}
+
+	/**
+	 * Decimate a dive profile.
+	 *
+	 * @param profile dive profile
+	 * @return a profile with the samples kept, or the same profile if every
+	 *         sample is kept
+	 */
+	public DiveProfile decimate(final DiveProfile profile) {
+		final int size = profile.size();
+		if (size < 3) {
+			return profile;
+		}
+		final boolean[] keep = new boolean[size];
+		int deepest = 0;
+		for (int i = 1; i < size; i++) {
+			if (profile.getDepth(i) > profile.getDepth(deepest)) {
+				deepest = i;
+			}
+		}
+		keep[0] = true;
+		keep[deepest] = true;
+		keep[size - 1] = true;
+		// segments waiting to be simplified, as pairs of kept sample indexes
+		final int[] stack = new int[2 * size];
+		int top = 0;
+		if (deepest > 0 && deepest < size - 1) {
+			stack[top++] = 0;
+			stack[top++] = deepest;
+			stack[top++] = deepest;
+			stack[top++] = size - 1;
+		} else {
+			stack[top++] = 0;
+			stack[top++] = size - 1;
+		}
+		while (top > 0) {
+			final int last = stack[--top];
+			final int first = stack[--top];
+			final int split = split(profile, first, last);
+			if (split >= 0) {
+				keep[split] = true;
+				stack[top++] = first;
+				stack[top++] = split;
+				stack[top++] = split;
+				stack[top++] = last;
+			}
+		}
+		int kept = 0;
+		for (final boolean k : keep) {
+			if (k) {
+				kept++;
+			}
+		}
+		if (kept == size) {
+			return profile;
+		}
+		final int[] timeOffsets = new int[kept];
+		final float[] depths = new float[kept];
+		final byte[] temperatures = new byte[kept];
+		for (int i = 0, j = 0; i < size; i++) {
+			if (keep[i]) {
+				timeOffsets[j] = profile.getTimeOffset(i);
+				depths[j] = profile.getDepth(i);
+				temperatures[j] = profile.getTemperature(i);
+				j++;
+			}
+		}
+		return new DiveProfile(profile.getStartTime(), timeOffsets, depths, temperatures);
+	}
+
+	/**
+	 * Find the sample to keep between two kept samples: the one furthest from the
+	 * line between them if it is too far, otherwise the one nearest the middle
+	 * if they are too far apart in time.
+	 *
+	 * @return sample index, or -1 if none of the samples between them are needed
+	 */
+	private int split(final DiveProfile profile, final int first, final int last) {
+		if (last - first < 2) {
+			return -1;
+		}
+		final int startTime = profile.getTimeOffset(first);
+		final int duration = profile.getTimeOffset(last) - startTime;
+		final float startDepth = profile.getDepth(first);
+		final float depthChange = profile.getDepth(last) - startDepth;
+		float maxError = -1;
+		int furthest = -1;
+		for (int i = first + 1; i < last; i++) {
+			final float interpolated = duration == 0 ? startDepth
+					: startDepth + depthChange * (profile.getTimeOffset(i) - startTime) / duration;
+			final float error = Math.abs(profile.getDepth(i) - interpolated);
+			if (error > maxError) {
+				maxError = error;
+				furthest = i;
+			}
+		}
+		if (maxError > maxDepthError) {
+			return furthest;
+		}
+		if (duration <= maxGap) {
+			return -1;
+		}
+		final int middleTime = startTime + duration / 2;
+		int middle = first + 1;
+		for (int i = first + 2; i < last; i++) {
+			if (Math.abs(profile.getTimeOffset(i) - middleTime) < Math.abs(profile.getTimeOffset(middle) - middleTime)) {
+				middle = i;
+			}
+		}
+		return middle;
+	}
+
+	/**
+	 * Decimate the profile of a dive. Everything else about the dive, including
+	 * its average and maximum depth, comes from the original.
+	 *
+	 * @param dive dive
+	 * @return a dive with the decimated profile, or the same dive if every
+	 *         sample is kept
+	 */
+	public Dive decimate(final Dive dive) {
+		final DiveProfile profile = decimate(dive.getProfile());
+		return profile == dive.getProfile() ? dive : new DecimatedDive(dive, profile);
+	}
+
+	/** Dive with a decimated profile, which forwards everything else. */
+	private static final class DecimatedDive extends ForwardingDive {
+
+		private final DiveProfile profile;
+
+		DecimatedDive(final Dive dive, final DiveProfile profile) {
+			super(dive);
+			this.profile = profile;
+		}
+
+		@Override
+		public DiveProfile getProfile() {
+			return profile;
+		}
+
+	}
+
+}
@@ -1,31 +1,49 @@
 package com.github.nradov.sdetofit;
 
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipException;
 
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.xml.sax.SAXException;
-
-import com.garmin.fit.ActivityMesg;
-import com.garmin.fit.DeviceIndex;
-import com.garmin.fit.DeviceInfoMesg;
-import com.garmin.fit.DiveSummaryMesg;
-import com.garmin.fit.Event;
-import com.garmin.fit.EventMesg;
-import com.garmin.fit.EventType;
-import com.garmin.fit.File;
-import com.garmin.fit.FileEncoder;
-import com.garmin.fit.FileIdMesg;
-import com.garmin.fit.Fit;
-import com.garmin.fit.LapMesg;
-import com.garmin.fit.Manufacturer;
-import com.garmin.fit.SessionMesg;
-import com.garmin.fit.Sport;
-import com.garmin.fit.SubSport;
+import javax.xml.stream.XMLStreamException;
+
+import com.garmin.fit.DateTime;
+import com.github.nradov.sdetofit.catalog.DiveCatalog;
+import com.github.nradov.sdetofit.catalog.DiveCatalogWriter;
+import com.github.nradov.sdetofit.export.DiveJson;
+import com.github.nradov.sdetofit.export.ProfileCsv;
+import com.github.nradov.sdetofit.fit.DirectFitEncoder;
+import com.github.nradov.sdetofit.fit.DiveEncoder;
+import com.github.nradov.sdetofit.fit.SdkFitEncoder;
 
 /**
  * Main class for converting Suunto Dive Export (.sde) files to Garmin Flexible
@@ -36,10 +54,10 @@ import com.garmin.fit.SubSport;
  */
 public final class SdeToFit {
 
-	/** This number is taken from {@code Profile.xlsx}. */
-	private static final int MESG_NUM_SESSION = 18;
+	/** Dive log files, which are merged if there is more than one. */
+	private final List<Path> inputs;
 
-	private final Path input, output;
+	private final Path output;
 
 	/**
 	 * Offset between the FIT Epoch and Unix Epoch.
@@ -49,8 +67,94 @@ public final class SdeToFit {
 	 */
 	public static final long OFFSET_MS = 631065600000L;
 
+	/** Ways of encoding the FIT output files. */
+	public enum Encoder {
+
+		/** Garmin FIT SDK {@link SdkFitEncoder}. */
+		SDK,
+
+		/** Built-in {@link DirectFitEncoder}, which avoids the per-message overhead. */
+		DIRECT,
+
+		/**
+		 * Built-in {@link DirectFitEncoder} in compact mode, which writes smaller
+		 * files by using compressed timestamp headers for records and leaving out
+		 * unchanged temperatures.
+		 */
+		COMPACT
+	}
+
+	private Encoder encoder = Encoder.SDK;
+
+	/** Files written for each dive. */
+	public enum Format {
+
+		/** FIT activity file, which can be imported into Garmin Connect. */
+		FIT,
+
+		/** Profile samples as comma separated values, see {@link ProfileCsv}. */
+		CSV,
+
+		/** JSON summary of the dive, see {@link DiveJson}. */
+		JSON
+	}
+
+	private Set<Format> formats = EnumSet.of(Format.FIT);
+
+	private ProfileDecimator decimator;
+
+	/**
+	 * Encoders aren't thread safe, so each encoding thread gets its own. They are
+	 * shared by every converter, so that converting many files in one JVM reuses
+	 * encoders which are already warmed up.
+	 */
+	private static final Map<Encoder, ThreadLocal<DiveEncoder>> DIVE_ENCODERS = new EnumMap<>(Encoder.class);
+
+	static {
+		for (final Encoder encoder : Encoder.values()) {
+			DIVE_ENCODERS.put(encoder, ThreadLocal.withInitial(() -> newDiveEncoder(encoder)));
+		}
+	}
+
+	/** Default number of threads reading and encoding dives. */
+	private static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+	/** Default number of threads writing FIT files. */
+	private static final int DEFAULT_WRITE_THREADS = 2;
+
+	/** Default maximum number of dives waiting for each stage. */
+	private static final int DEFAULT_QUEUE_DEPTH = 16;
+
+	private int readThreads = DEFAULT_THREADS, encodeThreads = DEFAULT_THREADS,
+			writeThreads = DEFAULT_WRITE_THREADS, queueDepth = DEFAULT_QUEUE_DEPTH;
+
+	private boolean incremental;
+
+	private DiveFilter filter = DiveFilter.ALL;
+
+	private boolean quiet;
+
+	private Path metricsFile;
+
+	private volatile ConversionMetrics metrics;
+
 	public SdeToFit(final Path input, final Path output) {
-		this.input = input;
+		this(List.of(input), output);
+	}
+
+	/**
+	 * Create a converter which merges several dive log files into one timeline,
+	 * converting each dive they have in common only once.
+	 *
+	 * @param inputs dive log files
+	 * @param output output directory or file
+	 * @see MergedDivesSource
+	 */
+	public SdeToFit(final List<Path> inputs, final Path output) {
+		if (inputs.isEmpty()) {
+			throw new IllegalArgumentException("no inputs");
+		}
+		this.inputs = List.copyOf(inputs);
 		this.output = output;
 	}
 
@@ -58,21 +162,755 @@ public final class SdeToFit {
 		this(Paths.get(input), Paths.get(output));
 	}
 
+	/**
+	 * Select how the FIT files are encoded. The default is {@link Encoder#SDK}.
+	 *
+	 * @param encoder FIT encoder
+	 */
+	public void setEncoder(final Encoder encoder) {
+		this.encoder = Objects.requireNonNull(encoder);
+	}
+
+	/**
+	 * Select the files written for each dive. Each dive is parsed once and all of
+	 * its files are written to the same output, named after the start time of
+	 * the dive with the extension of each format. The default is only
+	 * {@link Format#FIT}.
+	 *
+	 * @param formats one or more formats
+	 */
+	public void setFormats(final Set<Format> formats) {
+		if (formats.isEmpty()) {
+			throw new IllegalArgumentException("no output formats");
+		}
+		this.formats = EnumSet.copyOf(formats);
+	}
+
+	/**
+	 * Remove samples which add nothing to the shape of each dive profile before
+	 * it is encoded. The number of samples removed is reported for each dive.
+	 * The default is {@code null}, which keeps every sample.
+	 *
+	 * @param decimator decimator, or {@code null}
+	 */
+	public void setDecimator(final ProfileDecimator decimator) {
+		this.decimator = decimator;
+	}
+
+	/**
+	 * Set the number of threads inflating and parsing dive logs. The default is
+	 * the number of available processors.
+	 *
+	 * @param readThreads number of threads
+	 */
+	public void setReadThreads(final int readThreads) {
+		this.readThreads = readThreads;
+	}
+
+	/**
+	 * Set the number of threads encoding FIT files. The default is the number of
+	 * available processors.
+	 *
+	 * @param encodeThreads number of threads
+	 */
+	public void setEncodeThreads(final int encodeThreads) {
+		this.encodeThreads = encodeThreads;
+	}
+
+	/**
+	 * Set the number of threads writing FIT files. The default is 2.
+	 *
+	 * @param writeThreads number of threads
+	 */
+	public void setWriteThreads(final int writeThreads) {
+		this.writeThreads = writeThreads;
+	}
+
+	/**
+	 * Set the maximum number of dives waiting for each conversion stage. When a
+	 * stage falls behind, the stage before it waits until there is room. The
+	 * default is 16.
+	 *
+	 * @param queueDepth maximum number of waiting dives per stage
+	 */
+	public void setQueueDepth(final int queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	/**
+	 * Only convert dive logs which weren't already converted into the output
+	 * directory by an earlier run. The dive logs converted so far are kept in a
+	 * manifest file in the output directory, which is updated as each FIT file is
+	 * written, so an interrupted run can be resumed by running it again. Dive logs
+	 * are skipped without being inflated or parsed if their checksum and size
+	 * match an entry in the manifest and its FIT file still exists. Only
+	 * {@code .sde} files provide checksums, so other dive log files are always
+	 * converted. The default is {@code false}.
+	 *
+	 * @param incremental {@code true} to skip dive logs which were already
+	 *                    converted
+	 */
+	public void setIncremental(final boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * Only convert the dives accepted by a filter. Dives which don't match are
+	 * skipped after reading just their headers, without parsing their samples.
+	 * The default is {@link DiveFilter#ALL}.
+	 *
+	 * @param filter selects the dives to convert
+	 */
+	public void setFilter(final DiveFilter filter) {
+		this.filter = Objects.requireNonNull(filter);
+	}
+
+	/**
+	 * Don't print a line per dive or the summary at the end of the run. Lines are
+	 * printed by a background thread, so even when they are printed the
+	 * conversion never waits for the console. The default is {@code false}.
+	 *
+	 * @param quiet {@code true} to print nothing but errors
+	 */
+	public void setQuiet(final boolean quiet) {
+		this.quiet = quiet;
+	}
+
+	/**
+	 * Write the metrics of each run to a JSON file, replacing the file if it
+	 * exists. The default is {@code null}, which doesn't write the metrics.
+	 *
+	 * @param metricsFile JSON output file, or {@code null}
+	 * @see ConversionMetrics#toJson()
+	 */
+	public void setMetricsFile(final Path metricsFile) {
+		this.metricsFile = metricsFile;
+	}
+
+	/**
+	 * Get the metrics of the latest run.
+	 *
+	 * @return metrics, or {@code null} if nothing has been converted yet
+	 */
+	public ConversionMetrics getMetrics() {
+		return metrics;
+	}
+
+	/** Command line option for selecting the FIT encoder. */
+	private static final String ENCODER_OPTION = "encoder";
+
+	/** Command line option for selecting the files written for each dive. */
+	private static final String FORMATS_OPTION = "formats";
+
+	/** Command line option for decimating dive profiles. */
+	private static final String DECIMATE_OPTION = "decimate";
+
+	/** Command line options for tuning the conversion stages. */
+	private static final String READ_THREADS_OPTION = "read-threads", ENCODE_THREADS_OPTION = "encode-threads",
+			WRITE_THREADS_OPTION = "write-threads", QUEUE_DEPTH_OPTION = "queue-depth";
+
+	/** Command line option for skipping dive logs converted by an earlier run. */
+	private static final String INCREMENTAL_OPTION = "incremental";
+
+	/** Command line options for selecting dives by their headers. */
+	private static final String FROM_OPTION = "from", TO_OPTION = "to", DIVES_OPTION = "dives",
+			SERIAL_OPTION = "serial";
+
+	/** Command line options for the console output and metrics. */
+	private static final String QUIET_OPTION = "quiet", METRICS_OPTION = "metrics";
+
+	/** Command line option for the number of threads converting a batch of files. */
+	private static final String THREADS_OPTION = "threads";
+
+	/** Command line option for watching directories for new dive logs. */
+	private static final String WATCH_OPTION = "watch";
+
+	/** Command line option for running an HTTP server on a port. */
+	private static final String SERVE_OPTION = "serve";
+
+	/** Command line option for merging several dive log files into one timeline. */
+	private static final String MERGE_OPTION = "merge";
+
+	/** Command line option for listing the dives instead of converting them. */
+	private static final String LIST_OPTION = "list";
+
+	/** Command line options for reporting statistics instead of converting. */
+	private static final String REPORT_OPTION = "report", MAX_ASCENT_RATE_OPTION = "max-ascent-rate";
+
+	/** Options for converting from standard input or to standard output. */
+	private static final String FORMAT_OPTION = "format", ARCHIVE_OPTION = "archive";
+
+	/** Input or output argument for the standard input or output stream. */
+	private static final String STANDARD_STREAM = "-";
+
+	private static final String FILTER_USAGE = "[--" + FROM_OPTION + "=yyyy-mm-dd] [--" + TO_OPTION
+			+ "=yyyy-mm-dd] [--" + DIVES_OPTION + "=first[-last]] [--" + SERIAL_OPTION + "=n]";
+
+	private static final String OUTPUT_USAGE = "[--" + FORMATS_OPTION + "=fit,csv,json] [--" + DECIMATE_OPTION
+			+ "=meters[,seconds]]";
+
+	private static final String USAGE = "Usage: [--" + ENCODER_OPTION + "=sdk|direct|compact] " + OUTPUT_USAGE
+			+ " [--" + READ_THREADS_OPTION + "=n] [--" + ENCODE_THREADS_OPTION + "=n] [--" + WRITE_THREADS_OPTION
+			+ "=n] [--" + QUEUE_DEPTH_OPTION + "=n] [--" + INCREMENTAL_OPTION + "] [--" + QUIET_OPTION
+			+ "] [--" + METRICS_OPTION + "=file.json] " + FILTER_USAGE + " input output\n       [--"
+			+ ENCODER_OPTION + "=sdk|direct|compact] " + OUTPUT_USAGE + " [--" + THREADS_OPTION + "=n] [--"
+			+ INCREMENTAL_OPTION + "] [--" + QUIET_OPTION + "] [--" + METRICS_OPTION + "=file.json] "
+			+ FILTER_USAGE + " input|directory|glob... output\n       --" + MERGE_OPTION + " [--" + ENCODER_OPTION
+			+ "=sdk|direct|compact] " + OUTPUT_USAGE + " [--" + QUIET_OPTION + "] [--" + METRICS_OPTION
+			+ "=file.json] " + FILTER_USAGE + " input|directory|glob... output\n       --" + WATCH_OPTION + " [--" + ENCODER_OPTION
+			+ "=sdk|direct|compact] " + OUTPUT_USAGE + " [--" + THREADS_OPTION + "=n] [--" + QUIET_OPTION + "] "
+			+ FILTER_USAGE + " directory... output\n       --" + SERVE_OPTION + "=port [--" + ENCODER_OPTION
+			+ "=sdk|direct|compact] [--" + THREADS_OPTION + "=n] [--" + QUIET_OPTION + "]\n       [--"
+			+ ENCODER_OPTION + "=sdk|direct|compact] [--" + FORMAT_OPTION + "=sde|xml|sml] [--" + ARCHIVE_OPTION
+			+ "=zip|tar] [--" + QUIET_OPTION + "] [--" + METRICS_OPTION + "=file.json] " + FILTER_USAGE
+			+ " input|- output|-\n       --" + LIST_OPTION + " " + FILTER_USAGE + " input\n       --" + REPORT_OPTION
+			+ "=csv|json [--" + MAX_ASCENT_RATE_OPTION + "=m/min] [--" + THREADS_OPTION + "=n] [--" + QUIET_OPTION
+			+ "] " + FILTER_USAGE + " input|directory|glob...";
+
 	public static void main(final String[] args)
-			throws ZipException, IOException, ParserConfigurationException, SAXException {
-		if (args.length != 2) {
-			throw new IllegalArgumentException("Usage: input output");
+			throws ZipException, IOException, XMLStreamException {
+		final Map<String, String> options = new HashMap<>();
+		final List<String> arguments = new ArrayList<>();
+		for (final String arg : args) {
+			if (arg.startsWith("--")) {
+				final int equals = arg.indexOf('=');
+				if (equals < 0) {
+					options.put(arg.substring(2), "");
+				} else {
+					options.put(arg.substring(2, equals), arg.substring(equals + 1));
+				}
+			} else {
+				arguments.add(arg);
+			}
+		}
+		final var serveOption = options.remove(SERVE_OPTION);
+		if (serveOption != null) {
+			if (!arguments.isEmpty()) {
+				throw new IllegalArgumentException(USAGE);
+			}
+			serve(Integer.parseInt(serveOption), options);
+			return;
+		}
+		final var reportOption = options.remove(REPORT_OPTION);
+		if (reportOption != null) {
+			if (arguments.isEmpty()) {
+				throw new IllegalArgumentException(USAGE);
+			}
+			report(arguments, DiveLogReporter.Format.valueOf(reportOption.toUpperCase(Locale.US)),
+					parseFilter(options), options);
+			return;
+		}
+		final boolean list = options.remove(LIST_OPTION) != null;
+		if (list ? arguments.size() != 1 : arguments.size() < 2) {
+			throw new IllegalArgumentException(USAGE);
+		}
+		final DiveFilter filter = parseFilter(options);
+		if (list) {
+			if (!options.isEmpty()) {
+				throw new IllegalArgumentException("unrecognized options " + options.keySet() + "\n" + USAGE);
+			}
+			list(Paths.get(arguments.get(0)), filter, System.out);
+			return;
+		}
+		if (options.remove(WATCH_OPTION) != null) {
+			watch(arguments.subList(0, arguments.size() - 1).stream().map(Paths::get).collect(Collectors.toList()),
+					Paths.get(arguments.get(arguments.size() - 1)), filter, options);
+			return;
+		}
+		if (arguments.size() == 2
+				&& (STANDARD_STREAM.equals(arguments.get(0)) || STANDARD_STREAM.equals(arguments.get(1)))) {
+			convertStream(arguments.get(0), arguments.get(1), filter, options);
+			return;
+		}
+		final boolean merge = options.remove(MERGE_OPTION) != null;
+		if (!merge && (arguments.size() > 2 || BatchConverter.isBatchInput(arguments.get(0)))) {
+			convertBatch(arguments.subList(0, arguments.size() - 1), Paths.get(arguments.get(arguments.size() - 1)),
+					filter, options);
+			return;
+		}
+
+		final var converter = merge
+				? new SdeToFit(new ArrayList<>(BatchConverter.findFiles(arguments.subList(0, arguments.size() - 1))
+						.keySet()), Paths.get(arguments.get(arguments.size() - 1)))
+				: new SdeToFit(arguments.get(0), arguments.get(1));
+		final var encoderOption = options.remove(ENCODER_OPTION);
+		if (encoderOption != null) {
+			converter.setEncoder(Encoder.valueOf(encoderOption.toUpperCase(Locale.US)));
+		}
+		final var formatsOption = options.remove(FORMATS_OPTION);
+		if (formatsOption != null) {
+			converter.setFormats(parseFormats(formatsOption));
+		}
+		final var decimateOption = options.remove(DECIMATE_OPTION);
+		if (decimateOption != null) {
+			converter.setDecimator(parseDecimator(decimateOption));
+		}
+		final var readThreadsOption = options.remove(READ_THREADS_OPTION);
+		if (readThreadsOption != null) {
+			converter.setReadThreads(Integer.parseInt(readThreadsOption));
+		}
+		final var encodeThreadsOption = options.remove(ENCODE_THREADS_OPTION);
+		if (encodeThreadsOption != null) {
+			converter.setEncodeThreads(Integer.parseInt(encodeThreadsOption));
 		}
+		final var writeThreadsOption = options.remove(WRITE_THREADS_OPTION);
+		if (writeThreadsOption != null) {
+			converter.setWriteThreads(Integer.parseInt(writeThreadsOption));
+		}
+		final var queueDepthOption = options.remove(QUEUE_DEPTH_OPTION);
+		if (queueDepthOption != null) {
+			converter.setQueueDepth(Integer.parseInt(queueDepthOption));
+		}
+		if (options.remove(INCREMENTAL_OPTION) != null) {
+			converter.setIncremental(true);
+		}
+		if (options.remove(QUIET_OPTION) != null) {
+			converter.setQuiet(true);
+		}
+		final var metricsOption = options.remove(METRICS_OPTION);
+		if (metricsOption != null) {
+			converter.setMetricsFile(Paths.get(metricsOption));
+		}
+		converter.setFilter(filter);
+		if (!options.isEmpty()) {
+			throw new IllegalArgumentException("unrecognized options " + options.keySet() + "\n" + USAGE);
+		}
+		converter.convert();
+	}
 
-		final var converter = new SdeToFit(args[0], args[1]);
+	private static void convertBatch(final List<String> inputs, final Path output, final DiveFilter filter,
+			final Map<String, String> options) throws IOException {
+		final var converter = new BatchConverter(inputs, output);
+		final var encoderOption = options.remove(ENCODER_OPTION);
+		if (encoderOption != null) {
+			converter.setEncoder(Encoder.valueOf(encoderOption.toUpperCase(Locale.US)));
+		}
+		final var formatsOption = options.remove(FORMATS_OPTION);
+		if (formatsOption != null) {
+			converter.setFormats(parseFormats(formatsOption));
+		}
+		final var decimateOption = options.remove(DECIMATE_OPTION);
+		if (decimateOption != null) {
+			converter.setDecimator(parseDecimator(decimateOption));
+		}
+		final var threadsOption = options.remove(THREADS_OPTION);
+		if (threadsOption != null) {
+			converter.setThreads(Integer.parseInt(threadsOption));
+		}
+		if (options.remove(INCREMENTAL_OPTION) != null) {
+			converter.setIncremental(true);
+		}
+		if (options.remove(QUIET_OPTION) != null) {
+			converter.setQuiet(true);
+		}
+		final var metricsOption = options.remove(METRICS_OPTION);
+		if (metricsOption != null) {
+			converter.setMetricsFile(Paths.get(metricsOption));
+		}
+		converter.setFilter(filter);
+		if (!options.isEmpty()) {
+			throw new IllegalArgumentException(
+					"unrecognized options for a batch " + options.keySet() + "\n" + USAGE);
+		}
 		converter.convert();
 	}
 
-	public void convert() throws ZipException, IOException, ParserConfigurationException, SAXException {
-		final DivesSource divesSource = DivesSourceFactory.create(input);
-		for (final Dive dive : divesSource.getDives()) {
-			createDiveFitFile(dive);
+	private static void convertStream(final String input, final String output, final DiveFilter filter,
+			final Map<String, String> options) throws IOException, XMLStreamException {
+		try (final InputStream in = STANDARD_STREAM.equals(input) ? System.in : Files.newInputStream(Paths.get(input));
+				final OutputStream out = new BufferedOutputStream(STANDARD_STREAM.equals(output)
+						? new FileOutputStream(FileDescriptor.out)
+						: Files.newOutputStream(Paths.get(output)))) {
+			final var converter = new StreamConverter(in, out);
+			final var encoderOption = options.remove(ENCODER_OPTION);
+			if (encoderOption != null) {
+				converter.setEncoder(Encoder.valueOf(encoderOption.toUpperCase(Locale.US)));
+			}
+			converter.setFormat(options.remove(FORMAT_OPTION));
+			final var archiveOption = options.remove(ARCHIVE_OPTION);
+			if (archiveOption != null) {
+				converter.setArchive(StreamConverter.Archive.valueOf(archiveOption.toUpperCase(Locale.US)));
+			}
+			if (options.remove(QUIET_OPTION) != null) {
+				converter.setQuiet(true);
+			}
+			final var metricsOption = options.remove(METRICS_OPTION);
+			if (metricsOption != null) {
+				converter.setMetricsFile(Paths.get(metricsOption));
+			}
+			converter.setFilter(filter);
+			if (!options.isEmpty()) {
+				throw new IllegalArgumentException(
+						"unrecognized options for streaming " + options.keySet() + "\n" + USAGE);
+			}
+			converter.convert();
+		}
+	}
+
+	private static void watch(final List<Path> inputs, final Path output, final DiveFilter filter,
+			final Map<String, String> options) throws IOException {
+		for (final Path input : inputs) {
+			if (!Files.isDirectory(input)) {
+				throw new IllegalArgumentException("not a directory: \"" + input + "\"\n" + USAGE);
+			}
+		}
+		final var watcher = new FolderWatcher(inputs, output);
+		final var encoderOption = options.remove(ENCODER_OPTION);
+		if (encoderOption != null) {
+			watcher.setEncoder(Encoder.valueOf(encoderOption.toUpperCase(Locale.US)));
+		}
+		final var formatsOption = options.remove(FORMATS_OPTION);
+		if (formatsOption != null) {
+			watcher.setFormats(parseFormats(formatsOption));
+		}
+		final var decimateOption = options.remove(DECIMATE_OPTION);
+		if (decimateOption != null) {
+			watcher.setDecimator(parseDecimator(decimateOption));
+		}
+		final var threadsOption = options.remove(THREADS_OPTION);
+		if (threadsOption != null) {
+			watcher.setThreads(Integer.parseInt(threadsOption));
+		}
+		if (options.remove(QUIET_OPTION) != null) {
+			watcher.setQuiet(true);
+		}
+		watcher.setFilter(filter);
+		if (!options.isEmpty()) {
+			throw new IllegalArgumentException(
+					"unrecognized options for watching " + options.keySet() + "\n" + USAGE);
+		}
+		// Ctrl+C or a termination signal lets the conversions in progress finish
+		Runtime.getRuntime().addShutdownHook(new Thread(watcher::close, "sdetofit-shutdown"));
+		watcher.run();
+	}
+
+	private static void report(final List<String> inputs, final DiveLogReporter.Format format,
+			final DiveFilter filter, final Map<String, String> options) throws IOException {
+		final var reporter = new DiveLogReporter(inputs);
+		final var maxAscentRateOption = options.remove(MAX_ASCENT_RATE_OPTION);
+		if (maxAscentRateOption != null) {
+			reporter.setMaxAscentRate(Float.parseFloat(maxAscentRateOption));
+		}
+		final var threadsOption = options.remove(THREADS_OPTION);
+		if (threadsOption != null) {
+			reporter.setThreads(Integer.parseInt(threadsOption));
+		}
+		if (options.remove(QUIET_OPTION) != null) {
+			reporter.setQuiet(true);
+		}
+		reporter.setFilter(filter);
+		if (!options.isEmpty()) {
+			throw new IllegalArgumentException(
+					"unrecognized options for a report " + options.keySet() + "\n" + USAGE);
+		}
+		reporter.report(format, System.out);
+	}
+
+	private static void serve(final int port, final Map<String, String> options) throws IOException {
+		final var threadsOption = options.remove(THREADS_OPTION);
+		final int threads = threadsOption == null ? DEFAULT_THREADS : Integer.parseInt(threadsOption);
+		// only local tools can reach the server
+		final var server = new ConversionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+				threads);
+		final var encoderOption = options.remove(ENCODER_OPTION);
+		if (encoderOption != null) {
+			server.setEncoder(Encoder.valueOf(encoderOption.toUpperCase(Locale.US)));
+		}
+		if (options.remove(QUIET_OPTION) != null) {
+			server.setQuiet(true);
+		}
+		if (!options.isEmpty()) {
+			throw new IllegalArgumentException(
+					"unrecognized options for serving " + options.keySet() + "\n" + USAGE);
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(server::close, "sdetofit-shutdown"));
+		server.start();
+	}
+
+	/**
+	 * Parse the maximum depth error in meters, optionally followed by a comma and
+	 * the maximum time between samples in seconds.
+	 */
+	private static ProfileDecimator parseDecimator(final String option) {
+		final int comma = option.indexOf(',');
+		final float maxDepthError = Float.parseFloat(comma < 0 ? option : option.substring(0, comma));
+		final int maxGap = comma < 0 ? ProfileDecimator.DEFAULT_MAX_GAP : Integer.parseInt(option.substring(comma + 1));
+		return new ProfileDecimator(maxDepthError, maxGap);
+	}
+
+	/** Parse a comma separated list of output formats. */
+	private static Set<Format> parseFormats(final String option) {
+		final Set<Format> formats = EnumSet.noneOf(Format.class);
+		for (final String format : option.split(",")) {
+			formats.add(Format.valueOf(format.trim().toUpperCase(Locale.US)));
+		}
+		return formats;
+	}
+
+	/**
+	 * Remove the filter options from the command line options. Dates are in the
+	 * local time zone and both ends of each range are inclusive.
+	 */
+	private static DiveFilter parseFilter(final Map<String, String> options) {
+		DiveFilter filter = DiveFilter.ALL;
+		final var fromOption = options.remove(FROM_OPTION);
+		final var toOption = options.remove(TO_OPTION);
+		if (fromOption != null || toOption != null) {
+			filter = filter.withStartTime(fromOption == null ? null : startOfDay(LocalDate.parse(fromOption)),
+					toOption == null ? null : startOfDay(LocalDate.parse(toOption).plusDays(1)));
+		}
+		final var divesOption = options.remove(DIVES_OPTION);
+		if (divesOption != null) {
+			final int dash = divesOption.indexOf('-');
+			final long first = Long.parseLong(dash < 0 ? divesOption : divesOption.substring(0, dash));
+			final long last = dash < 0 ? first : Long.parseLong(divesOption.substring(dash + 1));
+			filter = filter.withDiveNumbers(first, last);
+		}
+		final var serialOption = options.remove(SERIAL_OPTION);
+		if (serialOption != null) {
+			filter = filter.withSerialNumber(Long.parseLong(serialOption));
+		}
+		return filter;
+	}
+
+	private static DateTime startOfDay(final LocalDate date) {
+		return new DateTime(Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+	}
+
+	/**
+	 * Print the dives in a dive log file in chronological order, one line of tab
+	 * separated values per dive. Only the header of each dive is read.
+	 *
+	 * @param input  dive log file
+	 * @param filter selects the dives to list
+	 * @param out    where to print the list
+	 * @throws ZipException       if an error occurs while reading a compressed
+	 *                            dive log file
+	 * @throws IOException        if an error occurs while reading a dive log file
+	 * @throws XMLStreamException if an error occurs while reading an XML dive log
+	 *                            file
+	 */
+	public static void list(final Path input, final DiveFilter filter, final PrintStream out)
+			throws ZipException, IOException, XMLStreamException {
+		final var sdf = new SimpleDateFormat(LIST_PATTERN);
+		try (final DivesSource divesSource = DivesSourceFactory.create(input)) {
+			out.println("Dive\tStart\tDevice\tSerial\tMax depth (m)\tDuration");
+			divesSource.headers(true).filter(filter)
+					.forEach(header -> out.println(String.format(Locale.US, "%d\t%s\t%s\t%d\t%.1f\t%d:%02d",
+							header.getDiveNumber(), sdf.format(header.getStartTime().getDate()),
+							header.getProductName(), header.getSerialNumber(), header.getMaxDepth(),
+							header.getDuration() / 60, header.getDuration() % 60)));
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/** Listing date and time format pattern. */
+	private static final String LIST_PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+	/**
+	 * Convert every dive in the input file. Reading, encoding and writing run
+	 * concurrently in separate stages linked by bounded queues, so the number of
+	 * dives in memory doesn't grow with the size of the input file. If the output
+	 * file name ends with {@value DiveCatalog#FILE_EXTENSION} the dives are
+	 * written to a new {@link DiveCatalog} instead of to FIT files. Metrics for
+	 * the run are available from {@link #getMetrics()} afterwards.
+	 *
+	 * @throws ZipException       if an error occurs while reading a compressed
+	 *                            dive log file
+	 * @throws IOException        if an error occurs while reading a dive log file
+	 *                            or writing a FIT file
+	 * @throws XMLStreamException if an error occurs while reading an XML dive log
+	 *                            file
+	 */
+	public void convert() throws ZipException, IOException, XMLStreamException {
+		final var runMetrics = new ConversionMetrics();
+		metrics = runMetrics;
+		try (final ConsoleLog console = quiet ? ConsoleLog.DISCARD : new ConsoleLog(System.out)) {
+			final String lowerCaseOutput = output.toString().toLowerCase(Locale.US);
+			if (lowerCaseOutput.endsWith(DiveCatalog.FILE_EXTENSION)) {
+				writeCatalog(runMetrics, console);
+			} else if (lowerCaseOutput.endsWith(ZipSink.FILE_EXTENSION)) {
+				writeBundle(runMetrics, console);
+			} else {
+				try (final FitSink sink = new DirectorySink(output)) {
+					writeFitFiles(sink, runMetrics, console);
+				}
+			}
+		}
+		runMetrics.finish();
+		if (!quiet) {
+			runMetrics.printSummary(System.out);
+		}
+		if (metricsFile != null) {
+			Files.writeString(metricsFile, runMetrics.toJson() + System.lineSeparator());
+		}
+	}
+
+	/**
+	 * Write every FIT file into one Zip file. It is written under a temporary
+	 * name and renamed once complete, so an interrupted run never leaves a
+	 * bundle which looks complete.
+	 */
+	private void writeBundle(final ConversionMetrics runMetrics, final ConsoleLog console)
+			throws ZipException, IOException, XMLStreamException {
+		if (incremental) {
+			throw new IllegalStateException("incremental conversion needs an output directory");
+		}
+		final Path temporaryFile = DirectorySink.temporaryFile(output.toAbsolutePath());
+		Files.createDirectories(temporaryFile.getParent());
+		try {
+			try (final FitSink sink = new ZipSink(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+				writeFitFiles(sink, runMetrics, console);
+			}
+			DirectorySink.publish(temporaryFile, output);
+		} finally {
+			Files.deleteIfExists(temporaryFile);
+		}
+	}
+
+	private void writeFitFiles(final FitSink sink, final ConversionMetrics runMetrics, final ConsoleLog console)
+			throws ZipException, IOException, XMLStreamException {
+		try (final DivesSource divesSource = openSource(DEFAULT_THREADS);
+				final ConversionManifest manifest = incremental ? ConversionManifest.open(output) : null) {
+			divesSource.setMetrics(runMetrics);
+			final var names = new UniqueNames();
+			final var pipeline = new ConversionPipeline<ReadDive, EncodedDive>(readThreads, encodeThreads,
+					writeThreads, queueDepth, readDive -> encode(decimate(readDive, runMetrics, console), runMetrics),
+					encodedDive -> write(encodedDive, sink, names, manifest, runMetrics, console));
+			pipeline.run(select(divesSource, manifest, runMetrics, console)
+					.map(reader -> () -> read(reader, canTranscode(), runMetrics, console)));
+		}
+	}
+
+	/**
+	 * Convert every dive in the input file as a separate task in the fork/join
+	 * pool running the caller, instead of in a pipeline of its own. This lets a
+	 * batch of input files share one pool, where idle threads take dives from
+	 * the files which have the most left. Must be called from a task in the pool.
+	 *
+	 * @param runMetrics metrics for the batch
+	 * @param console    progress output for the batch
+	 */
+	void convertInPool(final ConversionMetrics runMetrics, final ConsoleLog console)
+			throws ZipException, IOException, XMLStreamException {
+		try (final DivesSource divesSource = openSource(1);
+				final FitSink sink = new DirectorySink(output);
+				final ConversionManifest manifest = incremental ? ConversionManifest.open(output) : null) {
+			divesSource.setMetrics(runMetrics);
+			final var names = new UniqueNames();
+			final List<RecursiveAction> tasks = select(divesSource, manifest, runMetrics, console)
+					.map(reader -> new RecursiveAction() {
+
+						private static final long serialVersionUID = 1L;
+
+						@Override
+						protected void compute() {
+							try {
+								final ReadDive readDive = decimate(read(reader, canTranscode(), runMetrics, console), runMetrics,
+										console);
+								write(encode(readDive, runMetrics), sink, names, manifest, runMetrics, console);
+							} catch (final IOException e) {
+								throw new UncheckedIOException(e);
+							}
+						}
+
+					}).collect(Collectors.toList());
+			ForkJoinTask.invokeAll(tasks);
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Open the input file, or merge the input files if there is more than one.
+	 *
+	 * @param parallelism maximum number of dive logs to parse at the same time
+	 *                    in each file
+	 */
+	private DivesSource openSource(final int parallelism) throws ZipException, IOException, XMLStreamException {
+		return inputs.size() == 1 ? DivesSourceFactory.create(inputs.get(0), parallelism)
+				: new MergedDivesSource(inputs, parallelism);
+	}
+
+	/**
+	 * Get the dives to convert, leaving out dive logs which were already
+	 * converted and dives which don't match the filter.
+	 */
+	private Stream<DiveReader> select(final DivesSource divesSource, final ConversionManifest manifest,
+			final ConversionMetrics runMetrics, final ConsoleLog console) {
+		// every dive gets its own file so there is no need to keep them in order
+		Stream<DiveReader> readers = divesSource.readers(false).peek(reader -> runMetrics.addEntry());
+		if (manifest != null) {
+			readers = readers.filter(reader -> {
+				if (manifest.isConverted(reader)) {
+					console.log("Skipping unchanged dive log: \"" + reader.getName() + "\"");
+					runMetrics.addSkipped();
+					return false;
+				}
+				return true;
+			});
+		}
+		return select(readers, runMetrics);
+	}
+
+	/**
+	 * Parse every dive in the input file and write them all to a catalog.
+	 */
+	private void writeCatalog(final ConversionMetrics runMetrics, final ConsoleLog console)
+			throws ZipException, IOException, XMLStreamException {
+		if (incremental) {
+			throw new IllegalStateException("incremental conversion needs an output directory");
+		}
+		try (final DivesSource divesSource = openSource(DEFAULT_THREADS);
+				final DiveCatalogWriter catalog = new DiveCatalogWriter(output)) {
+			divesSource.setMetrics(runMetrics);
+			final var pipeline = new ConversionPipeline<ReadDive, EncodedDive>(readThreads, encodeThreads,
+					writeThreads, queueDepth, readDive -> {
+						final var timer = runMetrics.start(ConversionMetrics.Stage.ENCODE, readDive.event.dive);
+						try {
+							final byte[] record = DiveCatalogWriter.encode(readDive.dive);
+							return new EncodedDive(readDive, new String[] { output.toString() },
+									new byte[][] { record }, record.length);
+						} finally {
+							timer.stop();
+						}
+					}, encodedDive -> {
+						final var timer = runMetrics.start(ConversionMetrics.Stage.WRITE, encodedDive.event.dive);
+						try {
+							catalog.add(encodedDive.data[0]);
+						} finally {
+							timer.stop();
+						}
+						completed(encodedDive, output.toString(), runMetrics);
+						return null;
+					});
+			final Stream<DiveReader> readers = divesSource.readers(false).peek(reader -> runMetrics.addEntry());
+			pipeline.run(select(readers, runMetrics).map(reader -> () -> read(reader, false, runMetrics, console)));
+			console.log("Wrote catalog \"" + output + "\": " + catalog.size() + " dives");
+		}
+	}
+
+	/**
+	 * Apply the filter to the dives, reading their headers only if there are
+	 * conditions to check. Dives which don't match are counted as skipped.
+	 */
+	private Stream<DiveReader> select(final Stream<DiveReader> readers, final ConversionMetrics runMetrics) {
+		if (filter.acceptsAll()) {
+			return readers;
 		}
+		return readers.filter(reader -> {
+			final boolean selected;
+			try {
+				selected = filter.test(reader.getHeader());
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (!selected) {
+				runMetrics.addSkipped();
+			}
+			return selected;
+		});
 	}
 
 	/**
@@ -84,84 +922,337 @@ public final class SdeToFit {
 	/** FIT output file name date and time format pattern. */
 	private static final String PATTERN = "yyyy-MM-dd-HH-mm-ss";
 
-	private void createDiveFitFile(final Dive dive) {
-		final var sdf = new SimpleDateFormat(PATTERN);
-		final var filename = output.toString() + java.io.File.separator + sdf.format(dive.getStartTime().getDate())
-				+ FIT_FILE_EXTENSION;
-		final var encode = new FileEncoder(new java.io.File(filename), Fit.ProtocolVersion.V2_0);
-
-		final var fileIdMesg = new FileIdMesg();
-		fileIdMesg.setType(File.ACTIVITY);
-		fileIdMesg.setManufacturer(Manufacturer.SUUNTO);
-		fileIdMesg.setTimeCreated(dive.getStartTime());
-		fileIdMesg.setSerialNumber(dive.getSerialNumber());
-		encode.write(fileIdMesg);
-
-		final var deviceInfoMesg = new DeviceInfoMesg();
-		deviceInfoMesg.setDeviceIndex(DeviceIndex.CREATOR);
-		deviceInfoMesg.setManufacturer(dive.getManufacturer());
-		deviceInfoMesg.setProductName(dive.getProductName()); // Max 20 Chars
-		deviceInfoMesg.setSerialNumber(dive.getSerialNumber());
-		deviceInfoMesg.setTimestamp(dive.getStartTime());
-		encode.write(deviceInfoMesg);
-
-		final var eventMesg = new EventMesg();
-		eventMesg.setTimestamp(dive.getStartTime());
-		eventMesg.setEvent(Event.TIMER);
-		eventMesg.setEventType(EventType.START);
-		encode.write(eventMesg);
-
-		dive.getRecords().forEach(e -> encode.write(e.toMesg()));
-
-		// Timer Events are a BEST PRACTICE for FIT ACTIVITY files
-		final var eventMesgStop = new EventMesg();
-		eventMesgStop.setTimestamp(dive.getEndTime());
-		eventMesgStop.setEvent(Event.TIMER);
-		eventMesgStop.setEventType(EventType.STOP_ALL);
-		encode.write(eventMesgStop);
-
-		// Every FIT ACTIVITY file MUST contain at least one Lap message
-		final var lapMesg = new LapMesg();
-		lapMesg.setMessageIndex(0);
-		lapMesg.setTimestamp(dive.getStartTime());
-		lapMesg.setStartTime(dive.getStartTime());
-		final var elapsedTime = (float) (dive.getEndTime().getTimestamp() - dive.getStartTime().getTimestamp());
-		lapMesg.setTotalElapsedTime(elapsedTime);
-		lapMesg.setTotalTimerTime(elapsedTime);
-		encode.write(lapMesg);
-
-		final var diveSummaryMesg1 = new DiveSummaryMesg();
-        diveSummaryMesg1.setSurfaceInterval(dive.getSurfaceTime());
-		diveSummaryMesg1.setTimestamp(dive.getStartTime());
-		diveSummaryMesg1.setAvgDepth(dive.getAvgDepth());
-		diveSummaryMesg1.setMaxDepth(dive.getMaxDepth());
-		diveSummaryMesg1.setDiveNumber(dive.getDiveNumber());
-		diveSummaryMesg1.setBottomTime(dive.getBottomTime());
-		diveSummaryMesg1.setReferenceMesg(MESG_NUM_SESSION);
-		diveSummaryMesg1.setReferenceIndex(0);
-		encode.write(diveSummaryMesg1);
-
-		// Every FIT ACTIVITY file MUST contain at least one Session message
-		final var sessionMesg = new SessionMesg();
-		sessionMesg.setMessageIndex(0);
-		sessionMesg.setTimestamp(dive.getStartTime());
-		sessionMesg.setStartTime(dive.getStartTime());
-		sessionMesg.setTotalElapsedTime(elapsedTime);
-		sessionMesg.setTotalTimerTime(elapsedTime);
-		sessionMesg.setSport(Sport.DIVING);
-		sessionMesg.setSubSport(SubSport.GAUGE_DIVING);
-		sessionMesg.setFirstLapIndex(0);
-		sessionMesg.setNumLaps(1);
-		encode.write(sessionMesg);
-
-		// Every FIT ACTIVITY file MUST contain EXACTLY one Activity message
-		final var activityMesg = new ActivityMesg();
-		activityMesg.setTimestamp(dive.getStartTime());
-		activityMesg.setNumSessions(1);
-		activityMesg.setTotalTimerTime(elapsedTime);
-		encode.write(activityMesg);
-
-		encode.close();
+	/**
+	 * Dive waiting to be encoded, along with the reader it came from. A dive
+	 * which was transcoded has already been encoded, and isn't read at all.
+	 */
+	private static final class ReadDive {
+
+		private final DiveReader source;
+
+		private final Dive dive;
+
+		private final TranscodedDive transcoded;
+
+		/** Event covering the whole conversion of the dive. */
+		private final DiveEvent event;
+
+		/** When reading the dive started, for the latency. */
+		private final long startNanos;
+
+		ReadDive(final DiveReader source, final Dive dive, final DiveEvent event, final long startNanos) {
+			this(source, dive, null, event, startNanos);
+		}
+
+		ReadDive(final DiveReader source, final Dive dive, final TranscodedDive transcoded, final DiveEvent event,
+				final long startNanos) {
+			this.source = source;
+			this.dive = dive;
+			this.transcoded = transcoded;
+			this.event = event;
+			this.startNanos = startNanos;
+		}
+
+	}
+
+	/**
+	 * File contents waiting to be written, one file per format. Only the sample
+	 * count is kept from the dive, so the dive itself can be garbage collected
+	 * once encoded.
+	 */
+	private static final class EncodedDive {
+
+		private final DiveReader source;
+
+		/** File names, in the same order as the contents. */
+		private final String[] names;
+
+		private final byte[][] data;
+
+		/** Size of the FIT file without compact mode. */
+		private final int standardSize;
+
+		/** Total size of the files. */
+		private final long bytes;
+
+		private final DiveEvent event;
+
+		private final long startNanos;
+
+		private final int samples;
+
+		/** Start time of the dive in milliseconds since the Unix Epoch. */
+		private final long startMillis;
+
+		EncodedDive(final ReadDive readDive, final String[] names, final byte[][] data, final int standardSize) {
+			this.source = readDive.source;
+			this.names = names;
+			this.data = data;
+			this.standardSize = standardSize;
+			long total = 0;
+			for (final byte[] file : data) {
+				total += file.length;
+			}
+			this.bytes = total;
+			this.event = readDive.event;
+			this.startNanos = readDive.startNanos;
+			if (readDive.transcoded == null) {
+				this.samples = readDive.dive.getProfile().size();
+				this.startMillis = readDive.dive.getStartTime().getDate().getTime();
+			} else {
+				this.samples = readDive.transcoded.getSamples();
+				this.startMillis = readDive.transcoded.getHeader().getStartTime().getDate().getTime();
+			}
+		}
+
+	}
+
+	private static DiveEncoder newDiveEncoder(final Encoder encoder) {
+		switch (encoder) {
+		case DIRECT:
+			return new DirectFitEncoder();
+		case COMPACT:
+			return new DirectFitEncoder(true);
+		default:
+			return new SdkFitEncoder();
+		}
+	}
+
+	/**
+	 * Check whether dives can be transcoded, which is only when nothing but the
+	 * FIT file is needed from each dive and the profile isn't changed before it
+	 * is encoded. The SDK encoder is left as the reference implementation and
+	 * always reads the whole dive.
+	 */
+	private boolean canTranscode() {
+		return encoder != Encoder.SDK && formats.equals(EnumSet.of(Format.FIT)) && decimator == null;
+	}
+
+	/**
+	 * Read a dive, starting the event and latency measurement which end once it
+	 * has been written.
+	 *
+	 * @param transcode {@code true} to encode the dive while it is parsed, if
+	 *                  its source supports it
+	 */
+	private ReadDive read(final DiveReader reader, final boolean transcode, final ConversionMetrics runMetrics,
+			final ConsoleLog console) throws IOException {
+		final String name;
+		if (reader.getName().isEmpty()) {
+			// single dive sources don't name their readers, and read the whole file
+			final Path input = inputs.get(0);
+			name = input.getFileName().toString();
+			runMetrics.addBytesRead(Files.size(input), Files.size(input));
+		} else {
+			name = reader.getName();
+			console.log("Converting dive log: \"" + name + "\"");
+		}
+		final var event = new DiveEvent();
+		event.dive = name;
+		event.begin();
+		final long startNanos = System.nanoTime();
+		final Dive dive;
+		final TranscodedDive transcoded;
+		final var timer = runMetrics.start(ConversionMetrics.Stage.READ, name);
+		try {
+			transcoded = transcode ? transcode(encoder, reader) : null;
+			dive = transcoded == null ? reader.call() : null;
+		} finally {
+			timer.stop();
+		}
+		return new ReadDive(reader, dive, transcoded, event, startNanos);
+	}
+
+	/**
+	 * Remove samples from the profile of a dive which has been read, if
+	 * decimation is enabled.
+	 */
+	private ReadDive decimate(final ReadDive readDive, final ConversionMetrics runMetrics, final ConsoleLog console) {
+		if (decimator == null) {
+			return readDive;
+		}
+		final Dive dive;
+		final var timer = runMetrics.start(ConversionMetrics.Stage.DECIMATE, readDive.event.dive);
+		try {
+			dive = decimator.decimate(readDive.dive);
+		} finally {
+			timer.stop();
+		}
+		final int before = readDive.dive.getProfile().size();
+		final int after = dive.getProfile().size();
+		runMetrics.addSamplesRemoved(before - after);
+		console.log(String.format(Locale.US, "Decimated \"%s\": %d samples to %d (%.1f%% fewer)",
+				fitFileName(dive), before, after, before == 0 ? 0.0 : 100.0 * (before - after) / before));
+		return new ReadDive(readDive.source, dive, readDive.event, readDive.startNanos);
+	}
+
+	private EncodedDive encode(final ReadDive readDive, final ConversionMetrics runMetrics) {
+		final TranscodedDive transcoded = readDive.transcoded;
+		if (transcoded != null) {
+			final String name = new SimpleDateFormat(PATTERN).format(transcoded.getHeader().getStartTime().getDate())
+					+ FIT_FILE_EXTENSION;
+			return new EncodedDive(readDive, new String[] { name }, new byte[][] { transcoded.getData() },
+					transcoded.getStandardSize());
+		}
+		final var timer = runMetrics.start(ConversionMetrics.Stage.ENCODE, readDive.event.dive);
+		try {
+			return encode(readDive);
+		} finally {
+			timer.stop();
+		}
+	}
+
+	private EncodedDive encode(final ReadDive readDive) {
+		final Dive dive = readDive.dive;
+		final String baseName = new SimpleDateFormat(PATTERN).format(dive.getStartTime().getDate());
+		final String[] names = new String[formats.size()];
+		final byte[][] data = new byte[formats.size()][];
+		int standardSize = 0;
+		int i = 0;
+		for (final Format format : formats) {
+			switch (format) {
+			case CSV:
+				names[i] = baseName + ProfileCsv.FILE_EXTENSION;
+				data[i] = ProfileCsv.encode(dive);
+				break;
+			case JSON:
+				names[i] = baseName + DiveJson.FILE_EXTENSION;
+				data[i] = DiveJson.encode(dive);
+				break;
+			default:
+				final DiveEncoder diveEncoder = DIVE_ENCODERS.get(encoder).get();
+				names[i] = baseName + FIT_FILE_EXTENSION;
+				data[i] = encode(diveEncoder, dive);
+				standardSize = diveEncoder.getStandardSize();
+			}
+			i++;
+		}
+		return new EncodedDive(readDive, names, data, standardSize);
+	}
+
+	/**
+	 * Encode a dive with the calling thread's encoder of a given type.
+	 *
+	 * @param encoder FIT encoder
+	 * @param dive    dive
+	 * @return FIT file contents
+	 */
+	static byte[] encode(final Encoder encoder, final Dive dive) {
+		return encode(DIVE_ENCODERS.get(encoder).get(), dive);
+	}
+
+	/**
+	 * Encode a dive while it is read, with the calling thread's encoder of a
+	 * given type.
+	 *
+	 * @param encoder FIT encoder, which mustn't be {@link Encoder#SDK}
+	 * @param reader  dive
+	 * @return encoded dive, or {@code null} if the dive has to be read first
+	 * @throws IOException if an error occurs while reading the dive
+	 * @see DiveReader#transcode(DirectFitEncoder)
+	 */
+	static TranscodedDive transcode(final Encoder encoder, final DiveReader reader) throws IOException {
+		return reader.transcode((DirectFitEncoder) DIVE_ENCODERS.get(encoder).get());
+	}
+
+	private static byte[] encode(final DiveEncoder diveEncoder, final Dive dive) {
+		final ByteBuffer encoded = diveEncoder.encode(dive);
+		// the encoder reuses its buffer for the next dive
+		final byte[] data = new byte[encoded.remaining()];
+		encoded.get(data);
+		return data;
+	}
+
+	/**
+	 * Get the name of the FIT file for a dive, which is its start time.
+	 *
+	 * @param dive dive
+	 * @return FIT file name
+	 */
+	static String fitFileName(final Dive dive) {
+		return new SimpleDateFormat(PATTERN).format(dive.getStartTime().getDate()) + FIT_FILE_EXTENSION;
+	}
+
+	/**
+	 * Get the name of the FIT file for a dive which started at a given time, as
+	 * shown in a given time zone.
+	 *
+	 * @param startTime start time of the dive
+	 * @param zone      time zone
+	 * @return FIT file name
+	 */
+	static String fitFileName(final DateTime startTime, final ZoneId zone) {
+		final var format = new SimpleDateFormat(PATTERN);
+		format.setTimeZone(TimeZone.getTimeZone(zone));
+		return format.format(startTime.getDate()) + FIT_FILE_EXTENSION;
+	}
+
+	private Void write(final EncodedDive encodedDive, final FitSink sink, final UniqueNames names,
+			final ConversionManifest manifest, final ConversionMetrics runMetrics, final ConsoleLog console)
+			throws IOException {
+		final String location;
+		final var timer = runMetrics.start(ConversionMetrics.Stage.WRITE, encodedDive.event.dive);
+		try {
+			location = write(encodedDive, sink, names, manifest, console);
+		} finally {
+			timer.stop();
+		}
+		completed(encodedDive, location, runMetrics);
+		return null;
+	}
+
+	private String write(final EncodedDive encodedDive, final FitSink sink, final UniqueNames names,
+			final ConversionManifest manifest, final ConsoleLog console) throws IOException {
+		final String[] fileNames = claimNames(encodedDive.names, names);
+		// the first file is the FIT file if there is one
+		final String location = sink.write(fileNames[0], encodedDive.data[0], encodedDive.startMillis);
+		for (int i = 1; i < fileNames.length; i++) {
+			sink.write(fileNames[i], encodedDive.data[i], encodedDive.startMillis);
+		}
+		if (encoder == Encoder.COMPACT && formats.contains(Format.FIT)) {
+			final int size = encodedDive.data[0].length;
+			final int standardSize = encodedDive.standardSize;
+			console.log(String.format(Locale.US, "Wrote \"%s\": %d bytes instead of %d (%.1f%% smaller)",
+					location, size, standardSize, 100.0 * (standardSize - size) / standardSize));
+		}
+		if (manifest != null) {
+			manifest.add(encodedDive.source, fileNames[0]);
+		}
+		return location;
+	}
+
+	/**
+	 * Give the files of a dive names which no other dive of the run has. A dive
+	 * which starts at the same time as another gets the same numbered suffix on
+	 * each of its files, so they still go together.
+	 *
+	 * @param fileNames names of the files of the dive, which all start with the
+	 *                  same base name
+	 * @param names     names already used in the output
+	 * @return unique names
+	 */
+	private static String[] claimNames(final String[] fileNames, final UniqueNames names) {
+		final String baseName = fileNames[0].substring(0, fileNames[0].lastIndexOf('.'));
+		final String unique = names.claim(baseName);
+		if (unique.equals(baseName)) {
+			return fileNames;
+		}
+		final String[] renamed = new String[fileNames.length];
+		for (int i = 0; i < fileNames.length; i++) {
+			renamed[i] = unique + fileNames[i].substring(baseName.length());
+		}
+		return renamed;
+	}
+
+	/** Count a dive which has been written and end its event. */
+	private static void completed(final EncodedDive encodedDive, final String location,
+			final ConversionMetrics runMetrics) {
+		runMetrics.addDive(encodedDive.samples, encodedDive.bytes, System.nanoTime() - encodedDive.startNanos);
+		final DiveEvent event = encodedDive.event;
+		event.output = location;
+		event.samples = encodedDive.samples;
+		event.bytesWritten = encodedDive.bytes;
+		event.commit();
 	}
 
 }
@@ -0,0 +1,25 @@
+package com.github.nradov.sdetofit;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one conversion stage of one dive.
+ *
+ * @author Nick Radov
+ */
+@Name("com.github.nradov.sdetofit.Stage")
+@Label("Conversion Stage")
+@Category("SdeToFit")
+@Description("Work done on one dive by one conversion stage")
+final class StageEvent extends jdk.jfr.Event {
+
+	@Label("Stage")
+	String stage;
+
+	@Label("Dive Log")
+	String dive;
+
+}
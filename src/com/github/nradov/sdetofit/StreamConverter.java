@@ -0,0 +1,270 @@
+package com.github.nradov.sdetofit;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Converts a dive log read from a stream and writes the FIT output to another
+ * stream, so that the converter can run in a shell pipeline without touching
+ * the disk. An {@code .sde} export is read sequentially one dive log at a time,
+ * so it doesn't need to be a seekable file. If the input holds a single dive
+ * the output is its FIT file, otherwise it is a Zip or tar archive of FIT
+ * files. Each FIT file is written as soon as it is encoded.
+ *
+ * <p>
+ * Progress lines and the summary are printed on the standard error stream, as
+ * the standard output stream may be the FIT output.
+ * </p>
+ *
+ * @author Nick Radov
+ */
+public final class StreamConverter {
+
+	/** Archive formats for more than one FIT file. */
+	public enum Archive {
+
+		/** Zip file. */
+		ZIP,
+
+		/** POSIX ustar archive. */
+		TAR
+	}
+
+	/** Number of bytes examined to detect the input format. */
+	private static final int DETECT_LENGTH = 1024;
+
+	/** Zip local file header signature. */
+	private static final byte[] ZIP_SIGNATURE = { 'P', 'K', 3, 4 };
+
+	/** Input formats, named after their file extensions. */
+	private static final String SDE_FORMAT = "sde", XML_FORMAT = "xml", SML_FORMAT = "sml";
+
+	/** Root element of a Suunto Markup Language file. */
+	private static final String SML_ROOT = "<sml";
+
+	private final InputStream in;
+
+	private final OutputStream out;
+
+	private SdeToFit.Encoder encoder = SdeToFit.Encoder.SDK;
+
+	private String format;
+
+	private Archive archive = Archive.ZIP;
+
+	private DiveFilter filter = DiveFilter.ALL;
+
+	private boolean quiet;
+
+	private Path metricsFile;
+
+	private volatile ConversionMetrics metrics;
+
+	/**
+	 * @param in  dive log input, which isn't closed
+	 * @param out FIT output, which is flushed but not closed
+	 */
+	public StreamConverter(final InputStream in, final OutputStream out) {
+		this.in = Objects.requireNonNull(in);
+		this.out = Objects.requireNonNull(out);
+	}
+
+	/**
+	 * Select how the FIT files are encoded. The default is
+	 * {@link SdeToFit.Encoder#SDK}.
+	 *
+	 * @param encoder FIT encoder
+	 */
+	public void setEncoder(final SdeToFit.Encoder encoder) {
+		this.encoder = Objects.requireNonNull(encoder);
+	}
+
+	/**
+	 * Set the input format. The default is {@code null}, which detects the format
+	 * from the start of the input: a Zip file is an {@code .sde} export, and an
+	 * XML document is {@code .sml} if its root element is {@code sml} or
+	 * {@code .xml} otherwise.
+	 *
+	 * @param format {@code sde}, {@code xml}, {@code sml} or {@code null}
+	 */
+	public void setFormat(final String format) {
+		if (format != null && !Set.of(SDE_FORMAT, XML_FORMAT, SML_FORMAT).contains(format)) {
+			throw new IllegalArgumentException("unrecognized file format: \"" + format + "\"");
+		}
+		this.format = format;
+	}
+
+	/**
+	 * Select the archive format used when there is more than one dive. The
+	 * default is {@link Archive#ZIP}.
+	 *
+	 * @param archive archive format
+	 */
+	public void setArchive(final Archive archive) {
+		this.archive = Objects.requireNonNull(archive);
+	}
+
+	/**
+	 * Only convert the dives accepted by a filter. A stream can't be searched for
+	 * headers, so every dive is parsed before it is filtered. The default is
+	 * {@link DiveFilter#ALL}.
+	 *
+	 * <p>
+	 * Whether the output is a single FIT file or an archive depends on the
+	 * number of dives the filter accepts, not the number in the input: an input
+	 * of several dives of which the filter accepts only one gives a bare FIT
+	 * file.
+	 * </p>
+	 *
+	 * @param filter selects the dives to convert
+	 */
+	public void setFilter(final DiveFilter filter) {
+		this.filter = Objects.requireNonNull(filter);
+	}
+
+	/**
+	 * Don't print a line per dive or the summary at the end. Errors are still
+	 * printed. The default is {@code false}.
+	 *
+	 * @param quiet {@code true} to print nothing but errors
+	 */
+	public void setQuiet(final boolean quiet) {
+		this.quiet = quiet;
+	}
+
+	/**
+	 * Write the metrics of the run to a JSON file. The default is {@code null},
+	 * which doesn't write the metrics.
+	 *
+	 * @param metricsFile JSON output file, or {@code null}
+	 */
+	public void setMetricsFile(final Path metricsFile) {
+		this.metricsFile = metricsFile;
+	}
+
+	/**
+	 * Get the metrics of the latest run.
+	 *
+	 * @return metrics, or {@code null} if nothing has been converted yet
+	 */
+	public ConversionMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Convert the dives in the input.
+	 *
+	 * @throws IOException        if an error occurs while reading the input or
+	 *                            writing the output, or if there are no dives to
+	 *                            convert
+	 * @throws XMLStreamException if an error occurs while reading an XML dive log
+	 */
+	public void convert() throws IOException, XMLStreamException {
+		final var runMetrics = new ConversionMetrics();
+		metrics = runMetrics;
+		final var counting = new CountingInputStream(in);
+		final var input = new BufferedInputStream(counting);
+		final var output = new CountingOutputStream(out);
+		final String fileName = "input." + (format == null ? detectFormat(input) : format);
+		try (final ConsoleLog console = quiet ? ConsoleLog.DISCARD : new ConsoleLog(System.err)) {
+			final Iterator<Dive> dives = DivesSourceFactory.stream(input, fileName).iterator();
+			final Dive first = next(dives, runMetrics);
+			if (first == null) {
+				throw new IOException("no dives to convert");
+			}
+			final Dive second = next(dives, runMetrics);
+			if (second == null) {
+				output.write(encode(first, runMetrics, console));
+			} else {
+				// not closed, which would close the output
+				final ArchiveSink sink = archive == Archive.ZIP ? new ZipSink(output) : new TarSink(output);
+				// the first two dives have already been parsed to tell whether there is more than one;
+				// the sink gives dives which start at the same time unique names, as in a directory
+				for (Dive dive = first; dive != null; dive = dive == first ? second : next(dives, runMetrics)) {
+					sink.write(SdeToFit.fitFileName(dive), encode(dive, runMetrics, console),
+							dive.getStartTime().getDate().getTime());
+				}
+				sink.finish();
+			}
+			output.flush();
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+		runMetrics.addBytesRead(counting.getCount(), counting.getCount());
+		runMetrics.finish();
+		if (!quiet) {
+			System.err.println(String.format(Locale.US, "Wrote %d bytes of %s output", output.getCount(),
+					runMetrics.getDives() == 1 ? "FIT" : archive.name().toLowerCase(Locale.US)));
+			runMetrics.printSummary(System.err);
+		}
+		if (metricsFile != null) {
+			Files.writeString(metricsFile, runMetrics.toJson() + System.lineSeparator());
+		}
+	}
+
+	/**
+	 * Detect the input format from the start of the input, without consuming it.
+	 *
+	 * @return {@code sde}, {@code xml} or {@code sml}
+	 */
+	static String detectFormat(final BufferedInputStream input) throws IOException {
+		input.mark(DETECT_LENGTH);
+		final byte[] start = input.readNBytes(DETECT_LENGTH);
+		input.reset();
+		if (start.length >= ZIP_SIGNATURE.length && start[0] == ZIP_SIGNATURE[0] && start[1] == ZIP_SIGNATURE[1]
+				&& start[2] == ZIP_SIGNATURE[2] && start[3] == ZIP_SIGNATURE[3]) {
+			return SDE_FORMAT;
+		}
+		// the encoding doesn't matter for the ASCII element name
+		return new String(start, StandardCharsets.ISO_8859_1).contains(SML_ROOT) ? SML_FORMAT : XML_FORMAT;
+	}
+
+	/** Parse the next dive which matches the filter, or return {@code null}. */
+	private Dive next(final Iterator<Dive> dives, final ConversionMetrics runMetrics) {
+		while (true) {
+			final Dive dive;
+			final var timer = runMetrics.start(ConversionMetrics.Stage.PARSE, "stdin");
+			try {
+				if (!dives.hasNext()) {
+					return null;
+				}
+				dive = dives.next();
+			} finally {
+				timer.stop();
+			}
+			runMetrics.addEntry();
+			if (filter.test(DiveHeader.of(dive))) {
+				return dive;
+			}
+			runMetrics.addSkipped();
+		}
+	}
+
+	private byte[] encode(final Dive dive, final ConversionMetrics runMetrics, final ConsoleLog console) {
+		final long start = System.nanoTime();
+		final String fitFileName = SdeToFit.fitFileName(dive);
+		final byte[] data;
+		final var timer = runMetrics.start(ConversionMetrics.Stage.ENCODE, fitFileName);
+		try {
+			data = SdeToFit.encode(encoder, dive);
+		} finally {
+			timer.stop();
+		}
+		runMetrics.addDive(dive.getProfile().size(), data.length, System.nanoTime() - start);
+		console.log("Converted dive: \"" + fitFileName + "\"");
+		return data;
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.github.nradov.sdetofit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streams every FIT file into one POSIX ustar archive. Only what's needed for
+ * FIT files is supported: file names of up to 100 bytes and no directories or
+ * links.
+ *
+ * @author Nick Radov
+ */
+public final class TarSink extends ArchiveSink {
+
+	/** Size of the header and data blocks. */
+	private static final int BLOCK_SIZE = 512;
+
+	private static final int NAME_LENGTH = 100;
+
+	private final OutputStream out;
+
+	private final byte[] header = new byte[BLOCK_SIZE];
+
+	private boolean finished;
+
+	/**
+	 * @param out where to write the archive, which is closed by {@link #close()}
+	 */
+	public TarSink(final OutputStream out) {
+		this.out = out;
+	}
+
+	@Override
+	void writeEntry(final String name, final byte[] data, final long modifiedMillis) throws IOException {
+		final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		if (nameBytes.length > NAME_LENGTH) {
+			throw new IllegalArgumentException("file name too long for a tar archive: \"" + name + "\"");
+		}
+		Arrays.fill(header, (byte) 0);
+		System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+		octal(0644, 100, 8);
+		octal(0, 108, 8);
+		octal(0, 116, 8);
+		octal(data.length, 124, 12);
+		octal(modifiedMillis / 1000, 136, 12);
+		header[156] = '0';
+		ascii("ustar", 257);
+		ascii("00", 263);
+		// the checksum is calculated with its own field set to spaces
+		Arrays.fill(header, 148, 156, (byte) ' ');
+		int checksum = 0;
+		for (final byte b : header) {
+			checksum += b & 0xFF;
+		}
+		octal(checksum, 148, 7);
+		out.write(header);
+		out.write(data);
+		final int padding = (BLOCK_SIZE - data.length % BLOCK_SIZE) % BLOCK_SIZE;
+		out.write(new byte[padding]);
+	}
+
+	/** Write a zero terminated octal number which fills a header field. */
+	private void octal(final long value, final int offset, final int length) {
+		final String digits = Long.toOctalString(value);
+		if (digits.length() > length - 1) {
+			throw new IllegalArgumentException("value too large for a tar header: " + value);
+		}
+		Arrays.fill(header, offset, offset + length - 1 - digits.length(), (byte) '0');
+		ascii(digits, offset + length - 1 - digits.length());
+		header[offset + length - 1] = 0;
+	}
+
+	private void ascii(final String s, final int offset) {
+		final byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(bytes, 0, header, offset, bytes.length);
+	}
+
+	@Override
+	public synchronized void finish() throws IOException {
+		if (!finished) {
+			out.write(new byte[2 * BLOCK_SIZE]);
+			out.flush();
+			finished = true;
+		}
+	}
+
+	/** Complete the archive and close the stream. */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.github.nradov.sdetofit;
+
+/**
+ * FIT file encoded straight from a dive log while it was parsed, without
+ * building a {@link Dive}. Only the header and the sample count are kept from
+ * the dive log.
+ *
+ * @author Nick Radov
+ * @see DiveReader#transcode(com.github.nradov.sdetofit.fit.DirectFitEncoder)
+ */
+public final class TranscodedDive {
+
+	private final DiveHeader header;
+
+	private final byte[] data;
+
+	private final int samples;
+
+	private final int standardSize;
+
+	/**
+	 * @param header       header of the dive
+	 * @param data         FIT file contents
+	 * @param samples      number of samples in the dive profile
+	 * @param standardSize size the FIT file would have had if every record had
+	 *                     been written in full
+	 */
+	public TranscodedDive(final DiveHeader header, final byte[] data, final int samples, final int standardSize) {
+		this.header = header;
+		this.data = data;
+		this.samples = samples;
+		this.standardSize = standardSize;
+	}
+
+	/** Get the header of the dive. */
+	public DiveHeader getHeader() {
+		return header;
+	}
+
+	/** Get the FIT file contents, which must not be modified. */
+	public byte[] getData() {
+		return data;
+	}
+
+	/** Get the number of samples in the dive profile. */
+	public int getSamples() {
+		return samples;
+	}
+
+	/** Get the size the FIT file would have had if every record had been written in full. */
+	public int getStandardSize() {
+		return standardSize;
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.github.nradov.sdetofit;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * File names already used in one output. Dives which start at the same time
+ * would get the same file name, so each later one gets a numbered suffix
+ * instead of replacing the earlier one. Safe to use from several threads at
+ * once.
+ *
+ * @author Nick Radov
+ */
+final class UniqueNames {
+
+	private final Set<String> names = new HashSet<>();
+
+	/**
+	 * Claim a name for a file about to be written. If the name has already been
+	 * claimed, {@code -2}, {@code -3} and so on is added before the extension
+	 * until it is unique.
+	 *
+	 * @param name file name, or a base name without an extension
+	 * @return name which no earlier call has returned
+	 */
+	synchronized String claim(final String name) {
+		String unique = name;
+		for (int n = 2; !names.add(unique); n++) {
+			final int dot = name.lastIndexOf('.');
+			unique = dot > 0 ? name.substring(0, dot) + "-" + n + name.substring(dot) : name + "-" + n;
+		}
+		return unique;
+	}
+
+}
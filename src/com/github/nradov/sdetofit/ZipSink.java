@@ -0,0 +1,52 @@
+package com.github.nradov.sdetofit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams every FIT file into one Zip file, named by dive start time in the
+ * same way as the files of a {@link DirectorySink}. Writing one archive
+ * sequentially avoids creating and closing a file per dive, which is slow on
+ * network file systems.
+ *
+ * @author Nick Radov
+ */
+public final class ZipSink extends ArchiveSink {
+
+	/** Extension of an output file which selects a Zip file of FIT files. */
+	public static final String FILE_EXTENSION = ".zip";
+
+	private final ZipOutputStream zip;
+
+	/**
+	 * @param out where to write the Zip file, which is closed by
+	 *            {@link #close()}
+	 */
+	public ZipSink(final OutputStream out) {
+		zip = new ZipOutputStream(out);
+	}
+
+	@Override
+	void writeEntry(final String name, final byte[] data, final long modifiedMillis) throws IOException {
+		final var entry = new ZipEntry(name);
+		entry.setTime(modifiedMillis);
+		zip.putNextEntry(entry);
+		zip.write(data);
+		zip.closeEntry();
+	}
+
+	@Override
+	public synchronized void finish() throws IOException {
+		zip.finish();
+		zip.flush();
+	}
+
+	/** Complete the Zip file and close the stream. */
+	@Override
+	public synchronized void close() throws IOException {
+		zip.close();
+	}
+
+}
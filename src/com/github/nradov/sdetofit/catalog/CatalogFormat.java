@@ -0,0 +1,90 @@
+package com.github.nradov.sdetofit.catalog;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of a dive catalog file. All numbers are big endian.
+ *
+ * <pre>
+ * header:  magic (int), version (int), dive count (int), unused (int), index offset (long)
+ * dives:   one record per dive, see {@link DiveCatalogWriter#encode}
+ * index:   one entry per dive sorted by serial number, start time and offset:
+ *          serial number (long), start time (long), record offset (long),
+ *          record length (int), record CRC-32 (int)
+ * </pre>
+ *
+ * The header is written last, so a catalog whose writing was interrupted is
+ * rejected instead of being read with missing dives.
+ *
+ * @author Nick Radov
+ */
+final class CatalogFormat {
+
+	private CatalogFormat() {
+		// not to be instantiated
+	}
+
+	/** "SDCT" */
+	static final int MAGIC = 0x53444354;
+
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 24;
+
+	/** Header field offsets. */
+	static final int MAGIC_OFFSET = 0, VERSION_OFFSET = 4, COUNT_OFFSET = 8, INDEX_OFFSET_OFFSET = 16;
+
+	static final int INDEX_ENTRY_SIZE = 32;
+
+	/** Index entry field offsets. */
+	static final int ENTRY_SERIAL_NUMBER = 0, ENTRY_START_TIME = 8, ENTRY_OFFSET = 16, ENTRY_LENGTH = 24,
+			ENTRY_CRC = 28;
+
+	/** Record field offsets, for reading the fields the index is built from. */
+	static final int RECORD_START_TIME = 0, RECORD_SERIAL_NUMBER = 16;
+
+	/** Manufacturer value stored for dives without one. */
+	static final int NO_MANUFACTURER = -1;
+
+	/** Surface time value stored for dives without one. */
+	static final long NO_SURFACE_TIME = Long.MIN_VALUE;
+
+	/** Depth scale stored when depths are kept as raw float bits. */
+	static final byte RAW_DEPTHS = -1;
+
+	/** Powers of ten for the depth scales, indexed by number of decimals. */
+	static final double[] DEPTH_SCALES = { 1, 10, 100, 1000 };
+
+	/**
+	 * Write a value as an unsigned variable length quantity of 7 bits per byte,
+	 * after zigzag encoding it so small negative values stay short.
+	 */
+	static void putVarLong(final ByteBuffer buffer, final long value) {
+		long zigzag = (value << 1) ^ (value >> 63);
+		while ((zigzag & ~0x7FL) != 0) {
+			buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+			zigzag >>>= 7;
+		}
+		buffer.put((byte) zigzag);
+	}
+
+	/** Read a value written by {@link #putVarLong}. */
+	static long getVarLong(final ByteBuffer buffer) {
+		long zigzag = 0;
+		int shift = 0;
+		byte b;
+		do {
+			if (shift > 63) {
+				throw new IllegalArgumentException("variable length value is too long");
+			}
+			b = buffer.get();
+			zigzag |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	/** Maximum number of bytes written by {@link #putVarLong}. */
+	static final int MAX_VAR_LONG_SIZE = 10;
+
+}
@@ -0,0 +1,396 @@
+package com.github.nradov.sdetofit.catalog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.garmin.fit.DateTime;
+import com.github.nradov.sdetofit.ConversionMetrics;
+import com.github.nradov.sdetofit.Dive;
+import com.github.nradov.sdetofit.DiveHeader;
+import com.github.nradov.sdetofit.DiveProfile;
+import com.github.nradov.sdetofit.DiveReader;
+import com.github.nradov.sdetofit.DivesSource;
+
+/**
+ * Dives which have already been parsed, stored in a compact binary file written
+ * by {@link DiveCatalogWriter}. The file is memory mapped and each dive is
+ * decoded straight from the mapping when it is read, which is far cheaper than
+ * parsing the original XML. An index sorted by serial number and start time
+ * allows the dives from one dive computer to be found without decoding the
+ * others.
+ *
+ * @author Nick Radov
+ */
+public final class DiveCatalog implements DivesSource {
+
+	/** Dive catalog file extension. */
+	public static final String FILE_EXTENSION = ".divecat";
+
+	private final Path file;
+
+	private final MappedByteBuffer buffer;
+
+	private final int count, indexOffset;
+
+	private volatile ConversionMetrics metrics = new ConversionMetrics();
+
+	/**
+	 * Open a catalog file.
+	 *
+	 * @param file catalog file
+	 * @throws IOException if the file can't be read or isn't a complete catalog
+	 */
+	public DiveCatalog(final Path file) throws IOException {
+		this.file = file;
+		try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("dive catalog is too large to map: \"" + file + "\"");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.capacity() < CatalogFormat.HEADER_SIZE
+				|| buffer.getInt(CatalogFormat.MAGIC_OFFSET) != CatalogFormat.MAGIC) {
+			throw new IOException("not a complete dive catalog: \"" + file + "\"");
+		}
+		final int version = buffer.getInt(CatalogFormat.VERSION_OFFSET);
+		if (version != CatalogFormat.VERSION) {
+			throw new IOException("unsupported dive catalog version " + version + ": \"" + file + "\"");
+		}
+		count = buffer.getInt(CatalogFormat.COUNT_OFFSET);
+		final long offset = buffer.getLong(CatalogFormat.INDEX_OFFSET_OFFSET);
+		if (count < 0 || offset < CatalogFormat.HEADER_SIZE
+				|| offset + (long) count * CatalogFormat.INDEX_ENTRY_SIZE > buffer.capacity()) {
+			throw new IOException("corrupt dive catalog index: \"" + file + "\"");
+		}
+		indexOffset = (int) offset;
+	}
+
+	/**
+	 * Get the number of dives in the catalog.
+	 *
+	 * @return number of dives
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws UncheckedIOException if a dive record is corrupt
+	 */
+	@Override
+	public NavigableSet<Dive> getDives() {
+		return stream(true).collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>
+	 * Stored order is by serial number and then start time.
+	 * </p>
+	 */
+	@Override
+	public Stream<Dive> stream(final boolean chronological) {
+		return entries(chronological).map(EntryReader::read);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>
+	 * The checksum and size are those of the dive record in the catalog, so they
+	 * are known without decoding the dive.
+	 * </p>
+	 */
+	@Override
+	public Stream<DiveReader> readers(final boolean chronological) {
+		return entries(chronological).map(DiveReader.class::cast);
+	}
+
+	private Stream<EntryReader> entries(final boolean chronological) {
+		final IntStream entries = IntStream.range(0, count);
+		if (chronological) {
+			// boxed for a stable sort so dives starting at the same time stay in index order
+			return entries.boxed().sorted(Comparator.comparingLong(this::getEntryStartTime))
+					.map(EntryReader::new);
+		}
+		return entries.mapToObj(EntryReader::new);
+	}
+
+	/**
+	 * Get the dives recorded by one dive computer during a period of time, in
+	 * start time order. Only the matching dives are decoded.
+	 *
+	 * @param serialNumber dive computer serial number
+	 * @param from         earliest start time, inclusive
+	 * @param to           latest start time, exclusive
+	 * @return dive reading tasks
+	 */
+	public Stream<DiveReader> readers(final long serialNumber, final DateTime from, final DateTime to) {
+		final int first = lowerBound(serialNumber, from.getTimestamp());
+		final int last = lowerBound(serialNumber, to.getTimestamp());
+		return IntStream.range(first, Math.max(first, last)).mapToObj(EntryReader::new);
+	}
+
+	/**
+	 * Find the first index entry at or after a serial number and start time.
+	 */
+	private int lowerBound(final long serialNumber, final long startTime) {
+		int low = 0, high = count;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			final int compare = Long.compare(getEntrySerialNumber(middle), serialNumber);
+			if (compare < 0 || (compare == 0 && getEntryStartTime(middle) < startTime)) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private int entryOffset(final int entry) {
+		return indexOffset + entry * CatalogFormat.INDEX_ENTRY_SIZE;
+	}
+
+	private long getEntrySerialNumber(final int entry) {
+		return buffer.getLong(entryOffset(entry) + CatalogFormat.ENTRY_SERIAL_NUMBER);
+	}
+
+	private long getEntryStartTime(final int entry) {
+		return buffer.getLong(entryOffset(entry) + CatalogFormat.ENTRY_START_TIME);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>
+	 * The length of each record decoded is counted as the bytes read.
+	 * </p>
+	 */
+	@Override
+	public void setMetrics(final ConversionMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/** Reads the dive for one index entry. */
+	private final class EntryReader implements DiveReader {
+
+		private final int entry;
+
+		EntryReader(final int entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public String getName() {
+			return getEntrySerialNumber(entry) + "@" + getEntryStartTime(entry);
+		}
+
+		@Override
+		public long getCrc() {
+			return Integer.toUnsignedLong(buffer.getInt(entryOffset(entry) + CatalogFormat.ENTRY_CRC));
+		}
+
+		@Override
+		public long getSize() {
+			return buffer.getInt(entryOffset(entry) + CatalogFormat.ENTRY_LENGTH);
+		}
+
+		@Override
+		public DiveHeader getHeader() throws IOException {
+			try {
+				return CatalogDive.readHeader(record());
+			} catch (final RuntimeException e) {
+				throw corrupt(e);
+			}
+		}
+
+		@Override
+		public Dive call() throws IOException {
+			metrics.addBytesRead(getSize(), getSize());
+			try {
+				return new CatalogDive(record());
+			} catch (final RuntimeException e) {
+				throw corrupt(e);
+			}
+		}
+
+		/** Get a view of the record, so that dives can be decoded concurrently. */
+		private ByteBuffer record() {
+			final long offset = buffer.getLong(entryOffset(entry) + CatalogFormat.ENTRY_OFFSET);
+			final int length = (int) getSize();
+			final ByteBuffer record = buffer.duplicate();
+			record.limit(Math.addExact((int) offset, length)).position((int) offset);
+			return record.slice();
+		}
+
+		private IOException corrupt(final RuntimeException e) {
+			return new IOException("corrupt dive catalog record \"" + getName() + "\" in \"" + file + "\"", e);
+		}
+
+		private Dive read() {
+			try {
+				return call();
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+	}
+
+	/** Dive decoded from a catalog record. */
+	private static final class CatalogDive implements Dive {
+
+		private final DateTime start, end;
+		private final long serialNumber, diveNumber, surfaceTime;
+		private final float avgDepth, maxDepth, bottomTime;
+		private final Integer manufacturer;
+		private final String productName;
+		private final DiveProfile profile;
+
+		/** Read the header fields at the start of a record. */
+		static DiveHeader readHeader(final ByteBuffer record) {
+			final long start = record.getLong();
+			final long end = record.getLong();
+			final long serialNumber = record.getLong();
+			final long diveNumber = record.getLong();
+			record.getLong(); // surface time
+			record.getFloat(); // average depth
+			final float maxDepth = record.getFloat();
+			record.getFloat(); // bottom time
+			record.getInt(); // manufacturer
+			final byte[] productNameBytes = new byte[Short.toUnsignedInt(record.getShort())];
+			record.get(productNameBytes);
+			return new DiveHeader(new DateTime(start), diveNumber, serialNumber,
+					new String(productNameBytes, StandardCharsets.UTF_8), maxDepth, end - start);
+		}
+
+		CatalogDive(final ByteBuffer record) {
+			start = new DateTime(record.getLong());
+			end = new DateTime(record.getLong());
+			serialNumber = record.getLong();
+			diveNumber = record.getLong();
+			surfaceTime = record.getLong();
+			avgDepth = record.getFloat();
+			maxDepth = record.getFloat();
+			bottomTime = record.getFloat();
+			final int manufacturerValue = record.getInt();
+			manufacturer = manufacturerValue == CatalogFormat.NO_MANUFACTURER ? null : manufacturerValue;
+			final byte[] productNameBytes = new byte[Short.toUnsignedInt(record.getShort())];
+			record.get(productNameBytes);
+			productName = new String(productNameBytes, StandardCharsets.UTF_8);
+
+			final long profileStart = record.getLong();
+			final int size = record.getInt();
+			if (size < 0 || size > record.remaining()) {
+				throw new IllegalArgumentException("invalid sample count " + size);
+			}
+			final int[] timeOffsets = new int[size];
+			long previous = 0;
+			for (int i = 0; i < size; i++) {
+				previous += CatalogFormat.getVarLong(record);
+				timeOffsets[i] = Math.toIntExact(previous);
+			}
+			final byte scale = record.get();
+			final float[] depths = new float[size];
+			previous = 0;
+			for (int i = 0; i < size; i++) {
+				previous += CatalogFormat.getVarLong(record);
+				depths[i] = scale == CatalogFormat.RAW_DEPTHS ? Float.intBitsToFloat((int) previous)
+						: (float) (previous / CatalogFormat.DEPTH_SCALES[scale]);
+			}
+			final byte[] temperatures = new byte[size];
+			previous = 0;
+			for (int i = 0; i < size; i++) {
+				previous += CatalogFormat.getVarLong(record);
+				temperatures[i] = (byte) previous;
+			}
+			profile = new DiveProfile(profileStart, timeOffsets, depths, temperatures);
+		}
+
+		@Override
+		public DateTime getStartTime() {
+			return start;
+		}
+
+		@Override
+		public DateTime getEndTime() {
+			return end;
+		}
+
+		@Override
+		public DiveProfile getProfile() {
+			return profile;
+		}
+
+		@Override
+		public String getProductName() {
+			return productName;
+		}
+
+		@Override
+		public Integer getManufacturer() {
+			return manufacturer;
+		}
+
+		@Override
+		public long getSerialNumber() {
+			return serialNumber;
+		}
+
+		@Override
+		public long getDiveNumber() {
+			return diveNumber;
+		}
+
+		@Override
+		public long getSurfaceTime() {
+			if (!hasSurfaceTime()) {
+				throw new UnsupportedOperationException();
+			}
+			return surfaceTime;
+		}
+
+		@Override
+		public boolean hasSurfaceTime() {
+			return surfaceTime != CatalogFormat.NO_SURFACE_TIME;
+		}
+
+		@Override
+		public float getAvgDepth() {
+			return avgDepth;
+		}
+
+		@Override
+		public float getMaxDepth() {
+			return maxDepth;
+		}
+
+		@Override
+		public float getBottomTime() {
+			return bottomTime;
+		}
+
+		@Override
+		public int compareTo(final Dive o) {
+			return Dive.compare(this, o);
+		}
+
+	}
+
+}
@@ -0,0 +1,218 @@
+package com.github.nradov.sdetofit.catalog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.github.nradov.sdetofit.Dive;
+import com.github.nradov.sdetofit.DiveProfile;
+
+/**
+ * Writes dives to a new {@link DiveCatalog} file. Dives may be added in any
+ * order, and from more than one thread. Encoding a dive is independent of the
+ * catalog, so it can be done concurrently with {@link #encode(Dive)} before the
+ * encoded dives are added.
+ *
+ * @author Nick Radov
+ */
+public final class DiveCatalogWriter implements Closeable {
+
+	private final FileChannel channel;
+
+	private final List<IndexEntry> index = new ArrayList<>();
+
+	private long position = CatalogFormat.HEADER_SIZE;
+
+	/**
+	 * Create a catalog file, replacing any existing file.
+	 *
+	 * @param file catalog file
+	 * @throws IOException if the file can't be created
+	 */
+	public DiveCatalogWriter(final Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * Encode a dive as a catalog record. The record holds the dive header
+	 * followed by the profile samples. Sample times, depths and temperatures are
+	 * stored as one run each of differences from the previous sample, which for
+	 * regular sample intervals and slowly changing depths are mostly one byte.
+	 * Depths are stored as whole multiples of the coarsest power of ten that
+	 * reproduces every depth exactly, or as raw float bits if there is none.
+	 *
+	 * @param dive dive
+	 * @return record
+	 */
+	public static byte[] encode(final Dive dive) {
+		final DiveProfile profile = dive.getProfile();
+		final int size = profile.size();
+		final byte[] productName = dive.getProductName() == null ? new byte[0]
+				: dive.getProductName().getBytes(StandardCharsets.UTF_8);
+		final ByteBuffer buffer = ByteBuffer
+				.allocate(80 + productName.length + size * 3 * CatalogFormat.MAX_VAR_LONG_SIZE);
+		buffer.putLong(dive.getStartTime().getTimestamp());
+		buffer.putLong(dive.getEndTime().getTimestamp());
+		buffer.putLong(dive.getSerialNumber());
+		buffer.putLong(dive.getDiveNumber());
+		buffer.putLong(dive.hasSurfaceTime() ? dive.getSurfaceTime() : CatalogFormat.NO_SURFACE_TIME);
+		buffer.putFloat(dive.getAvgDepth());
+		buffer.putFloat(dive.getMaxDepth());
+		buffer.putFloat(dive.getBottomTime());
+		final Integer manufacturer = dive.getManufacturer();
+		buffer.putInt(manufacturer == null ? CatalogFormat.NO_MANUFACTURER : manufacturer);
+		buffer.putShort((short) productName.length);
+		buffer.put(productName);
+
+		buffer.putLong(profile.getStartTime());
+		buffer.putInt(size);
+		long previous = 0;
+		for (int i = 0; i < size; i++) {
+			CatalogFormat.putVarLong(buffer, profile.getTimeOffset(i) - previous);
+			previous = profile.getTimeOffset(i);
+		}
+		final byte scale = depthScale(profile);
+		buffer.put(scale);
+		previous = 0;
+		for (int i = 0; i < size; i++) {
+			final long depth = scale == CatalogFormat.RAW_DEPTHS ? Float.floatToRawIntBits(profile.getDepth(i))
+					: Math.round(profile.getDepth(i) * CatalogFormat.DEPTH_SCALES[scale]);
+			CatalogFormat.putVarLong(buffer, depth - previous);
+			previous = depth;
+		}
+		previous = 0;
+		for (int i = 0; i < size; i++) {
+			CatalogFormat.putVarLong(buffer, profile.getTemperature(i) - previous);
+			previous = profile.getTemperature(i);
+		}
+
+		final byte[] record = new byte[buffer.position()];
+		buffer.flip();
+		buffer.get(record);
+		return record;
+	}
+
+	/** Find the smallest number of decimals which represents every depth exactly. */
+	private static byte depthScale(final DiveProfile profile) {
+		for (byte decimals = 0; decimals < CatalogFormat.DEPTH_SCALES.length; decimals++) {
+			if (isExact(profile, CatalogFormat.DEPTH_SCALES[decimals])) {
+				return decimals;
+			}
+		}
+		return CatalogFormat.RAW_DEPTHS;
+	}
+
+	private static boolean isExact(final DiveProfile profile, final double scale) {
+		for (int i = 0; i < profile.size(); i++) {
+			final float depth = profile.getDepth(i);
+			final float decoded = (float) (Math.round(depth * scale) / scale);
+			if (Float.floatToRawIntBits(decoded) != Float.floatToRawIntBits(depth)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Add a dive.
+	 *
+	 * @param dive dive
+	 * @throws IOException if an error occurs while writing the catalog
+	 */
+	public void add(final Dive dive) throws IOException {
+		add(encode(dive));
+	}
+
+	/**
+	 * Add a dive which has already been encoded.
+	 *
+	 * @param record dive encoded by {@link #encode(Dive)}
+	 * @throws IOException if an error occurs while writing the catalog
+	 */
+	public synchronized void add(final byte[] record) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(record);
+		final CRC32 crc = new CRC32();
+		crc.update(record);
+		index.add(new IndexEntry(buffer.getLong(CatalogFormat.RECORD_SERIAL_NUMBER),
+				buffer.getLong(CatalogFormat.RECORD_START_TIME), position, record.length, (int) crc.getValue()));
+		write(buffer);
+	}
+
+	private void write(final ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Get the number of dives added so far.
+	 *
+	 * @return number of dives
+	 */
+	public synchronized int size() {
+		return index.size();
+	}
+
+	/**
+	 * Write the index and header and close the file.
+	 *
+	 * @throws IOException if an error occurs while writing the catalog
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (!channel.isOpen()) {
+			return;
+		}
+		try {
+			index.sort(Comparator.comparingLong((final IndexEntry entry) -> entry.serialNumber)
+					.thenComparingLong(entry -> entry.startTime).thenComparingLong(entry -> entry.offset));
+			final long indexOffset = position;
+			final ByteBuffer buffer = ByteBuffer.allocate(index.size() * CatalogFormat.INDEX_ENTRY_SIZE);
+			for (final IndexEntry entry : index) {
+				buffer.putLong(entry.serialNumber).putLong(entry.startTime).putLong(entry.offset)
+						.putInt(entry.length).putInt(entry.crc);
+			}
+			buffer.flip();
+			write(buffer);
+			channel.force(false);
+
+			final ByteBuffer header = ByteBuffer.allocate(CatalogFormat.HEADER_SIZE);
+			header.putInt(CatalogFormat.MAGIC).putInt(CatalogFormat.VERSION).putInt(index.size()).putInt(0)
+					.putLong(indexOffset);
+			header.flip();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			channel.force(false);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static final class IndexEntry {
+
+		private final long serialNumber, startTime, offset;
+
+		private final int length, crc;
+
+		IndexEntry(final long serialNumber, final long startTime, final long offset, final int length,
+				final int crc) {
+			this.serialNumber = serialNumber;
+			this.startTime = startTime;
+			this.offset = offset;
+			this.length = length;
+			this.crc = crc;
+		}
+
+	}
+
+}
@@ -0,0 +1,6 @@
+/**
+ * Binary catalog of parsed dives.
+ *
+ * @author Nick Radov
+ */
+package com.github.nradov.sdetofit.catalog;
@@ -0,0 +1,80 @@
+package com.github.nradov.sdetofit.export;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import com.garmin.fit.DateTime;
+import com.github.nradov.sdetofit.Dive;
+
+/**
+ * Writes a summary of a dive as a JSON object, with a member for each
+ * {@link Dive} getter and the number of samples. Times are local dates and
+ * times, and a surface interval which the dive log doesn't have is
+ * {@code null}.
+ *
+ * @author Nick Radov
+ */
+public final class DiveJson {
+
+	/** File extension of a summary. */
+	public static final String FILE_EXTENSION = ".json";
+
+	private DiveJson() {
+	}
+
+	/**
+	 * Write the summary of a dive.
+	 *
+	 * @param dive dive
+	 * @return UTF-8 text
+	 */
+	public static byte[] encode(final Dive dive) {
+		final var json = new StringBuilder(320);
+		json.append("{\"startTime\":\"").append(localDateTime(dive.getStartTime()));
+		json.append("\",\"endTime\":\"").append(localDateTime(dive.getEndTime()));
+		json.append("\",\"productName\":");
+		string(json, dive.getProductName());
+		json.append(",\"manufacturer\":").append(dive.getManufacturer());
+		json.append(",\"serialNumber\":").append(dive.getSerialNumber());
+		json.append(",\"diveNumber\":").append(dive.getDiveNumber());
+		json.append(",\"surfaceTime\":");
+		if (dive.hasSurfaceTime()) {
+			json.append(dive.getSurfaceTime());
+		} else {
+			json.append("null");
+		}
+		json.append(",\"avgDepth\":").append(dive.getAvgDepth());
+		json.append(",\"maxDepth\":").append(dive.getMaxDepth());
+		json.append(",\"bottomTime\":").append(dive.getBottomTime());
+		json.append(",\"samples\":").append(dive.getProfile().size());
+		json.append("}\n");
+		return json.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String localDateTime(final DateTime dateTime) {
+		return ProfileCsv.DATE_TIME_FORMAT
+				.format(LocalDateTime.ofInstant(dateTime.getDate().toInstant(), ZoneId.systemDefault()));
+	}
+
+	/** Append a JSON string, or {@code null}. */
+	private static void string(final StringBuilder json, final String s) {
+		if (s == null) {
+			json.append("null");
+			return;
+		}
+		json.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < ' ') {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.github.nradov.sdetofit.export;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+import com.github.nradov.sdetofit.Dive;
+import com.github.nradov.sdetofit.DiveProfile;
+import com.github.nradov.sdetofit.SdeToFit;
+
+/**
+ * Writes a dive profile as comma separated values, one line per sample with
+ * its local date and time, the seconds since the start of the dive, the depth
+ * in meters and the temperature in degrees Celsius.
+ *
+ * @author Nick Radov
+ */
+public final class ProfileCsv {
+
+	/** File extension of a profile. */
+	public static final String FILE_EXTENSION = ".csv";
+
+	/** Local date and time format, which always has the seconds. */
+	static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss");
+
+	private static final String HEADER = "time,elapsed_s,depth_m,temperature_c\n";
+
+	/** Approximate length of a line, for sizing the buffer. */
+	private static final int LINE_LENGTH = 40;
+
+	private ProfileCsv() {
+	}
+
+	/**
+	 * Write the profile of a dive.
+	 *
+	 * @param dive dive
+	 * @return UTF-8 text
+	 */
+	public static byte[] encode(final Dive dive) {
+		final DiveProfile profile = dive.getProfile();
+		final ZoneId zone = ZoneId.systemDefault();
+		final var csv = new StringBuilder(HEADER.length() + profile.size() * LINE_LENGTH).append(HEADER);
+		for (int i = 0; i < profile.size(); i++) {
+			final long unixSeconds = profile.getTimestamp(i) + SdeToFit.OFFSET_MS / 1000;
+			final var time = LocalDateTime.ofInstant(Instant.ofEpochSecond(unixSeconds), zone);
+			csv.append(DATE_TIME_FORMAT.format(time)).append(',').append(profile.getTimeOffset(i)).append(',')
+					.append(profile.getDepth(i)).append(',').append(profile.getTemperature(i)).append('\n');
+		}
+		return csv.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+}
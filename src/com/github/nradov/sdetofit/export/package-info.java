@@ -0,0 +1,6 @@
+/**
+ * Text exports of dive profiles and summaries for analytics tools.
+ *
+ * @author Nick Radov
+ */
+package com.github.nradov.sdetofit.export;
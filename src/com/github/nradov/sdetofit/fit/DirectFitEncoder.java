@@ -0,0 +1,527 @@
+package com.github.nradov.sdetofit.fit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.garmin.fit.ActivityMesg;
+import com.garmin.fit.CRC;
+import com.garmin.fit.DeviceIndex;
+import com.garmin.fit.DeviceInfoMesg;
+import com.garmin.fit.DiveSummaryMesg;
+import com.garmin.fit.Event;
+import com.garmin.fit.EventMesg;
+import com.garmin.fit.EventType;
+import com.garmin.fit.File;
+import com.garmin.fit.FileIdMesg;
+import com.garmin.fit.Fit;
+import com.garmin.fit.LapMesg;
+import com.garmin.fit.Manufacturer;
+import com.garmin.fit.MesgNum;
+import com.garmin.fit.RecordMesg;
+import com.garmin.fit.SessionMesg;
+import com.garmin.fit.Sport;
+import com.garmin.fit.SubSport;
+import com.github.nradov.sdetofit.Dive;
+import com.github.nradov.sdetofit.DiveProfile;
+
+/**
+ * Writes FIT activity files directly in the binary format, without creating a
+ * FIT SDK {@code Mesg} object per message. It only supports the fixed set of
+ * messages which this application produces, and the files decode to the same
+ * messages as the ones written through the SDK {@code FileEncoder}.
+ *
+ * <p>
+ * Each message type gets its own local message number so every definition
+ * message is written at most once per file. Data messages are packed straight
+ * into a buffer which is reused for every file, so encoding a dive doesn't
+ * allocate anything per sample. Instances are not thread safe.
+ * </p>
+ *
+ * <p>
+ * In compact mode record messages use compressed timestamp headers, which
+ * replace the 4 byte timestamp field with a 5 bit offset from the previous
+ * timestamp, and the temperature field is left out of records where it hasn't
+ * changed since the previous record. Readers which chart the temperature carry
+ * the last value forward. Records more than 31 seconds after the previous
+ * message can't use a compressed timestamp and are written in full.
+ * </p>
+ *
+ * @author Nick Radov
+ * @see <a href="https://developer.garmin.com/fit/protocol/">FIT Protocol</a>
+ */
+public final class DirectFitEncoder implements DiveEncoder {
+
+	/**
+	 * Local message numbers, one per message type. Compressed timestamp headers
+	 * can only refer to local message numbers 0 to 3, so those are reserved for the
+	 * compact records.
+	 */
+	private static final int LOCAL_COMPACT_RECORD = 0, LOCAL_COMPACT_RECORD_DEPTH = 1, LOCAL_RECORD = 2,
+			LOCAL_RECORD_DEPTH = 3, LOCAL_FILE_ID = 4, LOCAL_DEVICE_INFO = 5, LOCAL_EVENT = 6, LOCAL_LAP = 7, LOCAL_DIVE_SUMMARY = 8,
+			LOCAL_SESSION = 9, LOCAL_ACTIVITY = 10;
+
+	/** Number of local message numbers in use. */
+	private static final int LOCAL_MESG_COUNT = 11;
+
+	/** Largest time difference which fits in a compressed timestamp header. */
+	private static final int MAX_COMPRESSED_TIME_OFFSET = Fit.HDR_TIME_OFFSET_MASK;
+
+	/** Scale of the depth and time fields, which are stored in thousandths. */
+	private static final double SCALE = 1000.0;
+
+	/** Architecture byte for little endian definition messages. */
+	private static final byte ARCHITECTURE_LITTLE_ENDIAN = 0;
+
+	private static final int UINT16_INVALID = 0xFFFF;
+
+	private static final long UINT32_INVALID = 0xFFFFFFFFL;
+
+	/**
+	 * Field definitions as {field number, size, base type} triples. The data
+	 * messages are written with the fields in the same order.
+	 */
+	private static final int[][] FILE_ID_FIELDS = { { FileIdMesg.TypeFieldNum, 1, Fit.BASE_TYPE_ENUM },
+			{ FileIdMesg.ManufacturerFieldNum, 2, Fit.BASE_TYPE_UINT16 },
+			{ FileIdMesg.TimeCreatedFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ FileIdMesg.SerialNumberFieldNum, 4, Fit.BASE_TYPE_UINT32Z } };
+
+	private static final int[][] EVENT_FIELDS = { { EventMesg.TimestampFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ EventMesg.EventFieldNum, 1, Fit.BASE_TYPE_ENUM },
+			{ EventMesg.EventTypeFieldNum, 1, Fit.BASE_TYPE_ENUM } };
+
+	private static final int[][] RECORD_FIELDS = { { RecordMesg.TimestampFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ RecordMesg.DepthFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ RecordMesg.TemperatureFieldNum, 1, Fit.BASE_TYPE_SINT8 } };
+
+	/** Record fields when the temperature hasn't changed. */
+	private static final int[][] RECORD_DEPTH_FIELDS = { { RecordMesg.TimestampFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ RecordMesg.DepthFieldNum, 4, Fit.BASE_TYPE_UINT32 } };
+
+	/** Record fields when the timestamp is in a compressed header. */
+	private static final int[][] COMPACT_RECORD_FIELDS = { { RecordMesg.DepthFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ RecordMesg.TemperatureFieldNum, 1, Fit.BASE_TYPE_SINT8 } };
+
+	/** Record fields when the timestamp is in a compressed header and the temperature hasn't changed. */
+	private static final int[][] COMPACT_RECORD_DEPTH_FIELDS = {
+			{ RecordMesg.DepthFieldNum, 4, Fit.BASE_TYPE_UINT32 } };
+
+	private static final int[][] LAP_FIELDS = { { LapMesg.MessageIndexFieldNum, 2, Fit.BASE_TYPE_UINT16 },
+			{ LapMesg.TimestampFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ LapMesg.StartTimeFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ LapMesg.TotalElapsedTimeFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ LapMesg.TotalTimerTimeFieldNum, 4, Fit.BASE_TYPE_UINT32 } };
+
+	private static final int[][] DIVE_SUMMARY_FIELDS = {
+			{ DiveSummaryMesg.SurfaceIntervalFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ DiveSummaryMesg.TimestampFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ DiveSummaryMesg.AvgDepthFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ DiveSummaryMesg.MaxDepthFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ DiveSummaryMesg.DiveNumberFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ DiveSummaryMesg.BottomTimeFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ DiveSummaryMesg.ReferenceMesgFieldNum, 2, Fit.BASE_TYPE_UINT16 },
+			{ DiveSummaryMesg.ReferenceIndexFieldNum, 2, Fit.BASE_TYPE_UINT16 } };
+
+	private static final int[][] SESSION_FIELDS = { { SessionMesg.MessageIndexFieldNum, 2, Fit.BASE_TYPE_UINT16 },
+			{ SessionMesg.TimestampFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ SessionMesg.StartTimeFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ SessionMesg.TotalElapsedTimeFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ SessionMesg.TotalTimerTimeFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ SessionMesg.SportFieldNum, 1, Fit.BASE_TYPE_ENUM },
+			{ SessionMesg.SubSportFieldNum, 1, Fit.BASE_TYPE_ENUM },
+			{ SessionMesg.FirstLapIndexFieldNum, 2, Fit.BASE_TYPE_UINT16 },
+			{ SessionMesg.NumLapsFieldNum, 2, Fit.BASE_TYPE_UINT16 } };
+
+	private static final int[][] ACTIVITY_FIELDS = { { ActivityMesg.TimestampFieldNum, 4, Fit.BASE_TYPE_UINT32 },
+			{ ActivityMesg.NumSessionsFieldNum, 2, Fit.BASE_TYPE_UINT16 },
+			{ ActivityMesg.TotalTimerTimeFieldNum, 4, Fit.BASE_TYPE_UINT32 } };
+
+	/** Size of a record data message including the header byte. */
+	private static final int RECORD_MESG_SIZE = 1 + 4 + 4 + 1;
+
+	/** Generous upper bound for everything in a file except the records. */
+	private static final int FIXED_CONTENT_SIZE = 1024;
+
+	private final boolean compact;
+
+	private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+	private final boolean[] defined = new boolean[LOCAL_MESG_COUNT];
+
+	/** Size the last file would have had without compact mode. */
+	private int standardSize;
+
+	/** Start time of the file being encoded. */
+	private long start;
+
+	/** Position of the first record, and the number of records so far. */
+	private int recordsStart, records;
+
+	/** Timestamp and temperature of the previous record, for compact mode. */
+	private long previousTimestamp;
+
+	private byte previousTemperature;
+
+	/** Create an encoder which writes every record in full. */
+	public DirectFitEncoder() {
+		this(false);
+	}
+
+	/**
+	 * @param compact {@code true} to write records with compressed timestamp
+	 *                headers and without repeated temperatures
+	 */
+	public DirectFitEncoder(final boolean compact) {
+		this.compact = compact;
+	}
+
+	/**
+	 * Get the size the most recently encoded file would have had if every record
+	 * had been written in full. This is the same as the actual size unless the
+	 * encoder is in compact mode.
+	 *
+	 * @return file size in bytes
+	 */
+	@Override
+	public int getStandardSize() {
+		return standardSize;
+	}
+
+	/**
+	 * Encode a dive and write it to a file, replacing any existing file.
+	 *
+	 * @param dive dive to encode
+	 * @param file output FIT file
+	 * @return file size in bytes
+	 * @throws IOException if an error occurs while writing the file
+	 */
+	public int write(final Dive dive, final Path file) throws IOException {
+		final ByteBuffer encoded = encode(dive);
+		final int size = encoded.remaining();
+		try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (encoded.hasRemaining()) {
+				channel.write(encoded);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Encode a dive as a complete FIT activity file.
+	 *
+	 * @param dive dive to encode
+	 * @return buffer positioned at the start of the file and limited to its
+	 *         length; the buffer is reused by the next call to this method
+	 */
+	@Override
+	public ByteBuffer encode(final Dive dive) {
+		final DiveProfile profile = dive.getProfile();
+		begin(dive.getStartTime().getTimestamp(), dive.getSerialNumber(), dive.getManufacturer(),
+				dive.getProductName(), profile.size());
+		for (int i = 0; i < profile.size(); i++) {
+			record(profile.getTimestamp(i), profile.getDepth(i), profile.getTemperature(i));
+		}
+		return end(dive.getEndTime().getTimestamp(), dive.hasSurfaceTime() ? dive.getSurfaceTime() : UINT32_INVALID,
+				dive.getAvgDepth(), dive.getMaxDepth(), dive.getDiveNumber(), dive.getBottomTime());
+	}
+
+	/**
+	 * Start encoding a file one record at a time, for callers which read the
+	 * samples of a dive as a stream instead of from a {@link Dive}. The messages
+	 * before the records are written straight away. A file is encoded by calling
+	 * this method, then {@link #record(long, float, byte)} for each sample, and
+	 * then {@link #end(long, long, float, float, long, float)}, which produces
+	 * exactly the same bytes as {@link #encode(Dive)} for the same values.
+	 *
+	 * @param start           start time in seconds since the FIT epoch
+	 * @param serialNumber    dive computer serial number
+	 * @param manufacturer    dive computer manufacturer, or {@code null}
+	 * @param productName     dive computer model name, or {@code null}
+	 * @param expectedRecords number of records to make room for; the buffer
+	 *                        grows if there are more
+	 */
+	public void begin(final long start, final long serialNumber, final Integer manufacturer,
+			final String productName, final int expectedRecords) {
+		final byte[] productNameField = toFitString(productName);
+		begin(FIXED_CONTENT_SIZE + productNameField.length + expectedRecords * RECORD_MESG_SIZE);
+		this.start = start;
+
+		define(LOCAL_FILE_ID, MesgNum.FILE_ID, FILE_ID_FIELDS);
+		buffer.put((byte) LOCAL_FILE_ID);
+		buffer.put((byte) File.ACTIVITY.getValue());
+		putUint16(Manufacturer.SUUNTO);
+		putUint32(start);
+		putUint32(serialNumber);
+
+		define(LOCAL_DEVICE_INFO, MesgNum.DEVICE_INFO,
+				new int[][] { { DeviceInfoMesg.DeviceIndexFieldNum, 1, Fit.BASE_TYPE_UINT8 },
+						{ DeviceInfoMesg.ManufacturerFieldNum, 2, Fit.BASE_TYPE_UINT16 },
+						{ DeviceInfoMesg.ProductNameFieldNum, productNameField.length, Fit.BASE_TYPE_STRING },
+						{ DeviceInfoMesg.SerialNumberFieldNum, 4, Fit.BASE_TYPE_UINT32Z },
+						{ DeviceInfoMesg.TimestampFieldNum, 4, Fit.BASE_TYPE_UINT32 } });
+		buffer.put((byte) LOCAL_DEVICE_INFO);
+		buffer.put((byte) DeviceIndex.CREATOR);
+		putUint16(manufacturer == null ? UINT16_INVALID : manufacturer);
+		buffer.put(productNameField);
+		putUint32(serialNumber);
+		putUint32(start);
+
+		writeEvent(start, EventType.START);
+
+		recordsStart = buffer.position();
+		records = 0;
+		// the start event is the last message with a timestamp before the records
+		previousTimestamp = start;
+		previousTemperature = 0;
+	}
+
+	/**
+	 * Write the record of a sample, after {@link #begin(long, long, Integer, String, int)}.
+	 *
+	 * @param timestamp   sample time in seconds since the FIT epoch
+	 * @param depth       depth in meters
+	 * @param temperature temperature in degrees Celsius
+	 */
+	public void record(final long timestamp, final float depth, final byte temperature) {
+		// a full record and both record definitions at most
+		ensureRemaining(RECORD_MESG_SIZE + 2 * definitionSize(RECORD_FIELDS));
+		if (compact) {
+			writeCompactRecord(timestamp, depth, temperature);
+		} else {
+			define(LOCAL_RECORD, MesgNum.RECORD, RECORD_FIELDS);
+			writeRecord(timestamp, depth, temperature);
+		}
+		records++;
+	}
+
+	/**
+	 * Write the messages after the records and finish the file.
+	 *
+	 * @param end          end time in seconds since the FIT epoch
+	 * @param surfaceTime  surface interval before the dive in seconds, or
+	 *                     {@code 0xFFFFFFFF} if it isn't known
+	 * @param avgDepth     average depth in meters
+	 * @param maxDepth     maximum depth in meters
+	 * @param diveNumber   dive log number
+	 * @param bottomTime   dive run time in seconds
+	 * @return buffer positioned at the start of the file and limited to its
+	 *         length; the buffer is reused by the next file
+	 */
+	public ByteBuffer end(final long end, final long surfaceTime, final float avgDepth, final float maxDepth,
+			final long diveNumber, final float bottomTime) {
+		final int recordsSize = buffer.position() - recordsStart;
+		ensureRemaining(FIXED_CONTENT_SIZE);
+
+		// Timer Events are a BEST PRACTICE for FIT ACTIVITY files
+		writeEvent(end, EventType.STOP_ALL);
+
+		// Every FIT ACTIVITY file MUST contain at least one Lap message
+		final float elapsedTime = (float) (end - start);
+		define(LOCAL_LAP, MesgNum.LAP, LAP_FIELDS);
+		buffer.put((byte) LOCAL_LAP);
+		putUint16(0);
+		putUint32(start);
+		putUint32(start);
+		putScaled(elapsedTime);
+		putScaled(elapsedTime);
+
+		define(LOCAL_DIVE_SUMMARY, MesgNum.DIVE_SUMMARY, DIVE_SUMMARY_FIELDS);
+		buffer.put((byte) LOCAL_DIVE_SUMMARY);
+		putUint32(surfaceTime);
+		putUint32(start);
+		putScaled(avgDepth);
+		putScaled(maxDepth);
+		putUint32(diveNumber);
+		putScaled(bottomTime);
+		putUint16(MesgNum.SESSION);
+		putUint16(0);
+
+		// Every FIT ACTIVITY file MUST contain at least one Session message
+		define(LOCAL_SESSION, MesgNum.SESSION, SESSION_FIELDS);
+		buffer.put((byte) LOCAL_SESSION);
+		putUint16(0);
+		putUint32(start);
+		putUint32(start);
+		putScaled(elapsedTime);
+		putScaled(elapsedTime);
+		buffer.put((byte) Sport.DIVING.getValue());
+		buffer.put((byte) SubSport.GAUGE_DIVING.getValue());
+		putUint16(0);
+		putUint16(1);
+
+		// Every FIT ACTIVITY file MUST contain EXACTLY one Activity message
+		define(LOCAL_ACTIVITY, MesgNum.ACTIVITY, ACTIVITY_FIELDS);
+		buffer.put((byte) LOCAL_ACTIVITY);
+		putUint32(start);
+		putUint16(1);
+		putScaled(elapsedTime);
+
+		final ByteBuffer encoded = finish();
+		// a standard encoder only defines the record message if it writes a record
+		standardSize = encoded.limit() - recordsSize
+				+ (records == 0 ? 0 : definitionSize(RECORD_FIELDS) + records * RECORD_MESG_SIZE);
+		return encoded;
+	}
+
+	private void writeRecord(final long timestamp, final float depth, final byte temperature) {
+		buffer.put((byte) LOCAL_RECORD);
+		putUint32(timestamp);
+		putScaled(depth);
+		buffer.put(temperature);
+	}
+
+	/** Write a record with a compressed timestamp header where possible. */
+	private void writeCompactRecord(final long timestamp, final float depth, final byte temperature) {
+		final long timeOffset = timestamp - previousTimestamp;
+		final boolean temperatureChanged = records == 0 || temperature != previousTemperature;
+		if (timeOffset < 0 || timeOffset > MAX_COMPRESSED_TIME_OFFSET) {
+			if (temperatureChanged) {
+				define(LOCAL_RECORD, MesgNum.RECORD, RECORD_FIELDS);
+				writeRecord(timestamp, depth, temperature);
+			} else {
+				define(LOCAL_RECORD_DEPTH, MesgNum.RECORD, RECORD_DEPTH_FIELDS);
+				buffer.put((byte) LOCAL_RECORD_DEPTH);
+				putUint32(timestamp);
+				putScaled(depth);
+			}
+		} else {
+			final int localNum = temperatureChanged ? LOCAL_COMPACT_RECORD : LOCAL_COMPACT_RECORD_DEPTH;
+			define(localNum, MesgNum.RECORD, temperatureChanged ? COMPACT_RECORD_FIELDS : COMPACT_RECORD_DEPTH_FIELDS);
+			buffer.put((byte) (Fit.HDR_TIME_REC_BIT | (localNum << Fit.HDR_TIME_TYPE_SHIFT)
+					| (timestamp & Fit.HDR_TIME_OFFSET_MASK)));
+			putScaled(depth);
+			if (temperatureChanged) {
+				buffer.put(temperature);
+			}
+		}
+		previousTimestamp = timestamp;
+		previousTemperature = temperature;
+	}
+
+	private void writeEvent(final long timestamp, final EventType eventType) {
+		define(LOCAL_EVENT, MesgNum.EVENT, EVENT_FIELDS);
+		buffer.put((byte) LOCAL_EVENT);
+		putUint32(timestamp);
+		buffer.put((byte) Event.TIMER.getValue());
+		buffer.put((byte) eventType.getValue());
+	}
+
+	/**
+	 * Start a new file. The header is filled in by {@link #finish()}.
+	 *
+	 * @param capacity upper bound for the file size
+	 */
+	private void begin(final int capacity) {
+		final int required = Fit.FILE_HDR_SIZE + capacity + Fit.CRC_SIZE;
+		if (buffer.capacity() < required) {
+			buffer = ByteBuffer.allocate(Math.max(required, buffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		buffer.clear();
+		buffer.position(Fit.FILE_HDR_SIZE);
+		Arrays.fill(defined, false);
+	}
+
+	/**
+	 * Make room for more of the file, keeping what has been written so far.
+	 *
+	 * @param size number of bytes about to be written
+	 */
+	private void ensureRemaining(final int size) {
+		final int required = buffer.position() + size + Fit.CRC_SIZE;
+		if (buffer.capacity() < required) {
+			final ByteBuffer larger = ByteBuffer.allocate(Math.max(required, buffer.capacity() * 2))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.flip();
+			larger.put(buffer);
+			buffer = larger;
+		}
+	}
+
+	/**
+	 * Write the file header and the trailing CRC.
+	 *
+	 * @return buffer positioned at the start of the file and limited to its length
+	 */
+	private ByteBuffer finish() {
+		final int dataSize = buffer.position() - Fit.FILE_HDR_SIZE;
+		buffer.put(0, (byte) Fit.FILE_HDR_SIZE);
+		buffer.put(1, (byte) Fit.ProtocolVersion.V2_0.getVersion());
+		buffer.putShort(2, (short) Fit.PROFILE_VERSION);
+		buffer.putInt(4, dataSize);
+		buffer.put(8, (byte) '.');
+		buffer.put(9, (byte) 'F');
+		buffer.put(10, (byte) 'I');
+		buffer.put(11, (byte) 'T');
+		buffer.putShort(12, (short) crc(0, Fit.FILE_HDR_SIZE - Fit.CRC_SIZE));
+		buffer.putShort((short) crc(0, buffer.position()));
+		buffer.flip();
+		return buffer;
+	}
+
+	/** Compute the FIT CRC of part of the buffer. */
+	private int crc(final int offset, final int length) {
+		final byte[] array = buffer.array();
+		int crc = 0;
+		for (int i = offset; i < offset + length; i++) {
+			crc = CRC.get16(crc, array[i]);
+		}
+		return crc;
+	}
+
+	/** Get the size of a definition message. */
+	private static int definitionSize(final int[][] fields) {
+		return Fit.HDR_SIZE + 5 + fields.length * 3;
+	}
+
+	/** Write a definition message, unless it has already been written to the file. */
+	private void define(final int localNum, final int globalNum, final int[][] fields) {
+		if (defined[localNum]) {
+			return;
+		}
+		defined[localNum] = true;
+		buffer.put((byte) (Fit.HDR_TYPE_DEF_BIT | localNum));
+		buffer.put((byte) 0); // reserved
+		buffer.put(ARCHITECTURE_LITTLE_ENDIAN);
+		buffer.putShort((short) globalNum);
+		buffer.put((byte) fields.length);
+		for (final int[] field : fields) {
+			buffer.put((byte) field[0]);
+			buffer.put((byte) field[1]);
+			buffer.put((byte) field[2]);
+		}
+	}
+
+	private void putUint16(final int value) {
+		buffer.putShort((short) value);
+	}
+
+	private void putUint32(final long value) {
+		buffer.putInt((int) (value < 0 || value >= UINT32_INVALID ? UINT32_INVALID : value));
+	}
+
+	/** Write a value stored in thousandths, rounded the same way as the FIT SDK. */
+	private void putScaled(final float value) {
+		putUint32(Math.round(value * SCALE));
+	}
+
+	/**
+	 * Convert a string to a null terminated UTF-8 FIT string field.
+	 *
+	 * @param value string, may be {@code null}
+	 * @return encoded bytes, at most {@link Fit#MAX_FIELD_SIZE} long
+	 */
+	private static byte[] toFitString(final String value) {
+		final byte[] utf8 = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+		final int length = Math.min(utf8.length, Fit.MAX_FIELD_SIZE - 1);
+		final byte[] field = new byte[length + 1];
+		System.arraycopy(utf8, 0, field, 0, length);
+		return field;
+	}
+
+}
@@ -0,0 +1,33 @@
+package com.github.nradov.sdetofit.fit;
+
+import java.nio.ByteBuffer;
+
+import com.github.nradov.sdetofit.Dive;
+
+/**
+ * Encodes a dive as a complete FIT activity file. Implementations are not
+ * required to be thread safe, so use one instance per thread.
+ *
+ * @author Nick Radov
+ */
+public interface DiveEncoder {
+
+	/**
+	 * Encode a dive.
+	 *
+	 * @param dive dive to encode
+	 * @return buffer positioned at the start of the file and limited to its
+	 *         length; the buffer may be reused by the next call to this method
+	 */
+	ByteBuffer encode(Dive dive);
+
+	/**
+	 * Get the size the most recently encoded file would have had if every record
+	 * had been written in full, for reporting how much smaller a compact encoding
+	 * is.
+	 *
+	 * @return file size in bytes
+	 */
+	int getStandardSize();
+
+}
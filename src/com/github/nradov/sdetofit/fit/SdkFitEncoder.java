@@ -0,0 +1,138 @@
+package com.github.nradov.sdetofit.fit;
+
+import java.nio.ByteBuffer;
+
+import com.garmin.fit.ActivityMesg;
+import com.garmin.fit.BufferEncoder;
+import com.garmin.fit.DeviceIndex;
+import com.garmin.fit.DeviceInfoMesg;
+import com.garmin.fit.DiveSummaryMesg;
+import com.garmin.fit.Event;
+import com.garmin.fit.EventMesg;
+import com.garmin.fit.EventType;
+import com.garmin.fit.File;
+import com.garmin.fit.FileIdMesg;
+import com.garmin.fit.Fit;
+import com.garmin.fit.LapMesg;
+import com.garmin.fit.Manufacturer;
+import com.garmin.fit.MesgNum;
+import com.garmin.fit.RecordMesg;
+import com.garmin.fit.SessionMesg;
+import com.garmin.fit.Sport;
+import com.garmin.fit.SubSport;
+import com.github.nradov.sdetofit.Dive;
+
+/**
+ * Encodes dives through the Garmin FIT SDK {@code BufferEncoder}, building a
+ * {@code Mesg} object for each message.
+ *
+ * @author Nick Radov
+ */
+public final class SdkFitEncoder implements DiveEncoder {
+
+	private int size;
+
+	@Override
+	public ByteBuffer encode(final Dive dive) {
+		final var encode = new BufferEncoder(Fit.ProtocolVersion.V2_0);
+
+		final var fileIdMesg = new FileIdMesg();
+		fileIdMesg.setType(File.ACTIVITY);
+		fileIdMesg.setManufacturer(Manufacturer.SUUNTO);
+		fileIdMesg.setTimeCreated(dive.getStartTime());
+		fileIdMesg.setSerialNumber(dive.getSerialNumber());
+		encode.write(fileIdMesg);
+
+		final var deviceInfoMesg = new DeviceInfoMesg();
+		deviceInfoMesg.setDeviceIndex(DeviceIndex.CREATOR);
+		deviceInfoMesg.setManufacturer(dive.getManufacturer());
+		deviceInfoMesg.setProductName(dive.getProductName()); // Max 20 Chars
+		deviceInfoMesg.setSerialNumber(dive.getSerialNumber());
+		deviceInfoMesg.setTimestamp(dive.getStartTime());
+		encode.write(deviceInfoMesg);
+
+		final var eventMesg = new EventMesg();
+		eventMesg.setTimestamp(dive.getStartTime());
+		eventMesg.setEvent(Event.TIMER);
+		eventMesg.setEventType(EventType.START);
+		encode.write(eventMesg);
+
+		// the encoder writes each message immediately so one record message can be
+		// reused for every sample
+		final var profile = dive.getProfile();
+		final var recordMesg = new RecordMesg();
+		for (int i = 0; i < profile.size(); i++) {
+			recordMesg.setFieldValue(RecordMesg.TimestampFieldNum, 0, profile.getTimestamp(i),
+					Fit.SUBFIELD_INDEX_MAIN_FIELD);
+			recordMesg.setDepth(profile.getDepth(i));
+			recordMesg.setTemperature(profile.getTemperature(i));
+			encode.write(recordMesg);
+		}
+
+		// Timer Events are a BEST PRACTICE for FIT ACTIVITY files
+		final var eventMesgStop = new EventMesg();
+		eventMesgStop.setTimestamp(dive.getEndTime());
+		eventMesgStop.setEvent(Event.TIMER);
+		eventMesgStop.setEventType(EventType.STOP_ALL);
+		encode.write(eventMesgStop);
+
+		// Every FIT ACTIVITY file MUST contain at least one Lap message
+		final var lapMesg = new LapMesg();
+		lapMesg.setMessageIndex(0);
+		lapMesg.setTimestamp(dive.getStartTime());
+		lapMesg.setStartTime(dive.getStartTime());
+		final var elapsedTime = (float) (dive.getEndTime().getTimestamp() - dive.getStartTime().getTimestamp());
+		lapMesg.setTotalElapsedTime(elapsedTime);
+		lapMesg.setTotalTimerTime(elapsedTime);
+		encode.write(lapMesg);
+
+		final var diveSummaryMesg1 = new DiveSummaryMesg();
+        diveSummaryMesg1.setSurfaceInterval(dive.hasSurfaceTime() ? dive.getSurfaceTime() : Fit.UINT32_INVALID);
+		diveSummaryMesg1.setTimestamp(dive.getStartTime());
+		diveSummaryMesg1.setAvgDepth(dive.getAvgDepth());
+		diveSummaryMesg1.setMaxDepth(dive.getMaxDepth());
+		diveSummaryMesg1.setDiveNumber(dive.getDiveNumber());
+		diveSummaryMesg1.setBottomTime(dive.getBottomTime());
+		diveSummaryMesg1.setReferenceMesg(MesgNum.SESSION);
+		diveSummaryMesg1.setReferenceIndex(0);
+		encode.write(diveSummaryMesg1);
+
+		// Every FIT ACTIVITY file MUST contain at least one Session message
+		final var sessionMesg = new SessionMesg();
+		sessionMesg.setMessageIndex(0);
+		sessionMesg.setTimestamp(dive.getStartTime());
+		sessionMesg.setStartTime(dive.getStartTime());
+		sessionMesg.setTotalElapsedTime(elapsedTime);
+		sessionMesg.setTotalTimerTime(elapsedTime);
+		sessionMesg.setSport(Sport.DIVING);
+		sessionMesg.setSubSport(SubSport.GAUGE_DIVING);
+		sessionMesg.setFirstLapIndex(0);
+		sessionMesg.setNumLaps(1);
+		encode.write(sessionMesg);
+
+		// Every FIT ACTIVITY file MUST contain EXACTLY one Activity message
+		final var activityMesg = new ActivityMesg();
+		activityMesg.setTimestamp(dive.getStartTime());
+		activityMesg.setNumSessions(1);
+		activityMesg.setTotalTimerTime(elapsedTime);
+		encode.write(activityMesg);
+
+		final byte[] encoded = encode.close();
+		size = encoded.length;
+		return ByteBuffer.wrap(encoded);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>
+	 * The SDK encoder always writes records in full, so this is the size of the
+	 * most recently encoded file.
+	 * </p>
+	 */
+	@Override
+	public int getStandardSize() {
+		return size;
+	}
+
+}
@@ -0,0 +1,6 @@
+/**
+ * Binary FIT file encoding.
+ *
+ * @author Nick Radov
+ */
+package com.github.nradov.sdetofit.fit;
@@ -0,0 +1,209 @@
+package com.github.nradov.sdetofit.report;
+
+import com.github.nradov.sdetofit.Dive;
+import com.github.nradov.sdetofit.DiveProfile;
+
+/**
+ * Statistics of a single dive, computed in one pass over its profile so that
+ * the dive can be garbage collected straight away. Instances are immutable.
+ *
+ * @author Nick Radov
+ */
+public final class DiveStatistics {
+
+	/** Default maximum ascent rate in meters per minute. */
+	public static final float DEFAULT_MAX_ASCENT_RATE = 10;
+
+	/**
+	 * Shortest time in seconds over which an ascent rate is measured, so that a
+	 * single noisy depth reading in a profile sampled every second isn't
+	 * reported as a fast ascent.
+	 */
+	static final int ASCENT_RATE_WINDOW = 10;
+
+	/** Value of {@link #getSurfaceTime()} when the dive log doesn't have it. */
+	public static final long NO_SURFACE_TIME = -1;
+
+	private final long serialNumber;
+
+	private final String productName;
+
+	private final long diveNumber;
+
+	private final long startTime;
+
+	private final int duration;
+
+	private final float maxDepth;
+
+	private final float bottomTime;
+
+	private final long surfaceTime;
+
+	private final float maxAscentRate;
+
+	private final int ascentViolations;
+
+	private final int ascentViolationSeconds;
+
+	private final int minTemperature;
+
+	private final int[] temperatureSeconds;
+
+	private DiveStatistics(final Dive dive, final long startTime, final int duration, final float maxDepth,
+			final float maxAscentRate, final int ascentViolations, final int ascentViolationSeconds,
+			final int minTemperature, final int[] temperatureSeconds) {
+		serialNumber = dive.getSerialNumber();
+		productName = dive.getProductName();
+		diveNumber = dive.getDiveNumber();
+		surfaceTime = dive.hasSurfaceTime() ? dive.getSurfaceTime() : NO_SURFACE_TIME;
+		bottomTime = dive.getBottomTime();
+		this.startTime = startTime;
+		this.duration = duration;
+		this.maxDepth = maxDepth;
+		this.maxAscentRate = maxAscentRate;
+		this.ascentViolations = ascentViolations;
+		this.ascentViolationSeconds = ascentViolationSeconds;
+		this.minTemperature = minTemperature;
+		this.temperatureSeconds = temperatureSeconds;
+	}
+
+	/**
+	 * Compute the statistics of a dive. The ascent rate at each sample is the
+	 * rise in depth since the latest sample at least {@value #ASCENT_RATE_WINDOW}
+	 * seconds earlier. A violation starts when the rate goes over the maximum,
+	 * and lasts until it drops back to the maximum or below.
+	 *
+	 * @param dive          dive
+	 * @param maxAscentRate maximum ascent rate in meters per minute
+	 * @return statistics
+	 */
+	public static DiveStatistics of(final Dive dive, final float maxAscentRate) {
+		final DiveProfile profile = dive.getProfile();
+		final int size = profile.size();
+		float maxDepth = 0;
+		int minTemperature = Byte.MAX_VALUE;
+		int maxTemperature = Byte.MIN_VALUE;
+		for (int i = 0; i < size; i++) {
+			maxDepth = Math.max(maxDepth, profile.getDepth(i));
+			minTemperature = Math.min(minTemperature, profile.getTemperature(i));
+			maxTemperature = Math.max(maxTemperature, profile.getTemperature(i));
+		}
+
+		// time spent at each temperature, counting each sample until the next one
+		final int[] temperatureSeconds = new int[Math.max(0, maxTemperature - minTemperature + 1)];
+		for (int i = 0; i + 1 < size; i++) {
+			temperatureSeconds[profile.getTemperature(i) - minTemperature] += profile.getTimeOffset(i + 1)
+					- profile.getTimeOffset(i);
+		}
+
+		float fastest = 0;
+		int violations = 0;
+		int violationSeconds = 0;
+		boolean violating = false;
+		int from = 0;
+		for (int i = 1; i < size; i++) {
+			final int time = profile.getTimeOffset(i);
+			while (time - profile.getTimeOffset(from + 1) >= ASCENT_RATE_WINDOW) {
+				from++;
+			}
+			final int elapsed = time - profile.getTimeOffset(from);
+			if (elapsed < ASCENT_RATE_WINDOW) {
+				continue;
+			}
+			final float rate = (profile.getDepth(from) - profile.getDepth(i)) * 60 / elapsed;
+			fastest = Math.max(fastest, rate);
+			if (rate > maxAscentRate) {
+				if (!violating) {
+					violations++;
+					violating = true;
+				}
+				violationSeconds += time - profile.getTimeOffset(i - 1);
+			} else {
+				violating = false;
+			}
+		}
+
+		final int duration = size == 0 ? 0 : profile.getTimeOffset(size - 1);
+		return new DiveStatistics(dive, dive.getStartTime().getTimestamp(), duration, maxDepth, fastest, violations,
+				violationSeconds, minTemperature, temperatureSeconds);
+	}
+
+	/** Get the dive computer serial number. */
+	public long getSerialNumber() {
+		return serialNumber;
+	}
+
+	/** Get the dive computer model name. */
+	public String getProductName() {
+		return productName;
+	}
+
+	/** Get the dive log number. */
+	public long getDiveNumber() {
+		return diveNumber;
+	}
+
+	/** Get the start time in seconds since the FIT epoch. */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/** Get the time from the first sample to the last in seconds. */
+	public int getDuration() {
+		return duration;
+	}
+
+	/** Get the deepest sample depth in meters. */
+	public float getMaxDepth() {
+		return maxDepth;
+	}
+
+	/** Get the dive run time in seconds recorded by the dive computer. */
+	public float getBottomTime() {
+		return bottomTime;
+	}
+
+	/**
+	 * Get the surface interval before the dive.
+	 *
+	 * @return seconds, or {@link #NO_SURFACE_TIME}
+	 */
+	public long getSurfaceTime() {
+		return surfaceTime;
+	}
+
+	/** Get the fastest ascent rate in meters per minute. */
+	public float getMaxAscentRate() {
+		return maxAscentRate;
+	}
+
+	/** Get the number of times the ascent rate went over the maximum. */
+	public int getAscentViolations() {
+		return ascentViolations;
+	}
+
+	/** Get the time spent ascending faster than the maximum in seconds. */
+	public int getAscentViolationSeconds() {
+		return ascentViolationSeconds;
+	}
+
+	/**
+	 * Get the time spent at a temperature.
+	 *
+	 * @param temperature temperature in degrees Celsius
+	 * @return seconds
+	 */
+	public int getTemperatureSeconds(final int temperature) {
+		final int index = temperature - minTemperature;
+		return index >= 0 && index < temperatureSeconds.length ? temperatureSeconds[index] : 0;
+	}
+
+	/** Add the time spent at each temperature to a histogram indexed from {@link Byte#MIN_VALUE}. */
+	void addTemperatureSeconds(final long[] histogram) {
+		for (int i = 0; i < temperatureSeconds.length; i++) {
+			histogram[minTemperature + i - Byte.MIN_VALUE] += temperatureSeconds[i];
+		}
+	}
+
+}
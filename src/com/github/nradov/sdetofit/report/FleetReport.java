@@ -0,0 +1,329 @@
+package com.github.nradov.sdetofit.report;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Statistics aggregated over any number of dives: a summary per dive computer,
+ * the time spent at each water temperature and a histogram of surface
+ * intervals. A report isn't thread safe, but reports filled by separate
+ * threads can be combined, so it can be the mutable container of a parallel
+ * {@link java.util.stream.Stream#collect} or of fork/join tasks.
+ *
+ * @author Nick Radov
+ */
+public final class FleetReport {
+
+	/**
+	 * Upper bounds of the surface interval histogram buckets in minutes. Each
+	 * bucket holds the intervals at least as long as the previous bound and
+	 * shorter than its own, and a last bucket holds the longer intervals.
+	 */
+	static final int[] SURFACE_INTERVAL_BOUNDS = { 10, 30, 60, 120, 240, 720, 1440 };
+
+	private final Map<Long, DeviceStatistics> devices = new TreeMap<>();
+
+	/** Seconds at each temperature, indexed from {@link Byte#MIN_VALUE}. */
+	private final long[] temperatureSeconds = new long[256];
+
+	private final long[] surfaceIntervals = new long[SURFACE_INTERVAL_BOUNDS.length + 1];
+
+	private long unknownSurfaceIntervals;
+
+	/**
+	 * Add a dive.
+	 *
+	 * @param dive dive statistics
+	 */
+	public void add(final DiveStatistics dive) {
+		devices.computeIfAbsent(dive.getSerialNumber(), serial -> new DeviceStatistics(serial, dive.getProductName()))
+				.add(dive);
+		dive.addTemperatureSeconds(temperatureSeconds);
+		if (dive.getSurfaceTime() == DiveStatistics.NO_SURFACE_TIME) {
+			unknownSurfaceIntervals++;
+		} else {
+			surfaceIntervals[surfaceIntervalBucket(dive.getSurfaceTime())]++;
+		}
+	}
+
+	private static int surfaceIntervalBucket(final long seconds) {
+		int bucket = 0;
+		while (bucket < SURFACE_INTERVAL_BOUNDS.length && seconds >= SURFACE_INTERVAL_BOUNDS[bucket] * 60L) {
+			bucket++;
+		}
+		return bucket;
+	}
+
+	/**
+	 * Add every dive of another report.
+	 *
+	 * @param other report, which is left unchanged
+	 */
+	public void combine(final FleetReport other) {
+		for (final DeviceStatistics device : other.devices.values()) {
+			devices.computeIfAbsent(device.serialNumber, serial -> new DeviceStatistics(serial, device.productName))
+					.combine(device);
+		}
+		for (int i = 0; i < temperatureSeconds.length; i++) {
+			temperatureSeconds[i] += other.temperatureSeconds[i];
+		}
+		for (int i = 0; i < surfaceIntervals.length; i++) {
+			surfaceIntervals[i] += other.surfaceIntervals[i];
+		}
+		unknownSurfaceIntervals += other.unknownSurfaceIntervals;
+	}
+
+	/**
+	 * Get the summary of each dive computer.
+	 *
+	 * @return summaries in serial number order
+	 */
+	public Collection<DeviceStatistics> getDevices() {
+		return Collections.unmodifiableCollection(devices.values());
+	}
+
+	/** Get the total number of dives. */
+	public long getDives() {
+		long dives = 0;
+		for (final DeviceStatistics device : devices.values()) {
+			dives += device.dives;
+		}
+		return dives;
+	}
+
+	/**
+	 * Write the report as CSV. There is one table for each part of the report,
+	 * each with its own header row, separated by an empty line. The last row of
+	 * the surface interval table has neither bound, and counts the dives whose
+	 * surface interval isn't known.
+	 *
+	 * @param out where to write the report
+	 * @throws IOException if an error occurs while writing
+	 */
+	public void writeCsv(final Appendable out) throws IOException {
+		out.append("serial_number,product_name,dives,first_dive,last_dive,max_depth_m,max_bottom_time_s,"
+				+ "total_bottom_time_s,max_ascent_rate_m_per_min,ascent_violations,ascent_violation_s,"
+				+ "dives_with_ascent_violations\n");
+		for (final DeviceStatistics device : devices.values()) {
+			out.append(String.format(Locale.US, "%d,%s,%d,%d,%d,%.2f,%.0f,%.0f,%.2f,%d,%d,%d\n", device.serialNumber,
+					csv(device.productName), device.dives, device.firstDive, device.lastDive, device.maxDepth,
+					device.maxBottomTime, device.totalBottomTime, device.maxAscentRate, device.ascentViolations,
+					device.ascentViolationSeconds, device.divesWithAscentViolations));
+		}
+		out.append("\ntemperature_c,seconds\n");
+		for (int i = 0; i < temperatureSeconds.length; i++) {
+			if (temperatureSeconds[i] > 0) {
+				out.append(String.format(Locale.US, "%d,%d\n", i + Byte.MIN_VALUE, temperatureSeconds[i]));
+			}
+		}
+		out.append("\nsurface_interval_min_from,surface_interval_min_to,dives\n");
+		for (int i = 0; i < surfaceIntervals.length; i++) {
+			out.append(String.format(Locale.US, "%d,%s,%d\n", i == 0 ? 0 : SURFACE_INTERVAL_BOUNDS[i - 1],
+					i < SURFACE_INTERVAL_BOUNDS.length ? Integer.toString(SURFACE_INTERVAL_BOUNDS[i]) : "",
+					surfaceIntervals[i]));
+		}
+		out.append(String.format(Locale.US, ",,%d\n", unknownSurfaceIntervals));
+	}
+
+	/** Quote a CSV field if needed. */
+	private static String csv(final String field) {
+		if (field == null) {
+			return "";
+		}
+		return field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 ? field
+				: '"' + field.replace("\"", "\"\"") + '"';
+	}
+
+	/**
+	 * Get the report as a JSON object. Surface interval buckets without an upper
+	 * bound have a {@code null} one, and the dives whose surface interval isn't
+	 * known are counted separately.
+	 *
+	 * @return JSON object
+	 */
+	public String toJson() {
+		final var json = new StringBuilder(512);
+		json.append("{\"dives\":").append(getDives()).append(",\"devices\":[");
+		boolean first = true;
+		for (final DeviceStatistics device : devices.values()) {
+			if (!first) {
+				json.append(',');
+			}
+			first = false;
+			json.append("{\"serialNumber\":").append(device.serialNumber).append(",\"productName\":");
+			string(json, device.productName);
+			json.append(String.format(Locale.US,
+					",\"dives\":%d,\"firstDive\":%d,\"lastDive\":%d,\"maxDepth\":%.2f,\"maxBottomTime\":%.0f,"
+							+ "\"totalBottomTime\":%.0f,\"maxAscentRate\":%.2f,\"ascentViolations\":%d,"
+							+ "\"ascentViolationSeconds\":%d,\"divesWithAscentViolations\":%d}",
+					device.dives, device.firstDive, device.lastDive, device.maxDepth, device.maxBottomTime,
+					device.totalBottomTime, device.maxAscentRate, device.ascentViolations,
+					device.ascentViolationSeconds, device.divesWithAscentViolations));
+		}
+		json.append("],\"temperatureSeconds\":{");
+		first = true;
+		for (int i = 0; i < temperatureSeconds.length; i++) {
+			if (temperatureSeconds[i] > 0) {
+				if (!first) {
+					json.append(',');
+				}
+				first = false;
+				json.append('"').append(i + Byte.MIN_VALUE).append("\":").append(temperatureSeconds[i]);
+			}
+		}
+		json.append("},\"surfaceIntervals\":[");
+		for (int i = 0; i < surfaceIntervals.length; i++) {
+			json.append(i == 0 ? "" : ",").append("{\"fromMinutes\":").append(i == 0 ? 0 : SURFACE_INTERVAL_BOUNDS[i - 1])
+					.append(",\"toMinutes\":")
+					.append(i < SURFACE_INTERVAL_BOUNDS.length ? Integer.toString(SURFACE_INTERVAL_BOUNDS[i]) : "null")
+					.append(",\"dives\":").append(surfaceIntervals[i]).append('}');
+		}
+		json.append("],\"unknownSurfaceIntervals\":").append(unknownSurfaceIntervals).append('}');
+		return json.toString();
+	}
+
+	/** Append a JSON string, or {@code null}. */
+	private static void string(final StringBuilder json, final String s) {
+		if (s == null) {
+			json.append("null");
+			return;
+		}
+		json.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < ' ') {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+
+	/**
+	 * Summary of the dives of one dive computer.
+	 *
+	 * @author Nick Radov
+	 */
+	public static final class DeviceStatistics {
+
+		private final long serialNumber;
+
+		private final String productName;
+
+		private long dives;
+
+		private long firstDive = Long.MAX_VALUE, lastDive = Long.MIN_VALUE;
+
+		private float maxDepth;
+
+		private float maxBottomTime;
+
+		private double totalBottomTime;
+
+		private float maxAscentRate;
+
+		private long ascentViolations, ascentViolationSeconds, divesWithAscentViolations;
+
+		DeviceStatistics(final long serialNumber, final String productName) {
+			this.serialNumber = serialNumber;
+			this.productName = productName;
+		}
+
+		void add(final DiveStatistics dive) {
+			dives++;
+			firstDive = Math.min(firstDive, dive.getDiveNumber());
+			lastDive = Math.max(lastDive, dive.getDiveNumber());
+			maxDepth = Math.max(maxDepth, dive.getMaxDepth());
+			maxBottomTime = Math.max(maxBottomTime, dive.getBottomTime());
+			totalBottomTime += dive.getBottomTime();
+			maxAscentRate = Math.max(maxAscentRate, dive.getMaxAscentRate());
+			ascentViolations += dive.getAscentViolations();
+			ascentViolationSeconds += dive.getAscentViolationSeconds();
+			if (dive.getAscentViolations() > 0) {
+				divesWithAscentViolations++;
+			}
+		}
+
+		void combine(final DeviceStatistics other) {
+			dives += other.dives;
+			firstDive = Math.min(firstDive, other.firstDive);
+			lastDive = Math.max(lastDive, other.lastDive);
+			maxDepth = Math.max(maxDepth, other.maxDepth);
+			maxBottomTime = Math.max(maxBottomTime, other.maxBottomTime);
+			totalBottomTime += other.totalBottomTime;
+			maxAscentRate = Math.max(maxAscentRate, other.maxAscentRate);
+			ascentViolations += other.ascentViolations;
+			ascentViolationSeconds += other.ascentViolationSeconds;
+			divesWithAscentViolations += other.divesWithAscentViolations;
+		}
+
+		/** Get the dive computer serial number. */
+		public long getSerialNumber() {
+			return serialNumber;
+		}
+
+		/** Get the dive computer model name. */
+		public String getProductName() {
+			return productName;
+		}
+
+		/** Get the number of dives. */
+		public long getDives() {
+			return dives;
+		}
+
+		/** Get the lowest dive log number. */
+		public long getFirstDive() {
+			return firstDive;
+		}
+
+		/** Get the highest dive log number. */
+		public long getLastDive() {
+			return lastDive;
+		}
+
+		/** Get the deepest depth of any dive in meters. */
+		public float getMaxDepth() {
+			return maxDepth;
+		}
+
+		/** Get the longest bottom time of any dive in seconds. */
+		public float getMaxBottomTime() {
+			return maxBottomTime;
+		}
+
+		/** Get the bottom time of all of the dives in seconds. */
+		public double getTotalBottomTime() {
+			return totalBottomTime;
+		}
+
+		/** Get the fastest ascent rate of any dive in meters per minute. */
+		public float getMaxAscentRate() {
+			return maxAscentRate;
+		}
+
+		/** Get the number of times any dive ascended faster than the maximum. */
+		public long getAscentViolations() {
+			return ascentViolations;
+		}
+
+		/** Get the time spent ascending faster than the maximum in seconds. */
+		public long getAscentViolationSeconds() {
+			return ascentViolationSeconds;
+		}
+
+		/** Get the number of dives which ascended faster than the maximum. */
+		public long getDivesWithAscentViolations() {
+			return divesWithAscentViolations;
+		}
+
+	}
+
+}
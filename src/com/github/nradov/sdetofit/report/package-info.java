@@ -0,0 +1,6 @@
+/**
+ * Statistics aggregated over many parsed dives.
+ *
+ * @author Nick Radov
+ */
+package com.github.nradov.sdetofit.report;
@@ -0,0 +1,69 @@
+package com.github.nradov.sdetofit.suunto;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Text content of the header elements of a dive log, collected while the
+ * document is streamed. Only the first occurrence of each element is kept, which
+ * matches the behavior of looking the element up by tag name in a DOM tree.
+ *
+ * @author Nick Radov
+ */
+final class DiveLogHeader {
+
+	private final Set<String> elementNames;
+
+	private final Map<String, String> values = new HashMap<>();
+
+	/**
+	 * @param elementNames names of the header elements to collect
+	 */
+	DiveLogHeader(final Set<String> elementNames) {
+		this.elementNames = elementNames;
+	}
+
+	/**
+	 * Check whether an element is one of the header elements which haven't been
+	 * read yet.
+	 *
+	 * @param elementName local element name
+	 * @return {@code true} if the element content should be passed to
+	 *         {@link #put(String, String)}
+	 */
+	boolean accepts(final String elementName) {
+		return elementNames.contains(elementName) && !values.containsKey(elementName);
+	}
+
+	void put(final String elementName, final String text) {
+		values.putIfAbsent(elementName, text.trim());
+	}
+
+	/**
+	 * Get the trimmed text content of a header element.
+	 *
+	 * @param elementName local element name
+	 * @return element text content
+	 * @throws IllegalArgumentException if the dive log doesn't contain the element
+	 */
+	String get(final String elementName) {
+		final String value = values.get(elementName);
+		if (value == null) {
+			throw new IllegalArgumentException("dive log doesn't contain a " + elementName + " element");
+		}
+		return value;
+	}
+
+	/**
+	 * Get the trimmed text content of a header element which may be missing.
+	 *
+	 * @param elementName local element name
+	 * @return element text content, or an empty string if the dive log doesn't
+	 *         contain the element
+	 */
+	String getOptional(final String elementName) {
+		return values.getOrDefault(elementName, "");
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.github.nradov.sdetofit.suunto;
+
+import java.util.Arrays;
+
+/**
+ * Growable primitive arrays holding the raw samples read while a dive log is
+ * being streamed. Samples are only validated against the header once the whole
+ * document has been read, because some header values (such as the number of
+ * samples in an SML file) are not known until then.
+ *
+ * @author Nick Radov
+ */
+final class SampleBuffer {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private int[] times = new int[INITIAL_CAPACITY];
+
+	/** Depth in meters, or {@link Float#NaN} if the sample has no depth. */
+	private float[] depths = new float[INITIAL_CAPACITY];
+
+	/** Temperature in degrees Celsius. */
+	private byte[] temperatures = new byte[INITIAL_CAPACITY];
+
+	private int size;
+
+	void add(final int time, final float depth, final byte temperature) {
+		if (size == times.length) {
+			final int capacity = size * 2;
+			times = Arrays.copyOf(times, capacity);
+			depths = Arrays.copyOf(depths, capacity);
+			temperatures = Arrays.copyOf(temperatures, capacity);
+		}
+		times[size] = time;
+		depths[size] = depth;
+		temperatures[size] = temperature;
+		size++;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int getTime(final int index) {
+		return times[index];
+	}
+
+	boolean hasDepth(final int index) {
+		return !Float.isNaN(depths[index]);
+	}
+
+	float getDepth(final int index) {
+		return depths[index];
+	}
+
+	byte getTemperature(final int index) {
+		return temperatures[index];
+	}
+
+	/**
+	 * Check that no sample is later than the dive duration given in the header.
+	 *
+	 * @param diveSeconds dive duration in seconds according to the header
+	 * @throws IllegalStateException if a sample is later than the dive duration
+	 */
+	void validate(final int diveSeconds) {
+		for (int i = 0; i < size; i++) {
+			if (times[i] > diveSeconds) {
+				throw new IllegalStateException("sample at time " + times[i] + " doesn't match header");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package com.github.nradov.sdetofit.suunto;
+
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Helper methods for reading dive logs with a StAX pull parser.
+ *
+ * @author Nick Radov
+ */
+final class StreamingXml {
+
+	/**
+	 * Looking up the StAX implementation scans the class path for a service
+	 * configuration, so it is only done once per process. The factory is only
+	 * configured when it is created, and the JDK implementation can create
+	 * readers from any number of threads at the same time.
+	 */
+	private static final XMLInputFactory INPUT_FACTORY = createFactory();
+
+	private StreamingXml() {
+		// not to be instantiated
+	}
+
+	/**
+	 * Create the shared factory. Dive logs never have a DTD, and documents such
+	 * as server uploads come from outside, so DTDs and external entities are
+	 * turned off. A document can then neither read local files nor expand
+	 * entities until it runs out of memory.
+	 */
+	private static XMLInputFactory createFactory() {
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+
+	/**
+	 * Create a pull parser with the shared factory.
+	 *
+	 * @param is XML document
+	 * @return pull parser positioned before the start of the document
+	 * @throws XMLStreamException if the document can't be read
+	 */
+	static XMLStreamReader createReader(final InputStream is) throws XMLStreamException {
+		return INPUT_FACTORY.createXMLStreamReader(is);
+	}
+
+	/**
+	 * Read the text content of selected descendants of the current element. On
+	 * return the reader is positioned at the end tag of the current element. Only
+	 * the first occurrence of each descendant is kept.
+	 *
+	 * @param reader pull parser positioned at a start tag
+	 * @param names  local names of the descendant elements to read
+	 * @param values receives the text content of each element in {@code names},
+	 *               or {@code null} if the element isn't present
+	 * @throws XMLStreamException if the XML is not well formed
+	 */
+	static void readChildren(final XMLStreamReader reader, final String[] names, final String[] values)
+			throws XMLStreamException {
+		Arrays.fill(values, null);
+		int depth = 1;
+		while (depth > 0) {
+			final int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				final int index = indexOf(names, reader.getLocalName());
+				if (index >= 0 && values[index] == null) {
+					// reading the text consumes the end tag
+					values[index] = reader.getElementText();
+				} else {
+					depth++;
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	private static int indexOf(final String[] names, final String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+}
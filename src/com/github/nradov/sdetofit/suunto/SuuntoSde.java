@@ -1,21 +1,44 @@
 package com.github.nradov.sdetofit.suunto;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
 import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLStreamException;
 
+import com.github.nradov.sdetofit.ConversionMetrics;
 import com.github.nradov.sdetofit.Dive;
+import com.github.nradov.sdetofit.DiveHeader;
+import com.github.nradov.sdetofit.DiveReader;
 import com.github.nradov.sdetofit.DivesSource;
+import com.github.nradov.sdetofit.TranscodedDive;
+import com.github.nradov.sdetofit.fit.DirectFitEncoder;
 
 /**
  * Read data from Suunto
@@ -29,28 +52,400 @@ public class SuuntoSde implements DivesSource {
 
 	private final ZipFile zipFile;
 
-	private final NavigableSet<Dive> dives = new TreeSet<>();
+	private final int parallelism;
+
+	/** Time zone the dive computer clock was set to. */
+	private final ZoneId zone;
+
+	/** All dives, only parsed if requested through {@link #getDives()}. */
+	private NavigableSet<Dive> dives;
 
-	public SuuntoSde(final String pathname)
-			throws ZipException, IOException, ParserConfigurationException, SAXException {
+	private volatile ConversionMetrics metrics = new ConversionMetrics();
+
+	public SuuntoSde(final String pathname) throws ZipException, IOException {
 		this(Paths.get(pathname));
 	}
 
-	public SuuntoSde(final Path file)
-			throws ZipException, IOException, ParserConfigurationException, SAXException {
-		zipFile = new ZipFile(file.toFile());
-		final Enumeration<? extends ZipEntry> entries = zipFile.entries();
-		while (entries.hasMoreElements()) {
-			final ZipEntry entry = entries.nextElement();
-			System.out.println("Converting dive log: \"" + entry.getName() + "\"");
-			dives.add(new SuuntoXml(zipFile.getInputStream(entry)));
+	public SuuntoSde(final Path file) throws ZipException, IOException {
+		this(file, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Open an export file. The dive logs it contains aren't parsed until they are
+	 * requested through {@link #getDives()} or {@link #stream(boolean)}.
+	 *
+	 * @param file        Suunto Dive Manager export file
+	 * @param parallelism maximum number of entries to parse at the same time in
+	 *                    {@link #getDives()}
+	 * @throws ZipException if an error occurs while opening the export file
+	 * @throws IOException  if an error occurs while opening the export file
+	 */
+	public SuuntoSde(final Path file, final int parallelism) throws ZipException, IOException {
+		this(file, parallelism, ZoneId.systemDefault());
+	}
+
+	/**
+	 * Open an export file with its times in a given time zone.
+	 *
+	 * @param file        Suunto Dive Manager export file
+	 * @param parallelism maximum number of entries to parse at the same time in
+	 *                    {@link #getDives()}
+	 * @param zone        time zone the dive computer clock was set to
+	 * @throws ZipException if an error occurs while opening the export file
+	 * @throws IOException  if an error occurs while opening the export file
+	 */
+	public SuuntoSde(final Path file, final int parallelism, final ZoneId zone)
+			throws ZipException, IOException {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
 		}
-		
+		zipFile = new ZipFile(file.toFile());
+		this.parallelism = parallelism;
+		this.zone = Objects.requireNonNull(zone);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>
+	 * On the first call all of the Zip entries are inflated and parsed
+	 * concurrently, but the dives are collected in entry order so the result is the
+	 * same as reading the entries one at a time.
+	 * </p>
+	 *
+	 * @throws UncheckedIOException if an error occurs while reading the export file
+	 *                              or parsing one of its entries; the message
+	 *                              identifies the entry
+	 */
 	@Override
-	public NavigableSet<Dive> getDives() {
+	public synchronized NavigableSet<Dive> getDives() {
+		if (dives == null) {
+			try {
+				dives = parseAll();
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
 		return dives;
 	}
 
+	private NavigableSet<Dive> parseAll() throws IOException {
+		final NavigableSet<Dive> parsedDives = new TreeSet<>();
+		final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			final List<ZipEntry> entries = new ArrayList<>();
+			final List<Future<SuuntoXml>> parsed = new ArrayList<>();
+			final Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+			while (zipEntries.hasMoreElements()) {
+				final ZipEntry entry = zipEntries.nextElement();
+				if (!entry.isDirectory()) {
+					entries.add(entry);
+					parsed.add(executor.submit(() -> parse(entry)));
+				}
+			}
+			for (int i = 0; i < entries.size(); i++) {
+				parsedDives.add(get(entries.get(i), parsed.get(i)));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return parsedDives;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>
+	 * Only one dive is held in memory at a time no matter how many entries the
+	 * export contains. For chronological order the header of every entry is read
+	 * first, which only parses up to the first sample and keeps just the header
+	 * for each dive.
+	 * </p>
+	 */
+	@Override
+	public Stream<Dive> stream(final boolean chronological) {
+		return readers(chronological).map(reader -> {
+			try {
+				return reader.call();
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			} catch (final RuntimeException e) {
+				throw e;
+			} catch (final Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>
+	 * Each task inflates and parses one Zip entry. Errors are thrown as an
+	 * {@link IOException} which identifies the entry.
+	 * </p>
+	 */
+	@Override
+	public Stream<DiveReader> readers(final boolean chronological) {
+		final Stream<EntryReader> readers = zipFile.stream().filter(entry -> !entry.isDirectory())
+				.map(EntryReader::new);
+		if (chronological) {
+			// the sort is stable so dives starting at the same time stay in entry order
+			return readers.sorted(Comparator.comparingLong(EntryReader::getStartTime)).map(DiveReader.class::cast);
+		}
+		return readers.map(DiveReader.class::cast);
+	}
+
+	/**
+	 * Reads the dive in a Zip entry. The checksum and size come from the Zip
+	 * directory, so they are known without inflating the entry. The header is
+	 * read from the start of the entry, without parsing the samples, and kept for
+	 * later calls.
+	 */
+	private final class EntryReader implements DiveReader {
+
+		private final ZipEntry entry;
+
+		private DiveHeader header;
+
+		EntryReader(final ZipEntry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public String getName() {
+			return entry.getName();
+		}
+
+		@Override
+		public long getCrc() {
+			return entry.getCrc();
+		}
+
+		@Override
+		public long getSize() {
+			return entry.getSize();
+		}
+
+		@Override
+		public synchronized DiveHeader getHeader() throws IOException {
+			if (header == null) {
+				try (final InputStream is = zipFile.getInputStream(entry)) {
+					header = SuuntoXml.readHeader(is, zone);
+				} catch (final IOException | XMLStreamException | RuntimeException e) {
+					throw new IOException("unable to read the header of dive log \"" + entry.getName() + "\"", e);
+				}
+			}
+			return header;
+		}
+
+		private long getStartTime() {
+			try {
+				return getHeader().getStartTime().getTimestamp();
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		public Dive call() throws IOException {
+			try {
+				return parse(entry);
+			} catch (final IOException | XMLStreamException e) {
+				throw new IOException("unable to parse dive log \"" + entry.getName() + "\"", e);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 *
+		 * <p>
+		 * The entry is parsed as it is inflated, so the inflated dive log is never
+		 * held in memory either, and the time is reported as a single stage.
+		 * </p>
+		 */
+		@Override
+		public TranscodedDive transcode(final DirectFitEncoder encoder) throws IOException {
+			final ConversionMetrics runMetrics = metrics;
+			final TranscodedDive transcoded;
+			final var timer = runMetrics.start(ConversionMetrics.Stage.TRANSCODE, entry.getName());
+			try (final InputStream is = zipFile.getInputStream(entry)) {
+				transcoded = SuuntoXml.transcode(is, zone, encoder);
+			} catch (final IOException | XMLStreamException e) {
+				throw new IOException("unable to parse dive log \"" + entry.getName() + "\"", e);
+			} finally {
+				timer.stop();
+			}
+			if (transcoded != null) {
+				runMetrics.addBytesRead(entry.getCompressedSize(), entry.getSize());
+			}
+			return transcoded;
+		}
+
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>
+	 * The time spent inflating each entry is added up while it is parsed, and the
+	 * compressed and inflated sizes of each entry are counted as the bytes read.
+	 * </p>
+	 */
+	@Override
+	public void setMetrics(final ConversionMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	private SuuntoXml parse(final ZipEntry entry) throws IOException, XMLStreamException {
+		final ConversionMetrics runMetrics = metrics;
+		final SuuntoXml xml;
+		final var timer = runMetrics.start(ConversionMetrics.Stage.PARSE, entry.getName());
+		try (final var is = new InflateTimingInputStream(zipFile.getInputStream(entry))) {
+			xml = new SuuntoXml(is, zone);
+			runMetrics.addStageNanos(ConversionMetrics.Stage.INFLATE, is.nanos);
+		} finally {
+			timer.stop();
+		}
+		runMetrics.addBytesRead(entry.getCompressedSize(), entry.getSize());
+		return xml;
+	}
+
+	/**
+	 * Adds up the time spent reading an entry, which is the time taken to inflate
+	 * it, without holding the inflated entry in memory.
+	 */
+	private static final class InflateTimingInputStream extends FilterInputStream {
+
+		private long nanos;
+
+		InflateTimingInputStream(final InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final long start = System.nanoTime();
+			try {
+				return super.read();
+			} finally {
+				nanos += System.nanoTime() - start;
+			}
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			final long start = System.nanoTime();
+			try {
+				return super.read(b, off, len);
+			} finally {
+				nanos += System.nanoTime() - start;
+			}
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			final long start = System.nanoTime();
+			try {
+				return super.skip(n);
+			} finally {
+				nanos += System.nanoTime() - start;
+			}
+		}
+
+	}
+
+	/**
+	 * Read the dives in an export file from a stream, one Zip entry at a time, for
+	 * input which isn't a seekable file such as a network upload or a pipe. Each
+	 * entry is parsed as it is read, in the order the entries are stored, so only
+	 * one dive is held in memory at a time. Errors are thrown as
+	 * {@link UncheckedIOException} by the returned stream. The input stream is
+	 * left open.
+	 *
+	 * @param is export file contents
+	 * @return dives
+	 */
+	public static Stream<Dive> stream(final InputStream is) {
+		return stream(is, ZoneId.systemDefault());
+	}
+
+	/**
+	 * Read the dives in an export file from a stream, with their times in a given
+	 * time zone.
+	 *
+	 * @param is   export file contents
+	 * @param zone time zone the dive computer clock was set to
+	 * @return dives
+	 * @see #stream(InputStream)
+	 */
+	public static Stream<Dive> stream(final InputStream is, final ZoneId zone) {
+		final var zipStream = new ZipInputStream(is);
+		// the XML parser closes its input at the end of the document
+		final InputStream entryStream = new FilterInputStream(zipStream) {
+
+			@Override
+			public void close() {
+				// the next entry is read from the same stream
+			}
+
+		};
+		final Iterator<Dive> dives = new Iterator<>() {
+
+			private ZipEntry entry;
+
+			@Override
+			public boolean hasNext() {
+				try {
+					while (entry == null) {
+						entry = zipStream.getNextEntry();
+						if (entry == null) {
+							return false;
+						} else if (entry.isDirectory()) {
+							entry = null;
+						}
+					}
+					return true;
+				} catch (final IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			@Override
+			public Dive next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				final String name = entry.getName();
+				entry = null;
+				try {
+					return new SuuntoXml(entryStream, zone);
+				} catch (final IOException | XMLStreamException | RuntimeException e) {
+					throw new UncheckedIOException(new IOException("unable to parse dive log \"" + name + "\"", e));
+				}
+			}
+
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(dives, Spliterator.ORDERED), false);
+	}
+
+	private static SuuntoXml get(final ZipEntry entry, final Future<SuuntoXml> future) throws IOException {
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			final var interrupted = new InterruptedIOException(
+					"interrupted while parsing dive log \"" + entry.getName() + "\"");
+			interrupted.initCause(e);
+			throw interrupted;
+		} catch (final ExecutionException e) {
+			throw new IOException("unable to parse dive log \"" + entry.getName() + "\"", e.getCause());
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		zipFile.close();
+	}
+
 }
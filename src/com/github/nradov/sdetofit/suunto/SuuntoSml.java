@@ -5,28 +5,24 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.time.ZoneId;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.GregorianCalendar;
-import java.util.List;
 import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TimeZone;
 import java.util.TreeSet;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import com.garmin.fit.DateTime;
 import com.garmin.fit.Manufacturer;
 import com.github.nradov.sdetofit.Dive;
+import com.github.nradov.sdetofit.DiveProfile;
 import com.github.nradov.sdetofit.DivesSource;
-import com.github.nradov.sdetofit.Record;
 import com.github.nradov.sdetofit.SdeToFit;
 
 /**
@@ -40,27 +36,81 @@ public class SuuntoSml implements Dive, DivesSource {
 	private final long diveNumber;
 	private final float maxDepth, meanDepth;
 
-	private final Element suunto;
-
 	/* XML document root element name. */
 	private static final String DOCUMENT_ELEMENT_NAME = "sml";
 
-	public SuuntoSml(final Path file) throws ParserConfigurationException, SAXException, IOException {
-		this(new FileInputStream(file.toFile()));
+	/** Header elements which are read from the document. */
+	private static final Set<String> HEADER_ELEMENT_NAMES = Set.of("DateTime", "Duration", "Max", "Avg",
+			"NumberInSeries", "Name", "SerialNumber", "SampleInterval");
+
+	/** Element containing a single data point. */
+	private static final String SAMPLE_ELEMENT_NAME = "Sample";
+
+	/** Elements read from each sample, in the order used by {@link #readSample}. */
+	private static final String[] SAMPLE_CHILD_NAMES = { "Time", "Depth", "Temperature" };
+
+	public SuuntoSml(final Path file) throws IOException, XMLStreamException {
+		this(file, ZoneId.systemDefault());
+	}
+
+	/**
+	 * Read a dive log file.
+	 *
+	 * @param file dive log SML file
+	 * @param zone time zone the dive computer clock was set to
+	 * @throws IOException        if an error occurs while reading the dive log
+	 * @throws XMLStreamException if the dive log is not well formed XML
+	 */
+	public SuuntoSml(final Path file, final ZoneId zone) throws IOException, XMLStreamException {
+		this(new FileInputStream(file.toFile()), zone);
 	}
 	
-	public SuuntoSml(final InputStream is) throws ParserConfigurationException, SAXException, IOException {
-		final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-		final DocumentBuilder db = dbf.newDocumentBuilder();
-		final Document doc = db.parse(is);
-		suunto = doc.getDocumentElement();
-		
-		if (!DOCUMENT_ELEMENT_NAME.equals(suunto.getTagName())) {
-			throw new IllegalArgumentException(
-					"Document element name is " + suunto.getLocalName() + " instead of " + DOCUMENT_ELEMENT_NAME);
+	/**
+	 * Read a dive log in a single pass. Header values and samples are collected as
+	 * the document is streamed, without building a DOM tree.
+	 *
+	 * @param is dive log SML
+	 * @throws IOException        if an error occurs while reading the dive log
+	 * @throws XMLStreamException if the dive log is not well formed XML
+	 */
+	public SuuntoSml(final InputStream is) throws IOException, XMLStreamException {
+		this(is, ZoneId.systemDefault());
+	}
+
+	/**
+	 * Read a dive log in a single pass, with its times in a given time zone.
+	 *
+	 * @param is   dive log SML
+	 * @param zone time zone the dive computer clock was set to
+	 * @throws IOException        if an error occurs while reading the dive log
+	 * @throws XMLStreamException if the dive log is not well formed XML
+	 */
+	public SuuntoSml(final InputStream is, final ZoneId zone) throws IOException, XMLStreamException {
+		final var header = new DiveLogHeader(HEADER_ELEMENT_NAMES);
+		final var samples = new SampleBuffer();
+		final XMLStreamReader reader = StreamingXml.createReader(is);
+		try {
+			reader.nextTag();
+			if (!DOCUMENT_ELEMENT_NAME.equals(reader.getLocalName())) {
+				throw new IllegalArgumentException(
+						"Document element name is " + reader.getLocalName() + " instead of " + DOCUMENT_ELEMENT_NAME);
+			}
+			final var sampleValues = new String[SAMPLE_CHILD_NAMES.length];
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					final String name = reader.getLocalName();
+					if (SAMPLE_ELEMENT_NAME.equals(name)) {
+						readSample(reader, sampleValues, samples);
+					} else if (header.accepts(name)) {
+						header.put(name, reader.getElementText());
+					}
+				}
+			}
+		} finally {
+			reader.close();
 		}
 
-		final String date = suunto.getElementsByTagName("DateTime").item(0).getTextContent();
+		final String date = header.get("DateTime");
 		final LocalDateTime dateTime = LocalDateTime.parse(date);
 
 		final int dayOfMonth = dateTime.getDayOfMonth();
@@ -71,21 +121,43 @@ public class SuuntoSml implements Dive, DivesSource {
 		final int second = dateTime.getSecond();
 
 
-		final Calendar startCalendar = new GregorianCalendar(year, month, dayOfMonth, hourOfDay, minute, second);
+		final Calendar startCalendar = new GregorianCalendar(TimeZone.getTimeZone(zone));
+		startCalendar.clear();
+		startCalendar.set(year, month, dayOfMonth, hourOfDay, minute, second);
 		start = new DateTime((startCalendar.getTimeInMillis() - SdeToFit.OFFSET_MS) / 1000);
-		final int diveTimeSec = Integer.valueOf(suunto.getElementsByTagName("Duration").item(0).getTextContent().trim());
+		final int diveTimeSec = Integer.valueOf(header.get("Duration"));
 
 		end = new DateTime(((startCalendar.getTimeInMillis() - SdeToFit.OFFSET_MS) / 1000) + diveTimeSec);
 
-		this.maxDepth = Float.parseFloat(suunto.getElementsByTagName("Max").item(0).getTextContent());
-		this.meanDepth = Float.parseFloat(suunto.getElementsByTagName("Avg").item(0).getTextContent());
+		this.maxDepth = Float.parseFloat(header.get("Max"));
+		this.meanDepth = Float.parseFloat(header.get("Avg"));
 
 		// TODO: fix this, as far as I could find the total dive number is not kept in SML
-		this.diveNumber = Integer.valueOf(suunto.getElementsByTagName("NumberInSeries").item(0).getTextContent());
+		this.diveNumber = Integer.valueOf(header.get("NumberInSeries"));
 
-		this.productName = suunto.getElementsByTagName("Name").item(0).getTextContent();
-		this.serialNumber = Long.valueOf(suunto.getElementsByTagName("SerialNumber").item(0).getTextContent());
-		populateRecords();
+		this.productName = header.get("Name");
+		this.serialNumber = Long.valueOf(header.get("SerialNumber"));
+		this.profile = createProfile(samples, Integer.valueOf(header.get("SampleInterval")));
+	}
+
+	private static void readSample(final XMLStreamReader reader, final String[] values, final SampleBuffer samples)
+			throws XMLStreamException {
+		StreamingXml.readChildren(reader, SAMPLE_CHILD_NAMES, values);
+		if (values[0] == null) {
+			throw new IllegalStateException("sample is missing a Time element");
+		}
+		final int sampleTime = Integer.valueOf(values[0].trim());
+		if (values[1] == null) {
+			// samples without a depth only contain events, they are still counted
+			samples.add(sampleTime, Float.NaN, (byte) 0);
+			return;
+		}
+		if (values[2] == null) {
+			throw new IllegalStateException("sample at time " + sampleTime + " is missing a Temperature element");
+		}
+		final float depth = Float.valueOf(values[1]);
+		final float temperature = Float.valueOf(values[2]) - 273.15f;
+		samples.add(sampleTime, depth, (byte) temperature);
 	}
 
 	@Override
@@ -98,44 +170,45 @@ public class SuuntoSml implements Dive, DivesSource {
 		return end;
 	}
 
-	private List<Record> records = new ArrayList<Record>();;
-
-	private void populateRecords() {
-
-		final NodeList samples = suunto.getElementsByTagName("Sample");
+	private final DiveProfile profile;
 
-		final int sampleCount = samples.getLength()+1;
-		final int sampleInterval = Integer
-				.valueOf(suunto.getElementsByTagName("SampleInterval").item(0).getTextContent());
+	private DiveProfile createProfile(final SampleBuffer samples, final int sampleInterval) {
+		final int sampleCount = samples.size()+1;
 		final int diveSeconds = sampleCount * sampleInterval;
-		final DateTime dateTime = new DateTime(start);
+		samples.validate(diveSeconds);
 
-		for (int i = 0; i < samples.getLength(); i++) {
-			final var sample = (Element) samples.item(i);
-			final int sampleTime = Integer.valueOf(sample.getElementsByTagName("Time").item(0).getTextContent());
-			if (sampleTime > diveSeconds) {
-				throw new IllegalStateException("sample at time " + sampleTime + " doesn't match header");
+		int recordCount = 0;
+		for (int i = 0; i < samples.size(); i++) {
+			if (samples.hasDepth(i)) {
+				recordCount++;
 			}
+		}
+		final int[] timeOffsets = new int[recordCount];
+		final float[] depths = new float[recordCount];
+		final byte[] temperatures = new byte[recordCount];
 
-			if (sample.getElementsByTagName("Depth").item(0) == null) {
+		int record = 0;
+		for (int i = 0; i < samples.size(); i++) {
+			if (!samples.hasDepth(i)) {
 				continue;
 			}
 
-			final float depth = Float.valueOf(sample.getElementsByTagName("Depth").item(0).getTextContent());
-			final float temperature = Float.valueOf(sample.getElementsByTagName("Temperature").item(0).getTextContent()) - 273.15f;
-			final var record = new Record(dateTime, depth, (byte) temperature);
-			records.add(record);
-			dateTime.add(sampleInterval);
+			timeOffsets[record] = record * sampleInterval;
+			depths[record] = samples.getDepth(i);
+			temperatures[record] = samples.getTemperature(i);
+			record++;
 		}
+		return new DiveProfile(start.getTimestamp(), timeOffsets, depths, temperatures);
 	}
 
-	public List<Record> getRecords() {
-		return Collections.unmodifiableList(records);
+	@Override
+	public DiveProfile getProfile() {
+		return profile;
 	}
 
 	@Override
 	public int compareTo(final Dive o) {
-		return getStartTime().compareTo(o.getStartTime());
+		return Dive.compare(this, o);
 	}
 
 	@Override
@@ -178,6 +251,12 @@ public class SuuntoSml implements Dive, DivesSource {
         throw new UnsupportedOperationException();
     }
 
+	/** SML dive logs aren't read for the surface interval time yet. */
+	@Override
+	public boolean hasSurfaceTime() {
+		return false;
+	}
+
 	@Override
 	public NavigableSet<Dive> getDives() {
 		return new TreeSet<Dive>(Collections.singleton(this));
@@ -3,30 +3,30 @@ package com.github.nradov.sdetofit.suunto;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.time.ZoneId;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.GregorianCalendar;
-import java.util.List;
 import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TimeZone;
 import java.util.TreeSet;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import com.garmin.fit.DateTime;
 import com.garmin.fit.Manufacturer;
 import com.github.nradov.sdetofit.Dive;
+import com.github.nradov.sdetofit.DiveHeader;
+import com.github.nradov.sdetofit.DiveProfile;
 import com.github.nradov.sdetofit.DivesSource;
-import com.github.nradov.sdetofit.Record;
 import com.github.nradov.sdetofit.SdeToFit;
+import com.github.nradov.sdetofit.TranscodedDive;
+import com.github.nradov.sdetofit.fit.DirectFitEncoder;
 
 /**
  * Single dive profile in Suunto XML format. The format is not documented so I
@@ -53,57 +53,273 @@ public class SuuntoXml implements Dive, DivesSource {
     private final long surfaceTime;
 	private final float maxDepth, meanDepth;
 
-	private final Element suunto;
-
 	/* XML document root element name. */
 	private static final String DOCUMENT_ELEMENT_NAME = "SUUNTO";
 
-	public SuuntoXml(final Path file) throws ParserConfigurationException, SAXException, IOException {
-		this(new FileInputStream(file.toFile()));
+	/** Header elements which are read from the document. */
+	private static final Set<String> HEADER_ELEMENT_NAMES = Set.of("SAMPLECNT", "DATE", "TIME", "SAMPLEINTERVAL",
+			"DIVETIMESEC", "MAXDEPTH", "MEANDEPTH", "LOGTITLE", "SURFACETIME", "DEVICEMODEL", "WRISTOPID",
+			"WATERTEMPMAXDEPTH");
+
+	/**
+	 * Header elements which have to come before the first sample for the dive log
+	 * to be transcoded in one pass.
+	 */
+	private static final String[] LEADING_HEADER_ELEMENT_NAMES = { "SAMPLECNT", "DATE", "TIME", "SAMPLEINTERVAL",
+			"DEVICEMODEL", "WRISTOPID", "WATERTEMPMAXDEPTH" };
+
+	/** Element containing a single data point. */
+	private static final String SAMPLE_ELEMENT_NAME = "SAMPLE";
+
+	/** Elements read from each sample, in the order used by {@link #readSample}. */
+	private static final String[] SAMPLE_CHILD_NAMES = { "SAMPLETIME", "DEPTH", "TEMPERATURE" };
+
+	public SuuntoXml(final Path file) throws IOException, XMLStreamException {
+		this(file, ZoneId.systemDefault());
+	}
+
+	/**
+	 * Read a dive log file.
+	 *
+	 * @param file dive log XML file
+	 * @param zone time zone the dive computer clock was set to
+	 * @throws IOException        if an error occurs while reading the dive log
+	 * @throws XMLStreamException if the dive log is not well formed XML
+	 */
+	public SuuntoXml(final Path file, final ZoneId zone) throws IOException, XMLStreamException {
+		this(new FileInputStream(file.toFile()), zone);
 	}
 	
-	public SuuntoXml(final InputStream is) throws ParserConfigurationException, SAXException, IOException {
-		final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-		final DocumentBuilder db = dbf.newDocumentBuilder();
-		final Document doc = db.parse(is);
-		suunto = doc.getDocumentElement();
-		
-		final int sampleCnt = Integer.valueOf(suunto.getElementsByTagName("SAMPLECNT").item(0).getTextContent());
-		final String date = suunto.getElementsByTagName("DATE").item(0).getTextContent();
+	/**
+	 * Read a dive log in a single pass. Header values and samples are collected as
+	 * the document is streamed, without building a DOM tree.
+	 *
+	 * @param is dive log XML
+	 * @throws IOException        if an error occurs while reading the dive log
+	 * @throws XMLStreamException if the dive log is not well formed XML
+	 */
+	public SuuntoXml(final InputStream is) throws IOException, XMLStreamException {
+		this(is, ZoneId.systemDefault());
+	}
+
+	/**
+	 * Read a dive log in a single pass, with its times in a given time zone.
+	 *
+	 * @param is   dive log XML
+	 * @param zone time zone the dive computer clock was set to
+	 * @throws IOException        if an error occurs while reading the dive log
+	 * @throws XMLStreamException if the dive log is not well formed XML
+	 */
+	public SuuntoXml(final InputStream is, final ZoneId zone) throws IOException, XMLStreamException {
+		final var header = new DiveLogHeader(HEADER_ELEMENT_NAMES);
+		final var samples = new SampleBuffer();
+		final XMLStreamReader reader = StreamingXml.createReader(is);
+		try {
+			final var sampleValues = new String[SAMPLE_CHILD_NAMES.length];
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					final String name = reader.getLocalName();
+					if (SAMPLE_ELEMENT_NAME.equals(name)) {
+						readSample(reader, sampleValues, samples);
+					} else if (header.accepts(name)) {
+						header.put(name, reader.getElementText());
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		final int sampleCnt = Integer.valueOf(header.get("SAMPLECNT"));
+		final long startTimestamp = toTimestamp(header.get("DATE"), header.get("TIME"), zone);
+		final int sampleInterval = Integer.valueOf(header.get("SAMPLEINTERVAL"));
+		start = new DateTime(startTimestamp);
+		end = new DateTime(startTimestamp + diveSeconds(header));
+
+		this.maxDepth = Float.parseFloat(header.get("MAXDEPTH"));
+		this.meanDepth = Float.parseFloat(header.get("MEANDEPTH"));
+		this.diveNumber = diveNumber(header);
+		this.surfaceTime = Integer.valueOf(header.get("SURFACETIME"));
+		this.productName = header.get("DEVICEMODEL");
+		this.serialNumber = Long.valueOf(header.get("WRISTOPID"));
+		this.waterTemperatureMaxDepth = Byte.valueOf(header.get("WATERTEMPMAXDEPTH"));
+		this.profile = createProfile(samples, sampleCnt * sampleInterval, sampleInterval);
+	}
+
+	/**
+	 * Read only the header of a dive log. Parsing stops at the first sample, so
+	 * this is much cheaper than constructing the whole dive.
+	 *
+	 * @param is   dive log XML
+	 * @param zone time zone the dive computer clock was set to
+	 * @return header
+	 * @throws XMLStreamException if the dive log is not well formed XML
+	 */
+	static DiveHeader readHeader(final InputStream is, final ZoneId zone) throws XMLStreamException {
+		final var header = new DiveLogHeader(HEADER_ELEMENT_NAMES);
+		final XMLStreamReader reader = StreamingXml.createReader(is);
+		try {
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					final String name = reader.getLocalName();
+					if (SAMPLE_ELEMENT_NAME.equals(name)) {
+						break;
+					} else if (header.accepts(name)) {
+						header.put(name, reader.getElementText());
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return new DiveHeader(new DateTime(toTimestamp(header.get("DATE"), header.get("TIME"), zone)),
+				diveNumber(header), Long.valueOf(header.get("WRISTOPID")), header.get("DEVICEMODEL"),
+				Float.parseFloat(header.get("MAXDEPTH")), diveSeconds(header));
+	}
+
+	/**
+	 * Encode a dive log as a FIT file in a single pass, writing each sample to the
+	 * encoder as soon as it is parsed instead of collecting the samples first.
+	 * The file is the same as the one the encoder writes for the dive read by
+	 * {@link #SuuntoXml(InputStream)}, and the same exceptions are thrown for an
+	 * invalid dive log.
+	 *
+	 * @param is      dive log XML
+	 * @param zone    time zone the dive computer clock was set to
+	 * @param encoder FIT encoder
+	 * @return encoded dive, or {@code null} if the dive log has no samples or
+	 *         some of the header elements needed to encode the samples come after
+	 *         them
+	 * @throws XMLStreamException if the dive log is not well formed XML
+	 */
+	static TranscodedDive transcode(final InputStream is, final ZoneId zone, final DirectFitEncoder encoder)
+			throws XMLStreamException {
+		final var header = new DiveLogHeader(HEADER_ELEMENT_NAMES);
+		final XMLStreamReader reader = StreamingXml.createReader(is);
+		long startTimestamp = 0;
+		int sampleInterval = 0, maxSampleTime = 0, samples = 0;
+		byte waterTemperatureMaxDepth = 0;
+		// the first sample later than the header allows, reported once the document has been read
+		Integer lateSampleTime = null;
+		try {
+			final var sampleValues = new String[SAMPLE_CHILD_NAMES.length];
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					final String name = reader.getLocalName();
+					if (SAMPLE_ELEMENT_NAME.equals(name)) {
+						if (samples == 0) {
+							for (final String headerElementName : LEADING_HEADER_ELEMENT_NAMES) {
+								if (header.accepts(headerElementName)) {
+									return null;
+								}
+							}
+							final int sampleCnt = Integer.valueOf(header.get("SAMPLECNT"));
+							startTimestamp = toTimestamp(header.get("DATE"), header.get("TIME"), zone);
+							sampleInterval = Integer.valueOf(header.get("SAMPLEINTERVAL"));
+							maxSampleTime = sampleCnt * sampleInterval;
+							waterTemperatureMaxDepth = Byte.valueOf(header.get("WATERTEMPMAXDEPTH"));
+							encoder.begin(startTimestamp, Long.valueOf(header.get("WRISTOPID")), Manufacturer.SUUNTO,
+									header.get("DEVICEMODEL"), sampleCnt);
+						}
+						readSample(reader, sampleValues);
+						final int sampleTime = Integer.valueOf(sampleValues[0].trim());
+						if (sampleTime > maxSampleTime && lateSampleTime == null) {
+							lateSampleTime = sampleTime;
+						}
+						final byte temperature = temperature(sampleValues[2]);
+						encoder.record(startTimestamp + samples * sampleInterval, Float.valueOf(sampleValues[1]),
+								temperature == (byte) 0 ? waterTemperatureMaxDepth : temperature);
+						samples++;
+					} else if (header.accepts(name)) {
+						header.put(name, reader.getElementText());
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		if (samples == 0) {
+			return null;
+		}
+		final int diveSeconds = diveSeconds(header);
+		final float maxDepth = Float.parseFloat(header.get("MAXDEPTH"));
+		final float meanDepth = Float.parseFloat(header.get("MEANDEPTH"));
+		final long diveNumber = diveNumber(header);
+		final long surfaceTime = Integer.valueOf(header.get("SURFACETIME"));
+		// checked after the header, as the samples are when the dive is read
+		if (lateSampleTime != null) {
+			throw new IllegalStateException("sample at time " + lateSampleTime + " doesn't match header");
+		}
+		final ByteBuffer encoded = encoder.end(startTimestamp + diveSeconds, surfaceTime, meanDepth, maxDepth,
+				diveNumber, (float) diveSeconds);
+		final byte[] data = new byte[encoded.remaining()];
+		encoded.get(data);
+		return new TranscodedDive(new DiveHeader(new DateTime(startTimestamp), diveNumber,
+				Long.valueOf(header.get("WRISTOPID")), header.get("DEVICEMODEL"), maxDepth, diveSeconds), data,
+				samples, encoder.getStandardSize());
+	}
+
+	/** Get the dive duration in seconds. */
+	private static int diveSeconds(final DiveLogHeader header) {
+		final var diveTimeSecText = header.getOptional("DIVETIMESEC");
+		// the DIVETIMESEC element may or may not be populated depending on the SDM
+		// version
+		if (diveTimeSecText.length() > 0) {
+			return Integer.valueOf(diveTimeSecText);
+		}
+		return Integer.valueOf(header.get("SAMPLECNT")) * Integer.valueOf(header.get("SAMPLEINTERVAL"));
+	}
+
+	/** Get the dive number from the log title. */
+	private static long diveNumber(final DiveLogHeader header) {
+		// the LOGTITLE element content is formatted like "367. 2019-11-16 11:11:00"
+		// where the first number is the dive number
+		final var logTitle = header.get("LOGTITLE");
+		return Long.parseLong(logTitle.substring(0, logTitle.indexOf('.')));
+	}
+
+	/**
+	 * Convert the header date and time to a FIT timestamp. Dive computers don't
+	 * record their time zone, so it has to be given.
+	 *
+	 * @param date date formatted like "16.11.2019"
+	 * @param time time formatted like "11:11:00"
+	 * @param zone time zone the dive computer clock was set to
+	 * @return seconds since the FIT epoch
+	 */
+	private static long toTimestamp(final String date, final String time, final ZoneId zone) {
 		final int dayOfMonth = Integer.valueOf(date.substring(0, 2));
 		final int month = Integer.valueOf(date.substring(3, 5)) - 1;
 		final int year = Integer.valueOf(date.substring(6));
-		final String time = suunto.getElementsByTagName("TIME").item(0).getTextContent();
 		final int hourOfDay = Integer.valueOf(time.substring(0, 2));
 		final int minute = Integer.valueOf(time.substring(3, 5));
 		final int second = Integer.valueOf(time.substring(6));
-		final int sampleInterval = Integer.valueOf(suunto.getElementsByTagName("SAMPLEINTERVAL").item(0).getTextContent());
-		final Calendar startCalendar = new GregorianCalendar(year, month, dayOfMonth, hourOfDay, minute, second);
-		start = new DateTime((startCalendar.getTimeInMillis() - SdeToFit.OFFSET_MS) / 1000);
-		final var diveTimeSecText = suunto.getElementsByTagName("DIVETIMESEC").item(0).getTextContent().trim();
-		final int diveTimeSec;
-		// the DIVETIMESEC element may or may not be populated depending on the SDM
-		// version
-		if (diveTimeSecText.length() > 0) {
-			diveTimeSec = Integer.valueOf(diveTimeSecText);
-		} else {
-			diveTimeSec = sampleCnt * sampleInterval;
-		}
-		end = new DateTime(((startCalendar.getTimeInMillis() - SdeToFit.OFFSET_MS) / 1000) + diveTimeSec);
+		final Calendar startCalendar = new GregorianCalendar(TimeZone.getTimeZone(zone));
+		startCalendar.clear();
+		startCalendar.set(year, month, dayOfMonth, hourOfDay, minute, second);
+		return (startCalendar.getTimeInMillis() - SdeToFit.OFFSET_MS) / 1000;
+	}
 
-		this.maxDepth = Float.parseFloat(suunto.getElementsByTagName("MAXDEPTH").item(0).getTextContent());
-		this.meanDepth = Float.parseFloat(suunto.getElementsByTagName("MEANDEPTH").item(0).getTextContent());
+	private static void readSample(final XMLStreamReader reader, final String[] values, final SampleBuffer samples)
+			throws XMLStreamException {
+		readSample(reader, values);
+		final int sampleTime = Integer.valueOf(values[0].trim());
+		final float depth = Float.valueOf(values[1]);
+		samples.add(sampleTime, depth, temperature(values[2]));
+	}
 
-		// the LOGTITLE element content is formatted like "367. 2019-11-16 11:11:00"
-		// where the first number is the dive number
-		final var logTitle = suunto.getElementsByTagName("LOGTITLE").item(0).getTextContent();
-		this.diveNumber = Long.parseLong(logTitle.substring(0, logTitle.indexOf('.')));
-		this.surfaceTime = Integer.valueOf(suunto.getElementsByTagName("SURFACETIME").item(0).getTextContent());
-		this.productName = suunto.getElementsByTagName("DEVICEMODEL").item(0).getTextContent();
-		this.serialNumber = Long.valueOf(suunto.getElementsByTagName("WRISTOPID").item(0).getTextContent());
-		this.waterTemperatureMaxDepth = Byte
-				.valueOf(suunto.getElementsByTagName("WATERTEMPMAXDEPTH").item(0).getTextContent());
-		populateRecords();
+	/** Read the text of the child elements of a sample, which must have a time and a depth. */
+	private static void readSample(final XMLStreamReader reader, final String[] values) throws XMLStreamException {
+		StreamingXml.readChildren(reader, SAMPLE_CHILD_NAMES, values);
+		if (values[0] == null || values[1] == null) {
+			throw new IllegalStateException("sample is missing a SAMPLETIME or DEPTH element");
+		}
+	}
+
+	/** Get the temperature of a sample, which is 0 if it wasn't recorded. */
+	private static byte temperature(final String text) {
+		final var temperatureText = text == null ? "" : text.trim();
+		return temperatureText.length() > 0 ? (byte) Math.round(Float.valueOf(temperatureText)) : (byte) 0;
 	}
 
 	@Override
@@ -116,40 +332,33 @@ public class SuuntoXml implements Dive, DivesSource {
 		return end;
 	}
 
-	private List<Record> records = new ArrayList<Record>();;
+	private final DiveProfile profile;
 
-	private void populateRecords() {
-		final int sampleCount = Integer.valueOf(suunto.getElementsByTagName("SAMPLECNT").item(0).getTextContent());
-		final int sampleInterval = Integer
-				.valueOf(suunto.getElementsByTagName("SAMPLEINTERVAL").item(0).getTextContent());
-		final int diveSeconds = sampleCount * sampleInterval;
-		final NodeList samples = suunto.getElementsByTagName("SAMPLE");
-		final DateTime dateTime = new DateTime(start);
+	private DiveProfile createProfile(final SampleBuffer samples, final int diveSeconds, final int sampleInterval) {
+		samples.validate(diveSeconds);
+		final int[] timeOffsets = new int[samples.size()];
+		final float[] depths = new float[samples.size()];
+		final byte[] temperatures = new byte[samples.size()];
 
-		for (int i = 0; i < samples.getLength(); i++) {
-			final var sample = (Element) samples.item(i);
-			final int sampleTime = Integer.valueOf(sample.getElementsByTagName("SAMPLETIME").item(0).getTextContent());
-			if (sampleTime > diveSeconds) {
-				throw new IllegalStateException("sample at time " + sampleTime + " doesn't match header");
-			}
-
-			final float depth = Float.valueOf(sample.getElementsByTagName("DEPTH").item(0).getTextContent());
-			final byte temperature = sample.getElementsByTagName("TEMPERATURE").item(0).getTextContent() != "" ? (byte) Math.round(Float.valueOf(sample.getElementsByTagName("TEMPERATURE").item(0).getTextContent())) : (byte) 0;
+		for (int i = 0; i < samples.size(); i++) {
+			final byte temperature = samples.getTemperature(i);
 			// for most samples the temperature seems to be 0
 			final byte adjustedTemperature = temperature == (byte) 0 ? waterTemperatureMaxDepth : temperature;
-			final var record = new Record(dateTime, depth, adjustedTemperature);
-			records.add(record);
-			dateTime.add(sampleInterval);
+			timeOffsets[i] = i * sampleInterval;
+			depths[i] = samples.getDepth(i);
+			temperatures[i] = adjustedTemperature;
 		}
+		return new DiveProfile(start.getTimestamp(), timeOffsets, depths, temperatures);
 	}
 
-	public List<Record> getRecords() {
-		return Collections.unmodifiableList(records);
+	@Override
+	public DiveProfile getProfile() {
+		return profile;
 	}
 
 	@Override
 	public int compareTo(final Dive o) {
-		return getStartTime().compareTo(o.getStartTime());
+		return Dive.compare(this, o);
 	}
 
 	@Override
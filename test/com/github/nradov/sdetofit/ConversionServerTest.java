@@ -0,0 +1,114 @@
+package com.github.nradov.sdetofit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ConversionServerTest {
+
+	private static final String SECRET = "not for uploads";
+
+	@TempDir
+	Path directory;
+
+	private ConversionServer server;
+
+	@BeforeEach
+	void start() throws IOException {
+		server = new ConversionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1);
+		server.setQuiet(true);
+		server.start();
+	}
+
+	@AfterEach
+	void close() {
+		server.close();
+	}
+
+	/** Response status and body. */
+	private static final class Response {
+
+		final int status;
+
+		final String body;
+
+		Response(final int status, final String body) {
+			this.status = status;
+			this.body = body;
+		}
+
+		@Override
+		public String toString() {
+			return status + " " + body;
+		}
+
+	}
+
+	/**
+	 * Upload a dive log. The connection is closed after the response, so the
+	 * server doesn't wait for it when it stops.
+	 */
+	private Response upload(final String fileName, final String body) throws IOException {
+		final InetSocketAddress address = server.getAddress();
+		final byte[] content = body.getBytes(StandardCharsets.ISO_8859_1);
+		try (final var socket = new Socket(address.getAddress(), address.getPort())) {
+			final OutputStream out = socket.getOutputStream();
+			out.write(("POST /convert/" + fileName + " HTTP/1.1\r\nHost: localhost\r\nContent-Length: "
+					+ content.length + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			out.write(content);
+			out.flush();
+			final String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.ISO_8859_1);
+			// HTTP/1.1 200 OK
+			final int status = Integer.parseInt(response.substring(9, 12));
+			return new Response(status, response.substring(response.indexOf("\r\n\r\n") + 4));
+		}
+	}
+
+	@Test
+	void convertsUpload() throws IOException {
+		assertEquals(200, upload("dive.xml", TestDiveLogs.xml("05.03.2019", "10:01:05", 1234567, 1)).status);
+	}
+
+	@Test
+	void rejectsExternalEntities() throws IOException {
+		final Path secret = Files.writeString(directory.resolve("secret.txt"), SECRET);
+		final String xml = TestDiveLogs.xml("05.03.2019", "10:01:05", 1234567, 1)
+				.replace("<SUUNTO>", "<!DOCTYPE SUUNTO [<!ENTITY secret SYSTEM \"" + secret.toUri() + "\">]>\n<SUUNTO>")
+				.replace("<DEVICEMODEL>Mosquito</DEVICEMODEL>", "<DEVICEMODEL>&secret;</DEVICEMODEL>");
+		final Response response = upload("dive.xml", xml);
+		assertTrue(response.status >= 400 && response.status < 500, response::toString);
+		assertFalse(response.body.contains(SECRET), response::toString);
+	}
+
+	@Test
+	void rejectsEntityExpansion() throws IOException {
+		final var entities = new StringBuilder("<!ENTITY a0 \"aaaaaaaaaa\">");
+		for (int i = 1; i < 10; i++) {
+			entities.append("<!ENTITY a").append(i).append(" \"");
+			for (int j = 0; j < 10; j++) {
+				entities.append("&a").append(i - 1).append(';');
+			}
+			entities.append("\">");
+		}
+		final String xml = TestDiveLogs.xml("05.03.2019", "10:01:05", 1234567, 1)
+				.replace("<SUUNTO>", "<!DOCTYPE SUUNTO [" + entities + "]>\n<SUUNTO>")
+				.replace("<DEVICEMODEL>Mosquito</DEVICEMODEL>", "<DEVICEMODEL>&a9;</DEVICEMODEL>");
+		final Response response = upload("dive.xml", xml);
+		assertTrue(response.status >= 400 && response.status < 500, response::toString);
+	}
+
+}
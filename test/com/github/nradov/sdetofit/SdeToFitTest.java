@@ -0,0 +1,80 @@
+package com.github.nradov.sdetofit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SdeToFitTest {
+
+	@TempDir
+	Path directory;
+
+	/** Two exports from different dive computers with dives starting in the same second. */
+	private List<Path> sameStartTimeExports() throws IOException {
+		return List.of(
+				TestDiveLogs.writeSde(directory.resolve("t.sde"), TestDiveLogs.xml("05.03.2019", "10:01:05", 1234567, 1)),
+				TestDiveLogs.writeSde(directory.resolve("u.sde"), TestDiveLogs.xml("05.03.2019", "10:01:05", 7654321, 1)));
+	}
+
+	private static Set<String> fileNames(final Path output) throws IOException {
+		try (final Stream<Path> files = Files.list(output)) {
+			return files.map(file -> file.getFileName().toString()).filter(name -> !name.startsWith("."))
+					.collect(Collectors.toCollection(TreeSet::new));
+		}
+	}
+
+	@Test
+	void mergeKeepsDivesFromDevicesStartingAtTheSameTime() throws IOException, XMLStreamException {
+		final Path output = directory.resolve("merged");
+		final var converter = new SdeToFit(sameStartTimeExports(), output);
+		converter.setQuiet(true);
+		converter.convert();
+		final Set<String> names = fileNames(output);
+		assertEquals(2, converter.getMetrics().getDives());
+		assertEquals(Set.of("2019-03-05-10-01-05.fit", "2019-03-05-10-01-05-2.fit"), names);
+	}
+
+	@Test
+	void filesOfOneDiveShareTheirSuffix() throws IOException, XMLStreamException {
+		final Path output = directory.resolve("merged");
+		final var converter = new SdeToFit(sameStartTimeExports(), output);
+		converter.setQuiet(true);
+		converter.setFormats(EnumSet.of(SdeToFit.Format.FIT, SdeToFit.Format.CSV));
+		converter.convert();
+		final Set<String> names = fileNames(output);
+		assertEquals(4, names.size(), names.toString());
+		for (final String name : names) {
+			final String baseName = name.substring(0, name.lastIndexOf('.'));
+			assertTrue(names.contains(baseName + ".fit") && names.contains(baseName + ".csv"), names.toString());
+		}
+	}
+
+	@Test
+	void incrementalRunSkipsEveryMergedDive() throws IOException, XMLStreamException {
+		final Path output = directory.resolve("merged");
+		final List<Path> inputs = sameStartTimeExports();
+		for (int run = 0; run < 2; run++) {
+			final var converter = new SdeToFit(inputs, output);
+			converter.setQuiet(true);
+			converter.setIncremental(true);
+			converter.convert();
+			assertEquals(run == 0 ? 2 : 0, converter.getMetrics().getDives());
+		}
+		assertEquals(2, fileNames(output).size());
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.github.nradov.sdetofit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StreamConverterTest {
+
+	private static final String FIT_NAME = "2019-03-05-10-01-05.fit";
+
+	/** Size of a tar header and of the blocks holding the contents. */
+	private static final int TAR_BLOCK_SIZE = 512;
+
+	@TempDir
+	Path directory;
+
+	/** An export holding dives from two dive computers which start in the same second. */
+	private byte[] sameStartTimeExport() throws IOException {
+		return Files.readAllBytes(TestDiveLogs.writeSde(directory.resolve("both.sde"),
+				TestDiveLogs.xml("05.03.2019", "10:01:05", 1234567, 1),
+				TestDiveLogs.xml("05.03.2019", "10:01:05", 7654321, 1)));
+	}
+
+	private static byte[] convert(final byte[] input, final StreamConverter.Archive archive, final DiveFilter filter)
+			throws IOException, XMLStreamException {
+		final var output = new ByteArrayOutputStream();
+		final var converter = new StreamConverter(new ByteArrayInputStream(input), output);
+		converter.setQuiet(true);
+		converter.setArchive(archive);
+		converter.setFilter(filter);
+		converter.convert();
+		return output.toByteArray();
+	}
+
+	@Test
+	void zipEntriesOfDivesStartingAtTheSameTimeAreUnique() throws IOException, XMLStreamException {
+		final byte[] zip = convert(sameStartTimeExport(), StreamConverter.Archive.ZIP, DiveFilter.ALL);
+		final List<String> names = new ArrayList<>();
+		try (final var in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+			for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+				names.add(entry.getName());
+			}
+		}
+		assertEquals(List.of(FIT_NAME, FIT_NAME.replace(".fit", "-2.fit")), names);
+	}
+
+	@Test
+	void tarEntriesOfDivesStartingAtTheSameTimeAreUnique() throws IOException, XMLStreamException {
+		final byte[] tar = convert(sameStartTimeExport(), StreamConverter.Archive.TAR, DiveFilter.ALL);
+		final List<String> names = new ArrayList<>();
+		int offset = 0;
+		while (offset + TAR_BLOCK_SIZE <= tar.length && tar[offset] != 0) {
+			int end = offset;
+			while (tar[end] != 0) {
+				end++;
+			}
+			names.add(new String(tar, offset, end - offset, StandardCharsets.US_ASCII));
+			final long size = Long.parseLong(new String(tar, offset + 124, 11, StandardCharsets.US_ASCII).trim(), 8);
+			offset += TAR_BLOCK_SIZE * (1 + (int) ((size + TAR_BLOCK_SIZE - 1) / TAR_BLOCK_SIZE));
+		}
+		assertEquals(List.of(FIT_NAME, FIT_NAME.replace(".fit", "-2.fit")), names);
+	}
+
+	@Test
+	void filterAcceptingOneDiveGivesFitFile() throws IOException, XMLStreamException {
+		final byte[] fit = convert(sameStartTimeExport(), StreamConverter.Archive.ZIP,
+				DiveFilter.ALL.withSerialNumber(7654321));
+		assertEquals(".FIT", new String(fit, 8, 4, StandardCharsets.US_ASCII));
+	}
+
+}
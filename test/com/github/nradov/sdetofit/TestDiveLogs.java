@@ -0,0 +1,102 @@
+package com.github.nradov.sdetofit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Small dive logs written by the tests.
+ *
+ * @author Nick Radov
+ */
+public final class TestDiveLogs {
+
+	private TestDiveLogs() {
+	}
+
+	/**
+	 * Create a Suunto XML dive log with a sample every 20 seconds.
+	 *
+	 * @param date         start date, as {@code dd.MM.yyyy}
+	 * @param time         start time, as {@code HH:mm:ss}
+	 * @param serialNumber dive computer serial number
+	 * @param diveNumber   dive log number
+	 * @return XML text
+	 */
+	public static String xml(final String date, final String time, final long serialNumber, final int diveNumber) {
+		final var xml = new StringBuilder(2048);
+		xml.append("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<SUUNTO>\n<MSGHEADER>\n");
+		xml.append("<DATE>").append(date).append("</DATE>\n");
+		xml.append("<TIME>").append(time).append("</TIME>\n");
+		xml.append("<SAMPLECNT>10</SAMPLECNT>\n<SAMPLEINTERVAL>20</SAMPLEINTERVAL>\n");
+		xml.append("<DIVETIMESEC>180</DIVETIMESEC>\n<MAXDEPTH>8.1</MAXDEPTH>\n<MEANDEPTH>4.5</MEANDEPTH>\n");
+		xml.append("<LOGTITLE>").append(diveNumber).append(". ").append(date).append("</LOGTITLE>\n");
+		xml.append("<SURFACETIME>3601</SURFACETIME>\n<DEVICEMODEL>Mosquito</DEVICEMODEL>\n");
+		xml.append("<WRISTOPID>").append(serialNumber).append("</WRISTOPID>\n");
+		xml.append("<WATERTEMPMAXDEPTH>18</WATERTEMPMAXDEPTH>\n");
+		xml.append("</MSGHEADER>\n");
+		for (int i = 0; i < 10; i++) {
+			xml.append(String.format(Locale.US,
+					"<SAMPLE><SAMPLETIME>%d</SAMPLETIME><DEPTH>%.2f</DEPTH><TEMPERATURE>18</TEMPERATURE></SAMPLE>\n",
+					i * 20, i * 0.9));
+		}
+		xml.append("</SUUNTO>\n");
+		return xml.toString();
+	}
+
+	/**
+	 * Create a Suunto SML dive log with a sample every 10 seconds. SML dive logs
+	 * don't have the surface interval time.
+	 *
+	 * @param dateTime     start time, as {@code yyyy-MM-ddTHH:mm:ss}
+	 * @param serialNumber dive computer serial number
+	 * @param diveNumber   dive log number
+	 * @param samples      number of samples
+	 * @return XML text
+	 */
+	public static String sml(final String dateTime, final long serialNumber, final int diveNumber,
+			final int samples) {
+		final var xml = new StringBuilder(2048);
+		xml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+		xml.append("<sml xmlns=\"http://www.suunto.com/schemas/sml\">\n<DeviceLog>\n<Header>\n");
+		xml.append("<Depth><Max>8.1</Max><Avg>4.5</Avg></Depth>\n");
+		xml.append("<DateTime>").append(dateTime).append("</DateTime>\n");
+		xml.append("<Duration>").append(samples * 10).append("</Duration>\n");
+		xml.append("<NumberInSeries>").append(diveNumber).append("</NumberInSeries>\n");
+		xml.append("<SampleInterval>10</SampleInterval>\n</Header>\n");
+		xml.append("<Device><Name>Suunto D5</Name><SerialNumber>").append(serialNumber)
+				.append("</SerialNumber></Device>\n<Samples>\n");
+		for (int i = 0; i < samples; i++) {
+			xml.append(String.format(Locale.US,
+					"<Sample><Depth>%.2f</Depth><Temperature>291.15</Temperature><Time>%d</Time></Sample>\n",
+					i * 0.5, i * 10));
+		}
+		xml.append("</Samples>\n</DeviceLog>\n</sml>\n");
+		return xml.toString();
+	}
+
+	/**
+	 * Write a Dive Manager export file holding XML dive logs, one entry each.
+	 *
+	 * @param file   export file
+	 * @param dives  XML dive logs
+	 * @return the export file
+	 * @throws IOException if the file can't be written
+	 */
+	public static Path writeSde(final Path file, final String... dives) throws IOException {
+		try (final OutputStream out = Files.newOutputStream(file); final var zip = new ZipOutputStream(out)) {
+			for (int i = 0; i < dives.length; i++) {
+				zip.putNextEntry(new ZipEntry(i + ".xml"));
+				zip.write(dives[i].getBytes(StandardCharsets.ISO_8859_1));
+				zip.closeEntry();
+			}
+		}
+		return file;
+	}
+
+}
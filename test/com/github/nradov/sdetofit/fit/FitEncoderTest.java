@@ -0,0 +1,78 @@
+package com.github.nradov.sdetofit.fit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.jupiter.api.Test;
+
+import com.garmin.fit.Decode;
+import com.garmin.fit.DiveSummaryMesg;
+import com.garmin.fit.DiveSummaryMesgListener;
+import com.garmin.fit.MesgBroadcaster;
+import com.garmin.fit.RecordMesg;
+import com.garmin.fit.RecordMesgListener;
+import com.github.nradov.sdetofit.Dive;
+import com.github.nradov.sdetofit.TestDiveLogs;
+import com.github.nradov.sdetofit.suunto.SuuntoSml;
+
+class FitEncoderTest {
+
+	private static final int SAMPLES = 30;
+
+	private static Dive smlDive() throws IOException, XMLStreamException {
+		return new SuuntoSml(new ByteArrayInputStream(
+				TestDiveLogs.sml("2021-07-04T09:15:30", 987654321, 3, SAMPLES).getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/** Encode an SML dive, which has no surface interval, and decode it again with the FIT SDK. */
+	private static void assertRoundTrip(final DiveEncoder encoder) throws IOException, XMLStreamException {
+		final Dive dive = smlDive();
+		assertFalse(dive.hasSurfaceTime());
+		final ByteBuffer encoded = encoder.encode(dive);
+		final byte[] file = new byte[encoded.remaining()];
+		encoded.get(file);
+
+		final var decode = new Decode();
+		assertTrue(decode.checkFileIntegrity(new ByteArrayInputStream(file)));
+		final var broadcaster = new MesgBroadcaster(decode);
+		final List<RecordMesg> records = new ArrayList<>();
+		final List<DiveSummaryMesg> summaries = new ArrayList<>();
+		broadcaster.addListener((RecordMesgListener) records::add);
+		broadcaster.addListener((DiveSummaryMesgListener) summaries::add);
+		assertTrue(decode.read(new ByteArrayInputStream(file), broadcaster, broadcaster));
+
+		assertEquals(SAMPLES, records.size());
+		assertEquals(dive.getStartTime().getTimestamp(), records.get(0).getTimestamp().getTimestamp());
+		assertEquals(4.5f, records.get(9).getDepth(), 0.001f);
+		assertEquals(1, summaries.size());
+		assertNull(summaries.get(0).getSurfaceInterval());
+		assertEquals(3, summaries.get(0).getDiveNumber());
+	}
+
+	@Test
+	void sdkEncoderWritesSmlDive() throws IOException, XMLStreamException {
+		assertRoundTrip(new SdkFitEncoder());
+	}
+
+	@Test
+	void directEncoderWritesSmlDive() throws IOException, XMLStreamException {
+		assertRoundTrip(new DirectFitEncoder());
+	}
+
+	@Test
+	void compactEncoderWritesSmlDive() throws IOException, XMLStreamException {
+		assertRoundTrip(new DirectFitEncoder(true));
+	}
+
+}
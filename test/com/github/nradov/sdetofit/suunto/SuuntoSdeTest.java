@@ -0,0 +1,73 @@
+package com.github.nradov.sdetofit.suunto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.nradov.sdetofit.Dive;
+import com.github.nradov.sdetofit.DiveReader;
+import com.github.nradov.sdetofit.TestDiveLogs;
+
+class SuuntoSdeTest {
+
+	@TempDir
+	Path directory;
+
+	/** Export whose dive logs are in a folder with its own directory entry. */
+	private Path export;
+
+	@BeforeEach
+	void writeExport() throws IOException {
+		export = directory.resolve("folder.sde");
+		try (final OutputStream out = Files.newOutputStream(export); final var zip = new ZipOutputStream(out)) {
+			zip.putNextEntry(new ZipEntry("logs/"));
+			zip.closeEntry();
+			zip.putNextEntry(new ZipEntry("logs/1.xml"));
+			zip.write(TestDiveLogs.xml("05.03.2019", "10:01:05", 1234567, 1).getBytes(StandardCharsets.ISO_8859_1));
+			zip.closeEntry();
+			zip.putNextEntry(new ZipEntry("logs/2.xml"));
+			zip.write(TestDiveLogs.xml("06.03.2019", "09:30:00", 1234567, 2).getBytes(StandardCharsets.ISO_8859_1));
+			zip.closeEntry();
+		}
+	}
+
+	private static List<Long> diveNumbers(final SuuntoSde sde, final boolean chronological) throws IOException {
+		final List<Long> diveNumbers = new ArrayList<>();
+		for (final DiveReader reader : (Iterable<DiveReader>) sde.readers(chronological)::iterator) {
+			diveNumbers.add(reader.call().getDiveNumber());
+		}
+		return diveNumbers;
+	}
+
+	@Test
+	void readersSkipDirectoryEntries() throws IOException {
+		try (final var sde = new SuuntoSde(export)) {
+			assertEquals(List.of(1L, 2L), diveNumbers(sde, false));
+			assertEquals(List.of(1L, 2L), diveNumbers(sde, true));
+		}
+	}
+
+	@Test
+	void getDivesSkipsDirectoryEntries() throws IOException {
+		try (final var sde = new SuuntoSde(export)) {
+			final List<Long> diveNumbers = new ArrayList<>();
+			for (final Dive dive : sde.getDives()) {
+				diveNumbers.add(dive.getDiveNumber());
+			}
+			assertEquals(List.of(1L, 2L), diveNumbers);
+		}
+	}
+
+}